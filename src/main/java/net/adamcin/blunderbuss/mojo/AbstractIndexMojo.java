@@ -0,0 +1,688 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Maybe;
+import io.reactivex.rxjava3.core.Observable;
+import io.reactivex.rxjava3.core.Single;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.InvalidRepositoryException;
+import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
+import org.apache.maven.artifact.repository.layout.ArtifactRepositoryLayout;
+import org.apache.maven.artifact.repository.metadata.ArtifactRepositoryMetadata;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.DeploymentRepository;
+import org.apache.maven.model.DistributionManagement;
+import org.apache.maven.model.Repository;
+import org.apache.maven.model.RepositoryPolicy;
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Component;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.repository.RepositorySystem;
+import org.apache.maven.settings.Settings;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.codehaus.plexus.util.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Common configuration of the goals that resolve indexes from, and deploy indexes to, a specific deployment repository.
+ */
+public abstract class AbstractIndexMojo extends AbstractMojo {
+	private static final Pattern ALT_REPO_SYNTAX_PATTERN = Pattern.compile("(.+)::(.+)");
+
+	@Parameter(defaultValue = "${settings}", readonly = true)
+	private Settings settings;
+
+	@Parameter(defaultValue = "${session}", readonly = true)
+	MavenSession session;
+
+	@Parameter(defaultValue = "${project}", readonly = true)
+	MavenProject project;
+
+	/**
+	 * Specifies an alternative repository to which the project artifacts should be deployed (other than those specified
+	 * in &lt;distributionManagement&gt;). <br/>
+	 * Format: <code>id::url</code>
+	 * <dl>
+	 * <dt>id</dt>
+	 * <dd>The id can be used to pick up the correct credentials from the settings.xml</dd>
+	 * <dt>url</dt>
+	 * <dd>The location of the repository</dd>
+	 * </dl>
+	 * <b>Note:</b> In maven-deploy-plugin version 2.x, the format was <code>id::<i>layout</i>::url</code> where <code><i>layout</i></code>
+	 * could be <code>default</code> (ie. Maven 2) or <code>legacy</code> (ie. Maven 1), but since 3.0.0 the layout part
+	 * has been removed because Maven 3 only supports Maven 2 repository layout.
+	 */
+	@Parameter(property = "altDeploymentRepository")
+	private String altDeploymentRepository;
+
+	/**
+	 * The alternative repository to use when the project has a final version.
+	 *
+	 * <b>Note:</b> In maven-deploy-plugin version 2.x, the format was <code>id::<i>layout</i>::url</code> where <code><i>layout</i></code>
+	 * could be <code>default</code> (ie. Maven 2) or <code>legacy</code> (ie. Maven 1), but since 3.0.0 the layout part
+	 * has been removed because Maven 3 only supports Maven 2 repository layout.
+	 *
+	 * @see AbstractIndexMojo#altDeploymentRepository
+	 * @since 2.8
+	 */
+	@Parameter(property = "altReleaseDeploymentRepository")
+	private String altReleaseDeploymentRepository;
+
+	/**
+	 * The alternative repository to use when the project has a snapshot version.
+	 *
+	 * <b>Note:</b> In maven-deploy-plugin version 2.x, the format was <code>id::<i>layout</i>::url</code> where <code><i>layout</i></code>
+	 * could be <code>default</code> (ie. Maven 2) or <code>legacy</code> (ie. Maven 1), but since 3.0.0 the layout part
+	 * has been removed because Maven 3 only supports Maven 2 repository layout.
+	 *
+	 * @see AbstractIndexMojo#altDeploymentRepository
+	 * @since 2.8
+	 */
+	@Parameter(property = "altSnapshotDeploymentRepository")
+	private String altSnapshotDeploymentRepository;
+
+	/**
+	 * Set to true to skip upload of the new index.
+	 */
+	@Parameter(name = "skipDeployIndex", property = "skipDeployIndex")
+	boolean skipDeployIndex;
+
+	/**
+	 * Specify the groupId of the index that is resolved and deployed by this execution. This also serves as the
+	 * default for {@code altIndex} elements that omit the groupId part.
+	 */
+	@Parameter(name = "indexGroupId", property = "indexGroupId", required = true)
+	String indexGroupId;
+
+	/**
+	 * Specify the artifactId of the index that is resolved and deployed by this execution.
+	 */
+	@Parameter(name = "indexArtifactId", property = "indexArtifactId", required = true)
+	String indexArtifactId;
+
+	/**
+	 * Comma separated list of groupId:artifactId coordinates for other indexes managed in the same
+	 * deployment repository that will be used as additional filters after the index specified with
+	 * {@code indexGroupId} and {@code indexArtifactId}. Each coordinate will be trimmed to nil so
+	 * that newlines are tolerated in the configuration element in the pom. You may omit the groupId
+	 * portion, leaving only a colon prefix, in which case the {@code indexGroupId}
+	 * parameter will be assumed.
+	 */
+	@Parameter(name = "altIndex", property = "altIndex")
+	private String altIndex;
+
+	/**
+	 * Specify a directory parent path for temporary files. If not specified, the plugin will use
+	 * {@code project.build.directory} if executed in a maven module directory, or otherwise it
+	 * will use {@code java.io.tmpdir}.
+	 */
+	@Parameter(name = "tempDirectory", property = "blunderbuss.tempDirectory")
+	private File tempDirectory;
+
+	/**
+	 * Specify a directory to keep resolved index jars in across executions, for use on persistent build agents. The latest
+	 * version of each index is still resolved from the repository metadata on every execution, but the index jar of a
+	 * version that is already cached is not downloaded again, and the cached versions that are no longer part of an index
+	 * are deleted.
+	 */
+	@Parameter(name = "indexCacheDirectory", property = "blunderbuss.indexCacheDirectory")
+	private File indexCacheDirectory;
+
+	/**
+	 * The format of the index jar that is deployed by this execution. {@code TEXT} writes one entry per GAV, {@code BINARY}
+	 * writes a single sorted, prefix-compressed entry that is memory-mapped and binary searched when the index is read, and
+	 * {@code BOTH} writes both, so that executions using older plugin versions can still read the index during a migration.
+	 * Indexes in either format are always readable, and the binary entry is read when a jar has both.
+	 */
+	@Parameter(name = "indexFormat", property = "blunderbuss.indexFormat", defaultValue = "TEXT")
+	IndexBuilder.Format indexFormat;
+
+	/**
+	 * The compression method of the entries of the index jar that is deployed by this execution. {@code DEFLATED} writes the
+	 * smallest jar, and {@code STORED} writes uncompressed entries that are faster to read one at a time. Index jars are
+	 * written reproducibly, so a new index that is identical to the latest version is not deployed.
+	 */
+	@Parameter(name = "indexCompression", property = "blunderbuss.indexCompression", defaultValue = "DEFLATED")
+	JarUtils.Compression indexCompression;
+
+	/**
+	 * Set to split the index deployed by this execution into shards, which are deployed as {@code shard-<shard>}
+	 * classifiers of the index artifact. Use {@code segment} to shard by the first segment of the groupId, or
+	 * {@code hash:<buckets>}, like {@code hash:16}, to shard by a hash of the groupId. A shard is only resolved when the
+	 * first artifact group of that shard is looked up, and only the shards that changed are deployed, along with the small
+	 * index jar that lists the version of each shard. Sharded indexes are always deployed in full, so
+	 * {@code indexDeltaThreshold} has no effect. An existing index is resharded by the first execution with a different
+	 * value, and setting a blank value merges the shards back into a single index.
+	 */
+	@Parameter(name = "indexSharding", property = "blunderbuss.indexSharding")
+	String indexSharding;
+
+	@Component
+	private RepositorySystem repositorySystem;
+
+	@Component(role = ArtifactRepositoryLayout.class)
+	private Map<String, ArtifactRepositoryLayout> repositoryLayouts;
+
+	@Component
+	private ArtifactDeployer artifactDeployer;
+
+	@Component
+	private ArtifactResolver artifactResolver;
+
+	final ArtifactHandlerManager artifactHandlerManager = new DefaultArtifactHandlers();
+
+	RepositoryPolicy getDefaultRepositoryPolicy(boolean enabled) {
+		RepositoryPolicy policy = new RepositoryPolicy();
+		policy.setEnabled(enabled);
+		policy.setUpdatePolicy(ArtifactRepositoryPolicy.UPDATE_POLICY_ALWAYS);
+		policy.setChecksumPolicy(ArtifactRepositoryPolicy.CHECKSUM_POLICY_IGNORE);
+		return policy;
+	}
+
+	Maybe<ArtifactRepository> getAltReleaseDeploymentRepository() {
+		return getAltDeploymentRepository(false);
+	}
+
+	Maybe<ArtifactRepository> getAltSnapshotDeploymentRepository() {
+		return getAltDeploymentRepository(true);
+	}
+
+	Maybe<ArtifactRepository> getAltDeploymentRepository(final boolean forSnapshots) {
+		return Maybe.<Repository>create(emitter -> {
+			final String specificKey = forSnapshots
+					? altSnapshotDeploymentRepository
+					: altReleaseDeploymentRepository;
+			final Optional<String> altRepo = Stream.of(specificKey, altDeploymentRepository)
+					.filter(org.apache.maven.shared.utils.StringUtils::isNotBlank)
+					.findFirst();
+			if (altRepo.isPresent()) {
+				final String altDeploymentRepo = altRepo.get();
+				getLog().info("Using alternate deployment repository " + altDeploymentRepo);
+				Matcher matcher = ALT_REPO_SYNTAX_PATTERN.matcher(altDeploymentRepo);
+				if (!matcher.matches()) {
+					throw new MojoFailureException(altDeploymentRepo, "Invalid syntax for repository.",
+							"Invalid syntax for alternative repository. Use \"id::url\".");
+				} else {
+					final String id = matcher.group(1).trim();
+					final String url = matcher.group(2).trim();
+					Repository repo = new Repository();
+					repo.setReleases(getDefaultRepositoryPolicy(!forSnapshots));
+					repo.setSnapshots(getDefaultRepositoryPolicy(forSnapshots));
+					repo.setId(id);
+					repo.setUrl(url);
+					emitter.onSuccess(repo);
+				}
+			}
+			emitter.onComplete();
+		}).flatMap(repo -> Optional.ofNullable(repo).map(this::buildArtifactRepository).map(Single::toMaybe).orElseGet(Maybe::empty));
+	}
+
+	Single<ArtifactRepository> buildArtifactRepository(@NotNull final Repository repository) {
+		return Single.create(emitter -> {
+			if (StringUtils.isEmpty(repository.getId()) || StringUtils.isEmpty(repository.getUrl())) {
+				throw new InvalidRepositoryException("repository id and url must not be empty", repository.getId());
+			} else {
+				ArtifactRepository repo = repositorySystem.buildArtifactRepository(repository);
+				repositorySystem.injectProxy(session.getRepositorySession(), Collections.singletonList(repo));
+				repositorySystem.injectAuthentication(session.getRepositorySession(), Collections.singletonList(repo));
+				emitter.onSuccess(repo);
+			}
+		});
+	}
+
+	Single<DistributionManagement> getProjectDistMgmtAsSingle() {
+		return Single.<MavenProject>create(emitter -> {
+			if (project == null) {
+				throw new IllegalStateException("No maven project available.");
+			} else {
+				emitter.onSuccess(project);
+			}
+		}).flatMap(mavenProject -> Single.create(emitter -> {
+			if (mavenProject.getDistributionManagement() == null) {
+				throw new IllegalStateException("Maven project does not contain a distributionManagement section");
+			} else {
+				emitter.onSuccess(mavenProject.getDistributionManagement());
+			}
+		}));
+	}
+
+	Single<ArtifactRepository> getProjectReleaseDeploymentRepository() {
+		return getProjectDistMgmtAsSingle().flatMap(distMgmt -> Single.<DeploymentRepository>create(emitter -> {
+			if (distMgmt.getRepository() == null) {
+				throw new IllegalStateException("Maven project distributionManagement does not specify a release repository");
+			} else {
+				emitter.onSuccess(distMgmt.getRepository());
+			}
+		})).flatMap(repository ->
+				buildArtifactRepository(repository).onErrorResumeNext(e ->
+						Single.error(new IllegalStateException("Failed to create release distribution repository for " + project.getId(), e))));
+	}
+
+	Single<ArtifactRepository> getReleaseDeploymentRepository() {
+		return getAltReleaseDeploymentRepository().switchIfEmpty(getProjectReleaseDeploymentRepository());
+	}
+
+	Maybe<ArtifactRepository> getProjectSnapshotDeploymentRepository() {
+		return getProjectDistMgmtAsSingle().flatMapMaybe(distMgmt -> Maybe.<DeploymentRepository>create(emitter -> {
+			if (distMgmt.getSnapshotRepository() != null) {
+				emitter.onSuccess(distMgmt.getSnapshotRepository());
+			} else {
+				emitter.onComplete();
+			}
+		})).flatMap(repository -> buildArtifactRepository(repository)
+				.onErrorResumeNext(e ->
+						Single.error(new IllegalStateException("Failed to create snapshot distribution repository for " + project.getId(), e))
+				).toMaybe());
+	}
+
+	Maybe<ArtifactRepository> getSnapshotDeploymentRepository() {
+		return getAltSnapshotDeploymentRepository().switchIfEmpty(getProjectSnapshotDeploymentRepository());
+	}
+
+	Path getLocalRepoPath() {
+		return session.getRequest().getLocalRepositoryPath().toPath().toAbsolutePath();
+	}
+
+	Single<ProjectBuildingRequest> getWrappedProjectBuildingRequest(
+			@NotNull final ArtifactRepository releaseRepo) {
+		DefaultProjectBuildingRequest wrapper = new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
+		wrapper.setRemoteRepositories(Collections.singletonList(releaseRepo));
+		return Single.just(wrapper);
+	}
+
+	Single<Context> getContext() {
+		return getSnapshotDeploymentRepository().map(Optional::of).defaultIfEmpty(Optional.empty())
+				.flatMap(snapshotRepo -> getReleaseDeploymentRepository()
+						.flatMap(releaseRepo -> getWrappedProjectBuildingRequest(releaseRepo)
+								.flatMap(buildRequest -> getTempDirectory()
+										.map(tempDir -> new Context(artifactResolver, artifactDeployer, releaseRepo,
+												snapshotRepo.orElse(null), buildRequest, tempDir.toAbsolutePath(), getLog(),
+												getExistenceProbe(), getGuardSettings())))));
+	}
+
+	/**
+	 * Get the existence probe to check for files that already exist in the deployment repository.
+	 *
+	 * @return the existence probe, or null to only check files after a failed deployment
+	 */
+	@Nullable ExistenceProbe getExistenceProbe() {
+		return null;
+	}
+
+	/**
+	 * Get the settings of the guards of the requests sent to the deployment repositories.
+	 *
+	 * @return the guard settings, or null for no rate limit, retries or circuit breaker
+	 */
+	@Nullable RepositoryGuard.Settings getGuardSettings() {
+		return null;
+	}
+
+	Single<Path> getTempDirectory() {
+		return Single.create(emitter -> {
+			if (tempDirectory != null) {
+				emitter.onSuccess(Files.createTempDirectory(tempDirectory.toPath(), "blunderbuss_"));
+			} else if (project != null) {
+				final Path projectTempDir = project.getBasedir().toPath().resolve(
+						Optional.ofNullable(project.getBuild()).map(Build::getDirectory).orElse("target"))
+						.resolve("blunderbussTmp");
+				emitter.onSuccess(Files.createDirectories(projectTempDir));
+			} else {
+				emitter.onSuccess(Files.createTempDirectory("blunderbuss_"));
+			}
+		});
+	}
+
+	@Nullable IndexSharding getIndexSharding() {
+		return IndexSharding.parse(indexSharding);
+	}
+
+	@Nullable IndexCache getIndexCache() {
+		return indexCacheDirectory != null ? new IndexCache(indexCacheDirectory.toPath().toAbsolutePath(), getLog()) : null;
+	}
+
+	Single<Index> getIndex(@NotNull final Context context, @NotNull final String groupId, @NotNull final String artifactId,
+			final boolean doResolve) {
+		return getIndex(context, groupId, artifactId, doResolve, -1);
+	}
+
+	Single<Index> getIndex(@NotNull final Context context, @NotNull final String groupId, @NotNull final String artifactId,
+			final boolean doResolve, final int rangeReadDepth) {
+		return internalGetIndex(artifactHandlerManager, context, getIndexCache(), groupId, artifactId, doResolve,
+				rangeReadDepth);
+	}
+
+	/**
+	 * Resolve the latest version of an index. When an index cache is specified, the resolved version of the index pom
+	 * determines the version of the index jar, which is then read from the cache if it was resolved by an earlier execution.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param context                the execution context
+	 * @param indexCache             the optional index cache
+	 * @param groupId                the index groupId
+	 * @param artifactId             the index artifactId
+	 * @param doResolve              false to skip resolution and return an empty index
+	 * @return the index
+	 */
+	static Single<Index> internalGetIndex(
+			@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Context context,
+			@Nullable final IndexCache indexCache,
+			@NotNull final String groupId,
+			@NotNull final String artifactId,
+			final boolean doResolve) {
+		return internalGetIndex(artifactHandlerManager, context, indexCache, groupId, artifactId, doResolve, -1);
+	}
+
+	/**
+	 * Resolve the latest version of an index, optionally reading it remotely with range requests instead of downloading the
+	 * index jars. Range reads are only used for an index whose delta chain is not deeper than the specified depth, so that
+	 * the execution can deploy a delta without the previous jars, and the index jars are resolved as usual if the index is
+	 * cached, sharded or binary only, or if the range requests fail. A server that ignores range requests is handled by
+	 * reading its full response as the resolved index jar.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param context                the execution context
+	 * @param indexCache             the optional index cache
+	 * @param groupId                the index groupId
+	 * @param artifactId             the index artifactId
+	 * @param doResolve              false to skip resolution and return an empty index
+	 * @param rangeReadDepth         the maximum delta depth of an index to read with range requests, or -1 to always
+	 *                               resolve the index jars
+	 * @return the index
+	 */
+	static Single<Index> internalGetIndex(
+			@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Context context,
+			@Nullable final IndexCache indexCache,
+			@NotNull final String groupId,
+			@NotNull final String artifactId,
+			final boolean doResolve,
+			final int rangeReadDepth) {
+		return Single.create(emitter -> {
+			Artifact indexArtifact = new DefaultArtifact(groupId, artifactId, Artifact.LATEST_VERSION,
+					"test", "jar", "", artifactHandlerManager.getArtifactHandler("jar"));
+			Artifact indexMetadataArtifact = new DefaultArtifact(groupId, artifactId, Artifact.LATEST_VERSION,
+					"import", "pom", "", artifactHandlerManager.getArtifactHandler("pom"));
+
+			if (doResolve) {
+				try {
+					indexMetadataArtifact = context.resolve(indexMetadataArtifact);
+					ArtifactRepositoryMetadata metaMeta = new ArtifactRepositoryMetadata(indexMetadataArtifact);
+					indexMetadataArtifact.addMetadata(metaMeta);
+					final Artifact versionedArtifact = new DefaultArtifact(groupId, artifactId,
+							indexMetadataArtifact.getVersion(), "test", "jar", "", artifactHandlerManager.getArtifactHandler("jar"));
+					if (rangeReadDepth >= 0
+							&& (indexCache == null || !Files.isRegularFile(indexCache.getCachedFile(versionedArtifact)))) {
+						final Index remote = openRemoteIndex(artifactHandlerManager, context, versionedArtifact,
+								indexMetadataArtifact, rangeReadDepth);
+						if (remote != null) {
+							emitter.onSuccess(remote);
+							return;
+						}
+					}
+					if (versionedArtifact.getFile() != null) {
+						// the server ignored the range request and sent the whole jar instead
+						indexArtifact = versionedArtifact;
+						indexArtifact.addMetadata(metaMeta);
+						if (indexCache != null) {
+							IndexCache.put(indexArtifact.getFile(), indexCache.getCachedFile(indexArtifact));
+						}
+					} else if (indexCache != null) {
+						// the pom and the jar are always deployed together, so the jar is resolved with the same version
+						// instead of resolving the latest version from the metadata again
+						indexArtifact = new DefaultArtifact(groupId, artifactId, indexMetadataArtifact.getVersion(),
+								"test", "jar", "", artifactHandlerManager.getArtifactHandler("jar"));
+						indexArtifact.addMetadata(metaMeta);
+						indexArtifact = indexCache.resolve(context, indexArtifact);
+					} else {
+						indexArtifact.addMetadata(metaMeta);
+						indexArtifact = context.resolve(indexArtifact);
+					}
+					context.getLog().info("resolved index file to " + indexArtifact.getFile());
+				} catch (Exception e) {
+					context.getLog().warn("failed to resolve latest index: " + indexArtifact.toString());
+					context.getLog().debug("failed to resolve latest index: " + indexArtifact.toString(), e);
+				}
+			}
+
+			final List<Artifact> baseArtifacts = new ArrayList<>();
+			final boolean chainComplete = !doResolve || indexArtifact.getFile() == null
+					|| resolveBaseArtifacts(artifactHandlerManager, context, indexCache, indexArtifact, baseArtifacts);
+			if (indexCache != null && indexArtifact.getFile() != null && chainComplete) {
+				final List<String> versions = baseArtifacts.stream().map(Artifact::getVersion).collect(Collectors.toList());
+				versions.add(indexArtifact.getVersion());
+				versions.addAll(IndexSharding.readVersions(indexArtifact.getFile()).values());
+				indexCache.retain(indexArtifact, versions);
+			}
+			final Index.ShardResolver shardResolver = (classifier, version) -> {
+				final Artifact shardArtifact = new DefaultArtifact(groupId, artifactId, version,
+						"test", "jar", classifier, artifactHandlerManager.getArtifactHandler("jar"));
+				return (indexCache != null ? indexCache.resolve(context, shardArtifact) : context.resolve(shardArtifact))
+						.getFile();
+			};
+			emitter.onSuccess(new Index(context.getLog(), indexArtifact, indexMetadataArtifact, baseArtifacts, chainComplete,
+					shardResolver, Collections.emptyList()));
+		});
+	}
+
+	/**
+	 * Open the delta chain of an index with range requests.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param context                the execution context
+	 * @param indexArtifact          the latest index artifact with a specific version, whose file is set if the server
+	 *                               ignored the range request and sent the whole jar
+	 * @param indexMetadataArtifact  the resolved latest index pom artifact
+	 * @param maxDepth               the maximum delta depth
+	 * @return the remote index, or null if the index must be resolved instead
+	 */
+	static @Nullable Index openRemoteIndex(
+			@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Context context,
+			@NotNull final Artifact indexArtifact,
+			@NotNull final Artifact indexMetadataArtifact,
+			final int maxDepth) {
+		final ArtifactRepository repo = context.getReleaseRepo();
+		final String authorization = repo.getAuthentication() != null
+				? RangeIndexLookup.basicAuthorization(repo.getAuthentication().getUsername(),
+				repo.getAuthentication().getPassword())
+				: null;
+		final List<IndexLookup> chain = new ArrayList<>();
+		final List<Artifact> baseArtifacts = new ArrayList<>();
+		final Set<String> visited = new HashSet<>();
+		Artifact current = indexArtifact;
+		try {
+			while (current != null) {
+				if (!visited.add(current.getVersion())) {
+					throw new IOException("delta index chain contains a cycle at version " + current.getVersion());
+				}
+				final Path fallbackFile = context.getTempDir().resolve(
+						current.getArtifactId() + "-" + current.getVersion() + ".jar");
+				final URL url = RangeIndexLookup.artifactUrl(repo.getUrl(), repo.pathOf(current));
+				if (!RangeIndexLookup.isProxySupported(url, repo.getProxy())) {
+					context.getLog().info("index " + current + " can't be read with range requests through the proxy of "
+							+ repo.getId());
+					return null;
+				}
+				final RangeIndexLookup lookup = RangeIndexLookup.open(url, authorization, repo.getProxy(), fallbackFile,
+						context.getLog());
+				if (lookup == null) {
+					if (current == indexArtifact) {
+						indexArtifact.setFile(fallbackFile.toFile());
+					}
+					return null;
+				}
+				final Manifest manifest = lookup.readManifest();
+				final Attributes attributes = manifest != null ? manifest.getMainAttributes() : new Attributes();
+				if (lookup.isBinaryOnly() || attributes.getValue(IndexSharding.SHARDING_ATTRIBUTE) != null) {
+					context.getLog().info("index " + current + " can't be read with range requests");
+					return null;
+				}
+				final String depth = attributes.getValue(Index.DEPTH_ATTRIBUTE);
+				if (current == indexArtifact && depth != null && Integer.parseInt(depth.trim()) > maxDepth) {
+					context.getLog().info("delta index chain of " + current + " is too deep to extend remotely");
+					return null;
+				}
+				chain.add(0, lookup);
+				if (current != indexArtifact) {
+					baseArtifacts.add(0, current);
+				}
+				final String baseVersion = attributes.getValue(Index.BASE_VERSION_ATTRIBUTE);
+				current = baseVersion == null ? null : new DefaultArtifact(indexArtifact.getGroupId(),
+						indexArtifact.getArtifactId(), baseVersion, "test", "jar", "",
+						artifactHandlerManager.getArtifactHandler("jar"));
+			}
+		} catch (Exception e) {
+			context.getLog().warn("failed to read index " + indexArtifact + " with range requests: " + e.getMessage());
+			context.getLog().debug("failed to read index " + indexArtifact + " with range requests", e);
+			return null;
+		}
+		if (baseArtifacts.size() > maxDepth) {
+			context.getLog().info("delta index chain of " + indexArtifact + " is too deep to extend remotely");
+			return null;
+		}
+		context.getLog().info("reading index " + indexArtifact + " with range requests");
+		return new Index(context.getLog(), indexArtifact, indexMetadataArtifact, baseArtifacts, true, null, chain);
+	}
+
+	/**
+	 * Resolve the chain of base index artifacts when the latest index artifact is a delta.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param context                the execution context
+	 * @param indexCache             the optional index cache
+	 * @param indexArtifact          the resolved latest index artifact
+	 * @param baseArtifacts          the list to add the resolved base index artifacts to, starting from the full index
+	 * @return true if the chain was resolved down to a full index
+	 */
+	static boolean resolveBaseArtifacts(
+			@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Context context,
+			@Nullable final IndexCache indexCache,
+			@NotNull final Artifact indexArtifact,
+			@NotNull final List<Artifact> baseArtifacts) {
+		final Set<String> visited = new HashSet<>();
+		visited.add(indexArtifact.getVersion());
+		Artifact current = indexArtifact;
+		try {
+			for (String baseVersion = Index.readBaseVersion(current.getFile()); baseVersion != null;
+				 baseVersion = Index.readBaseVersion(current.getFile())) {
+				if (!visited.add(baseVersion)) {
+					throw new IllegalStateException("delta index chain contains a cycle at version " + baseVersion);
+				}
+				final Artifact baseArtifact = new DefaultArtifact(indexArtifact.getGroupId(), indexArtifact.getArtifactId(),
+						baseVersion, "test", "jar", "", artifactHandlerManager.getArtifactHandler("jar"));
+				current = indexCache != null ? indexCache.resolve(context, baseArtifact) : context.resolve(baseArtifact);
+				baseArtifacts.add(0, current);
+			}
+			if (!baseArtifacts.isEmpty()) {
+				context.getLog().info("resolved " + baseArtifacts.size() + " base artifacts for delta index " + indexArtifact);
+			}
+			return true;
+		} catch (Exception e) {
+			context.getLog().warn("failed to resolve delta index chain for " + indexArtifact + ": " + e.getMessage());
+			context.getLog().debug("failed to resolve delta index chain for " + indexArtifact, e);
+			return false;
+		}
+	}
+
+	Single<List<Index>> getAltIndexes(@NotNull final Context context) {
+		return getAltIndexes(context, -1);
+	}
+
+	/**
+	 * Resolve the alternative indexes.
+	 *
+	 * @param context        the execution context
+	 * @param rangeReadDepth the maximum delta depth of an index to read with range requests, or -1 to always resolve the
+	 *                       index jars
+	 * @return the alternative indexes
+	 */
+	Single<List<Index>> getAltIndexes(@NotNull final Context context, final int rangeReadDepth) {
+		if (StringUtils.isBlank(altIndex)) {
+			return Single.just(Collections.emptyList());
+		} else {
+			return Observable.fromStream(Arrays.stream(altIndex.split(",")))
+					.filter(part -> part.contains(":"))
+					.map(String::trim)
+					.flatMap(coords -> {
+						final String[] elements = coords.split(":");
+						final String groupId = StringUtils.isNotEmpty(elements[0]) ? elements[0] : indexGroupId;
+						final String artifactId = elements[1];
+						if (groupId.equals(indexGroupId) && artifactId.equals(indexArtifactId)) {
+							return Observable.empty();
+						} else {
+							return getIndex(context, groupId, artifactId, true, rangeReadDepth).toObservable();
+						}
+					})
+					.collect(Collectors.toList());
+		}
+	}
+
+	/**
+	 * @return the execution to block on
+	 */
+	abstract Completable doExecute();
+
+	@Override
+	public void execute() throws MojoExecutionException, MojoFailureException {
+		Completable execution = doExecute();
+		try {
+			execution.blockingAwait();
+		} catch (Exception e) {
+			if (e.getCause() instanceof MojoFailureException) {
+				throw (MojoFailureException) e.getCause();
+			}
+			throw new MojoExecutionException(e.getMessage(), e.getCause());
+		}
+	}
+
+}
@@ -0,0 +1,185 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Limits the number of concurrent uploads with additive increase and multiplicative decrease. The limit grows by about
+ * one for every limit's worth of uploads that complete without a congestion signal, and is cut when an upload reports
+ * throttling or a server error, or when the smoothed upload latency rises well above its long term average. Latency is
+ * only compared between uploads of a similar size, since a large artifact group takes longer than a small one without any
+ * congestion. The limit is cut at most once per window of completed uploads, so that a burst of failures from the same
+ * congested window only counts once.
+ */
+final class AdaptiveLimiter {
+	static final double BACKOFF_RATIO = 0.5;
+
+	static final double LATENCY_BACKOFF_RATIO = 0.8;
+
+	static final double LATENCY_TOLERANCE = 2.0;
+
+	static final double SHORT_ALPHA = 0.3;
+
+	static final double LONG_ALPHA = 0.05;
+
+	/**
+	 * The number of size classes that latency is tracked for. Each class covers sizes within a factor of four.
+	 */
+	static final int SIZE_CLASSES = 32;
+
+	private final int min;
+
+	private final int max;
+
+	private final @NotNull Log log;
+
+	private double limit;
+
+	private int inFlight;
+
+	private int peak;
+
+	private int completedSinceDecrease;
+
+	private final long[] samples = new long[SIZE_CLASSES];
+
+	private final double[] shortLatency = new double[SIZE_CLASSES];
+
+	private final double[] longLatency = new double[SIZE_CLASSES];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param min     the minimum limit
+	 * @param max     the maximum limit
+	 * @param initial the initial limit
+	 * @param log     the log
+	 */
+	AdaptiveLimiter(final int min, final int max, final int initial, @NotNull final Log log) {
+		this.min = Math.max(1, min);
+		this.max = Math.max(this.min, max);
+		this.limit = Math.min(this.max, Math.max(this.min, initial));
+		this.peak = (int) limit;
+		this.completedSinceDecrease = (int) limit;
+		this.log = log;
+	}
+
+	int getMin() {
+		return min;
+	}
+
+	int getMax() {
+		return max;
+	}
+
+	synchronized int getLimit() {
+		return (int) limit;
+	}
+
+	synchronized int getInFlight() {
+		return inFlight;
+	}
+
+	synchronized int getPeak() {
+		return peak;
+	}
+
+	/**
+	 * Wait until an upload may start.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	synchronized void acquire() throws InterruptedException {
+		while (inFlight >= (int) limit) {
+			wait();
+		}
+		inFlight++;
+	}
+
+	/**
+	 * Give back a permit without recording an upload, when the artifact group taken with it has nothing to deploy.
+	 */
+	synchronized void cancel() {
+		inFlight--;
+		notifyAll();
+	}
+
+	/**
+	 * Record a completed upload.
+	 *
+	 * @param latencyNanos the duration of the upload
+	 * @param bytes        the number of bytes uploaded
+	 * @param congested    true if the upload reported throttling or a server error
+	 */
+	synchronized void release(final long latencyNanos, final long bytes, final boolean congested) {
+		inFlight--;
+		completedSinceDecrease++;
+		if (congested) {
+			decrease(BACKOFF_RATIO, "throttled or failed upload");
+		} else if (recordLatency(latencyNanos, bytes)) {
+			decrease(LATENCY_BACKOFF_RATIO, "rising upload latency");
+		} else if (limit < max) {
+			final int before = (int) limit;
+			limit = Math.min(max, limit + 1.0 / limit);
+			if ((int) limit > before) {
+				peak = Math.max(peak, (int) limit);
+				log.debug("upload concurrency limit raised to " + (int) limit);
+			}
+		}
+		notifyAll();
+	}
+
+	static int sizeClassOf(final long bytes) {
+		return Math.min(SIZE_CLASSES - 1, (Long.SIZE - Long.numberOfLeadingZeros(Math.max(0L, bytes))) / 2);
+	}
+
+	/**
+	 * Track the smoothed latency of recent uploads against the long term average of uploads of a similar size.
+	 *
+	 * @param latencyNanos the duration of the upload
+	 * @param bytes        the number of bytes uploaded
+	 * @return true if the recent latency is high enough to count as congestion
+	 */
+	boolean recordLatency(final long latencyNanos, final long bytes) {
+		final int sizeClass = sizeClassOf(bytes);
+		samples[sizeClass]++;
+		if (samples[sizeClass] == 1) {
+			shortLatency[sizeClass] = latencyNanos;
+			longLatency[sizeClass] = latencyNanos;
+			return false;
+		}
+		shortLatency[sizeClass] += SHORT_ALPHA * (latencyNanos - shortLatency[sizeClass]);
+		longLatency[sizeClass] += LONG_ALPHA * (latencyNanos - longLatency[sizeClass]);
+		if (samples[sizeClass] > 2L * max && shortLatency[sizeClass] > LATENCY_TOLERANCE * longLatency[sizeClass]) {
+			// start over from the long term average so that a single spike is not counted twice
+			shortLatency[sizeClass] = longLatency[sizeClass];
+			return true;
+		}
+		return false;
+	}
+
+	void decrease(final double ratio, @NotNull final String reason) {
+		if (completedSinceDecrease < (int) limit || limit <= min) {
+			return;
+		}
+		completedSinceDecrease = 0;
+		limit = Math.max(min, limit * ratio);
+		log.info(String.format("upload concurrency limit lowered to %d after %s", (int) limit, reason));
+	}
+}
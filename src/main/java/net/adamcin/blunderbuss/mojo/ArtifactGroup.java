@@ -21,17 +21,33 @@ import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
 import org.jetbrains.annotations.NotNull;
 
+import java.io.BufferedReader;
+import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Stream;
 
 public final class ArtifactGroup {
+	/**
+	 * The name of the file written by maven resolver next to cached artifacts to track the ids of the repositories they were
+	 * downloaded from.
+	 */
+	static final String REMOTE_REPOSITORIES = "_remote.repositories";
+
 	private final Path layoutPrefix;
 
 	private final Artifact pomArtifact;
@@ -44,6 +60,10 @@ public final class ArtifactGroup {
 
 	private final boolean terminateOnFailure;
 
+	private final Map<Path, BasicFileAttributes> entries;
+
+	private final Map<Path, String> indexRecords;
+
 	public ArtifactGroup(@NotNull final Path layoutPrefix, @NotNull final Artifact pomArtifact) {
 		this(layoutPrefix, pomArtifact, Collections.emptyMap(), Collections.emptySet(), false);
 	}
@@ -54,12 +74,42 @@ public final class ArtifactGroup {
 			@NotNull final Map<Path, Artifact> deployables,
 			@NotNull final Set<Path> indexed,
 			final boolean terminateOnFailure) {
+		this(layoutPrefix, pomArtifact, deployables, indexed, terminateOnFailure, Collections.emptyMap());
+	}
+
+	public ArtifactGroup(
+			@NotNull final Path layoutPrefix,
+			@NotNull final Artifact pomArtifact,
+			@NotNull final Map<Path, Artifact> deployables,
+			@NotNull final Set<Path> indexed,
+			final boolean terminateOnFailure,
+			@NotNull final Map<Path, BasicFileAttributes> entries) {
+		this(layoutPrefix, pomArtifact, Gav.fromArtifact(pomArtifact), deployables, indexed, terminateOnFailure, entries,
+				Collections.emptyMap());
+	}
+
+	ArtifactGroup(@NotNull final Path layoutPrefix, @NotNull final Artifact pomArtifact, @NotNull final Gav gav) {
+		this(layoutPrefix, pomArtifact, gav, Collections.emptyMap(), Collections.emptySet(), false, Collections.emptyMap(),
+				Collections.emptyMap());
+	}
+
+	private ArtifactGroup(
+			@NotNull final Path layoutPrefix,
+			@NotNull final Artifact pomArtifact,
+			@NotNull final Gav gav,
+			@NotNull final Map<Path, Artifact> deployables,
+			@NotNull final Set<Path> indexed,
+			final boolean terminateOnFailure,
+			@NotNull final Map<Path, BasicFileAttributes> entries,
+			@NotNull final Map<Path, String> indexRecords) {
 		this.layoutPrefix = layoutPrefix;
 		this.pomArtifact = pomArtifact;
-		this.gav = Gav.fromArtifact(pomArtifact);
+		this.gav = gav;
 		this.deployables = Collections.unmodifiableMap(deployables);
 		this.indexed = Collections.unmodifiableSet(indexed);
 		this.terminateOnFailure = terminateOnFailure;
+		this.entries = Collections.unmodifiableMap(entries);
+		this.indexRecords = Collections.unmodifiableMap(indexRecords);
 	}
 
 	public Path getLayoutPrefix() {
@@ -86,33 +136,156 @@ public final class ArtifactGroup {
 		return indexed;
 	}
 
+	/**
+	 * Get the index entry lines that carry the size and SHA-1 of indexed files, keyed by filename, so that the records can be
+	 * written to a new index without hashing the files again.
+	 *
+	 * @return the index entry lines with checksums
+	 */
+	public Map<Path, String> getIndexRecords() {
+		return indexRecords;
+	}
+
 	public boolean isTerminateOnFailure() {
 		return terminateOnFailure;
 	}
 
+	/**
+	 * Get the snapshot of the version directory entries captured during discovery, keyed by filename. An empty map indicates
+	 * that no snapshot was captured, because a version directory always contains at least the pom file.
+	 *
+	 * @return the version directory entries
+	 */
+	public Map<Path, BasicFileAttributes> getEntries() {
+		return entries;
+	}
+
+	/**
+	 * Get the total size of the deployable files that are not indexed yet, using the sizes captured during discovery
+	 * when available, so that larger groups can be scheduled first.
+	 *
+	 * @return the total size in bytes
+	 */
+	public long getDeployableSize() {
+		long size = 0L;
+		for (Map.Entry<Path, Artifact> deployable : deployables.entrySet()) {
+			if (indexed.contains(deployable.getKey())) {
+				continue;
+			}
+			final BasicFileAttributes attributes = entries.get(deployable.getKey());
+			if (attributes != null) {
+				size += attributes.size();
+			} else if (deployable.getValue().getFile() != null) {
+				size += deployable.getValue().getFile().length();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Return a new artifact group carrying the provided snapshot of the version directory entries, so that
+	 * {@link #findDeployables(ArtifactHandlerManager, Set)} does not need to list the directory again.
+	 *
+	 * @param entries the version directory entries keyed by filename
+	 * @return a new artifact group
+	 */
+	public ArtifactGroup withEntries(@NotNull final Map<Path, BasicFileAttributes> entries) {
+		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, this.gav, this.deployables, this.indexed, this.terminateOnFailure,
+				entries, this.indexRecords);
+	}
+
 	public ArtifactGroup findDeployables(@NotNull final ArtifactHandlerManager artifactHandlerManager) {
+		return findDeployables(artifactHandlerManager, Collections.emptySet());
+	}
+
+	/**
+	 * Find the deployable files in the same directory as the pom artifact. Files that were downloaded from any of the
+	 * repositories identified by {@code skipOriginRepositoryIds} are already present in that repository, so they are added
+	 * to the indexed set instead.
+	 *
+	 * @param artifactHandlerManager  the artifact handler manager
+	 * @param skipOriginRepositoryIds ids of repositories whose downloaded files should not be deployed
+	 * @return a new artifact group
+	 */
+	public ArtifactGroup findDeployables(@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Set<String> skipOriginRepositoryIds) {
 		final Map<Path, Artifact> newDeployables = new LinkedHashMap<>(this.deployables);
+		final Set<Path> newIndexed = new HashSet<>(this.indexed);
+		final File versionDir = pomArtifact.getFile().getParentFile();
+		if (!skipOriginRepositoryIds.isEmpty()
+				&& (entries.isEmpty() || entries.containsKey(Paths.get(REMOTE_REPOSITORIES)))) {
+			readRemoteOrigins(versionDir.toPath()).forEach((filename, repositoryIds) -> {
+				if (repositoryIds.stream().anyMatch(skipOriginRepositoryIds::contains)) {
+					final Path skipped = Paths.get(filename);
+					newDeployables.remove(skipped);
+					newIndexed.add(skipped);
+				}
+			});
+		}
 		final Path pomFilename = pomArtifact.getFile().toPath().getFileName();
-		if (!newDeployables.containsKey(pomFilename) && !indexed.contains(pomFilename)) {
+		if (!newDeployables.containsKey(pomFilename) && !newIndexed.contains(pomFilename)) {
 			newDeployables.put(pomFilename, pomArtifact);
 		}
 		final String pomFileName = pomArtifact.getFile().getName();
 		final String prefix = pomArtifact.getArtifactId() + "-" + pomArtifact.getVersion();
-		final FilenameFilter filter = (dir, name) -> !name.equals(pomFileName) && name.startsWith(prefix);
-		Arrays.stream(pomArtifact.getFile().getParentFile().listFiles(filter))
-				.filter(other -> !indexed.contains(other.toPath().getFileName()) && !other.getName().endsWith(".lastUpdated"))
-				.map(other -> {
-					final String suffix = other.getName().substring(prefix.length());
+		final Stream<String> candidates;
+		if (entries.isEmpty()) {
+			final FilenameFilter filter = (dir, name) -> !name.equals(pomFileName) && name.startsWith(prefix);
+			candidates = Arrays.stream(versionDir.list(filter));
+		} else {
+			candidates = entries.entrySet().stream()
+					.filter(entry -> entry.getValue().isRegularFile())
+					.map(entry -> entry.getKey().toString())
+					.filter(name -> !name.equals(pomFileName) && name.startsWith(prefix));
+		}
+		candidates
+				.filter(name -> !newIndexed.contains(Paths.get(name)) && !name.endsWith(".lastUpdated"))
+				.map(name -> {
+					final String suffix = name.substring(prefix.length());
 					final int firstPeriod = suffix.indexOf('.');
 					final String type = suffix.substring(firstPeriod + 1);
 					final String classifier = firstPeriod > 0 && suffix.startsWith("-") ? suffix.substring(1, firstPeriod) : "";
 					final DefaultArtifact artifact = new DefaultArtifact(pomArtifact.getGroupId(), pomArtifact.getArtifactId(),
 							pomArtifact.getVersion(), "compile", type, classifier, artifactHandlerManager.getArtifactHandler(type));
-					artifact.setFile(other);
+					artifact.setFile(new File(versionDir, name));
 					pomArtifact.getMetadataList().forEach(artifact::addMetadata);
 					return artifact;
 				}).forEachOrdered(artifact -> newDeployables.put(artifact.getFile().toPath().getFileName(), artifact));
-		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, newDeployables, this.indexed, this.terminateOnFailure);
+		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, this.gav, newDeployables, newIndexed, this.terminateOnFailure,
+				this.entries, this.indexRecords);
+	}
+
+	/**
+	 * Read the {@code _remote.repositories} file in a version directory, which maps each cached filename to the ids of the
+	 * repositories it was downloaded from. Lines have the form {@code filename>repositoryId=}, where an empty repository id
+	 * indicates a locally installed file.
+	 *
+	 * @param versionDir the version directory
+	 * @return a map of filenames to the set of non-empty origin repository ids
+	 */
+	static Map<String, Set<String>> readRemoteOrigins(@NotNull final Path versionDir) {
+		final Path remoteRepositories = versionDir.resolve(REMOTE_REPOSITORIES);
+		final Map<String, Set<String>> origins = new HashMap<>();
+		if (!Files.isRegularFile(remoteRepositories)) {
+			return origins;
+		}
+		try (BufferedReader reader = Files.newBufferedReader(remoteRepositories, StandardCharsets.UTF_8)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				final int separator = line.indexOf('>');
+				if (line.startsWith("#") || separator <= 0 || !line.endsWith("=")) {
+					continue;
+				}
+				final String repositoryId = line.substring(separator + 1, line.length() - 1).trim();
+				if (!repositoryId.isEmpty()) {
+					origins.computeIfAbsent(line.substring(0, separator).trim(), key -> new HashSet<>()).add(repositoryId);
+				}
+			}
+		} catch (IOException e) {
+			// an unreadable tracking file only means that origins can't be used to skip deployables
+			return Collections.emptyMap();
+		}
+		return origins;
 	}
 
 	public ArtifactGroup filteredByIndex(@NotNull final List<Path> indexed) {
@@ -124,11 +297,65 @@ public final class ArtifactGroup {
 				newDeployables.remove(indexPath);
 			}
 		}
-		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, newDeployables, newIndexed, this.terminateOnFailure);
+		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, this.gav, newDeployables, newIndexed, this.terminateOnFailure,
+				this.entries, this.indexRecords);
+	}
+
+	/**
+	 * Filter by the indexed filenames held by an {@link IndexLookup}.
+	 *
+	 * @param indexedFilenames the indexed filenames
+	 * @return the filtered artifact group
+	 */
+	public ArtifactGroup filteredByIndex(@NotNull final String[] indexedFilenames) {
+		return filteredByIndex(indexedFilenames, false);
+	}
+
+	/**
+	 * Filter by the index entry lines held by an {@link IndexLookup}. When {@code verifyContent} is true, a deployable file
+	 * whose index record carries a size and SHA-1 remains deployable if its content differs from the record.
+	 *
+	 * @param indexLines    the index entry lines
+	 * @param verifyContent true to compare deployable files with the size and SHA-1 of their index records
+	 * @return the filtered artifact group
+	 */
+	public ArtifactGroup filteredByIndex(@NotNull final String[] indexLines, final boolean verifyContent) {
+		final Map<Path, Artifact> newDeployables = new LinkedHashMap<>(this.deployables);
+		final Set<Path> newIndexed = new HashSet<>(this.indexed);
+		final Map<Path, String> newRecords = new HashMap<>(this.indexRecords);
+		for (String line : indexLines) {
+			final IndexRecord record = IndexRecord.parse(line);
+			final Path filename = Paths.get(record.getFilename());
+			final Artifact deployable = newDeployables.get(filename);
+			if (verifyContent && deployable != null && record.hasChecksum() && !contentMatches(record, deployable.getFile())) {
+				continue;
+			}
+			newIndexed.add(filename);
+			newDeployables.remove(filename);
+			if (record.hasChecksum()) {
+				newRecords.put(filename, line);
+			}
+		}
+		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, this.gav, newDeployables, newIndexed, this.terminateOnFailure,
+				this.entries, newRecords);
+	}
+
+	private boolean contentMatches(@NotNull final IndexRecord record, @NotNull final File file) {
+		final BasicFileAttributes attributes = entries.get(Paths.get(record.getFilename()));
+		if (attributes != null && attributes.size() != record.getSize()) {
+			return false;
+		}
+		try {
+			return record.matches(file);
+		} catch (IOException e) {
+			// an unreadable file is left deployable, so that the sync reports the failure
+			return false;
+		}
 	}
 
 	public ArtifactGroup markTerminateOnFailure(final boolean terminateOnFailure) {
-		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, this.deployables, this.indexed, terminateOnFailure);
+		return new ArtifactGroup(this.layoutPrefix, this.pomArtifact, this.gav, this.deployables, this.indexed, terminateOnFailure,
+				this.entries, this.indexRecords);
 	}
 
 	public boolean isSnapshot() {
@@ -0,0 +1,410 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * A single sorted, prefix-compressed index file, stored as one entry of the index jar, that is memory-mapped and searched
+ * in place instead of being inflated into one jar entry per layout prefix.
+ * <p>
+ * The file consists of a header, an array of restart offsets, and the records sorted by the unsigned bytes of their UTF-8
+ * keys. Every record stores the number of key bytes shared with the previous record, the remaining key bytes, and the
+ * indexed filenames joined by newlines. Every {@link #RESTART_INTERVAL}th record is a restart point that stores its full key,
+ * so that a lookup binary searches the restart points and then scans at most one interval of records, comparing key bytes
+ * directly in the mapped buffer.
+ * <pre>
+ * header:  int magic, int formatVersion, int recordCount, int restartInterval, int restartCount
+ * offsets: int[restartCount], relative to the start of the records
+ * record:  u16 sharedLength, u16 suffixLength, byte[suffixLength] suffix, int valueLength, byte[valueLength] value
+ * </pre>
+ */
+public final class BinaryIndex implements IndexLookup {
+	/**
+	 * The name of the binary index entry in the index jar.
+	 */
+	public static final String ENTRY_NAME = "META-INF/blunderbuss/index.bin";
+
+	static final int MAGIC = 0x42424958;
+
+	static final int FORMAT_VERSION = 1;
+
+	static final int RESTART_INTERVAL = 16;
+
+	private static final int HEADER_LENGTH = 20;
+
+	private static final int MAX_KEY_LENGTH = 0xFFFF;
+
+	private static final String[] NO_FILENAMES = new String[0];
+
+	/**
+	 * Orders keys by their unsigned UTF-8 bytes, which is the order used by the restart point binary search.
+	 */
+	static final Comparator<byte[]> KEY_ORDER = (left, right) -> {
+		final int length = Math.min(left.length, right.length);
+		for (int i = 0; i < length; i++) {
+			final int cmp = (left[i] & 0xFF) - (right[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return left.length - right.length;
+	};
+
+	private final ByteBuffer buffer;
+
+	private final int recordCount;
+
+	private final int restartInterval;
+
+	private final int restartCount;
+
+	private final int recordsStart;
+
+	private final @Nullable Path mappedFile;
+
+	BinaryIndex(@NotNull final ByteBuffer buffer, @Nullable final Path mappedFile) throws IOException {
+		this.buffer = buffer;
+		this.mappedFile = mappedFile;
+		if (buffer.capacity() < HEADER_LENGTH || buffer.getInt(0) != MAGIC) {
+			throw new IOException("not a binary index");
+		}
+		if (buffer.getInt(4) != FORMAT_VERSION) {
+			throw new IOException("unsupported binary index format version: " + buffer.getInt(4));
+		}
+		this.recordCount = buffer.getInt(8);
+		this.restartInterval = buffer.getInt(12);
+		this.restartCount = buffer.getInt(16);
+		this.recordsStart = HEADER_LENGTH + 4 * restartCount;
+	}
+
+	/**
+	 * Map a binary index file.
+	 *
+	 * @param binFile the binary index file
+	 * @return the binary index
+	 * @throws IOException if the file can't be mapped or is not a binary index
+	 */
+	public static BinaryIndex map(@NotNull final Path binFile) throws IOException {
+		return map(binFile, false);
+	}
+
+	private static BinaryIndex map(@NotNull final Path binFile, final boolean deleteOnClose) throws IOException {
+		// the mapping remains valid after the channel is closed
+		try (FileChannel channel = FileChannel.open(binFile, StandardOpenOption.READ)) {
+			return new BinaryIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()),
+					deleteOnClose ? binFile : null);
+		}
+	}
+
+	/**
+	 * Extract the binary index entry of an index jar to a temporary file, which is deleted when the index is closed, and map
+	 * it.
+	 *
+	 * @param jar the open index jar
+	 * @return the binary index
+	 * @throws IOException if the entry can't be extracted or mapped
+	 */
+	static BinaryIndex extractAndMap(@NotNull final JarFile jar) throws IOException {
+		final JarEntry entry = jar.getJarEntry(ENTRY_NAME);
+		if (entry == null) {
+			throw new IOException("index jar does not contain " + ENTRY_NAME);
+		}
+		final Path binFile = Files.createTempFile("blunderbuss_index", ".bin");
+		try (InputStream input = jar.getInputStream(entry)) {
+			Files.copy(input, binFile, StandardCopyOption.REPLACE_EXISTING);
+			return map(binFile, true);
+		} catch (IOException e) {
+			Files.deleteIfExists(binFile);
+			throw e;
+		}
+	}
+
+	@Override
+	public int size() {
+		return recordCount;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (mappedFile != null && !mappedFile.toFile().delete()) {
+			// a mapped file can't be deleted on some platforms until the buffer is collected
+			mappedFile.toFile().deleteOnExit();
+		}
+	}
+
+	private int restartOffset(final int restart) {
+		return recordsStart + buffer.getInt(HEADER_LENGTH + 4 * restart);
+	}
+
+	private int compareRestartKey(final int restart, @NotNull final byte[] target) {
+		final int pos = restartOffset(restart);
+		final int keyLength = buffer.getShort(pos + 2) & 0xFFFF;
+		final int keyStart = pos + 4;
+		final int length = Math.min(keyLength, target.length);
+		for (int i = 0; i < length; i++) {
+			final int cmp = (buffer.get(keyStart + i) & 0xFF) - (target[i] & 0xFF);
+			if (cmp != 0) {
+				return cmp;
+			}
+		}
+		return keyLength - target.length;
+	}
+
+	/**
+	 * Find the position of the record with the target key.
+	 *
+	 * @param target the target key bytes
+	 * @return the record position, or -1 if there is no such record
+	 */
+	int find(@NotNull final byte[] target) {
+		if (restartCount == 0) {
+			return -1;
+		}
+		// find the last restart point with a key that is less than or equal to the target
+		int lo = 0;
+		int hi = restartCount - 1;
+		while (lo < hi) {
+			final int mid = (lo + hi + 1) >>> 1;
+			if (compareRestartKey(mid, target) <= 0) {
+				lo = mid;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		// the number of leading bytes of the current key that equal the target, which is all that is needed to compare
+		// each following prefix-compressed key without reconstructing it
+		int matched = 0;
+		int pos = restartOffset(lo);
+		final int end = Math.min(recordCount, (lo + 1) * restartInterval);
+		for (int record = lo * restartInterval; record < end; record++) {
+			final int shared = buffer.getShort(pos) & 0xFFFF;
+			final int suffixLength = buffer.getShort(pos + 2) & 0xFFFF;
+			if (shared < matched) {
+				// this key diverges from the previous key before the previous key diverged from the target, so it sorts
+				// after the target
+				return -1;
+			}
+			if (shared == matched) {
+				final int keyLength = shared + suffixLength;
+				int i = 0;
+				while (i < suffixLength && matched < target.length
+						&& buffer.get(pos + 4 + i) == target[matched]) {
+					i++;
+					matched++;
+				}
+				if (matched == target.length && keyLength == target.length) {
+					return pos;
+				}
+				if (matched == target.length
+						|| (i < suffixLength && (buffer.get(pos + 4 + i) & 0xFF) > (target[matched] & 0xFF))) {
+					return -1;
+				}
+			}
+			pos = nextRecord(pos);
+		}
+		return -1;
+	}
+
+	private int nextRecord(final int pos) {
+		final int suffixLength = buffer.getShort(pos + 2) & 0xFFFF;
+		final int valuePos = pos + 4 + suffixLength;
+		return valuePos + 4 + buffer.getInt(valuePos);
+	}
+
+	private String[] readValue(final int pos) {
+		final int valuePos = pos + 4 + (buffer.getShort(pos + 2) & 0xFFFF);
+		final int valueLength = buffer.getInt(valuePos);
+		if (valueLength == 0) {
+			return NO_FILENAMES;
+		}
+		final byte[] value = new byte[valueLength];
+		for (int i = 0; i < valueLength; i++) {
+			value[i] = buffer.get(valuePos + 4 + i);
+		}
+		return new String(value, StandardCharsets.UTF_8).split("\n");
+	}
+
+	@Override
+	public @Nullable String[] getFilenames(@NotNull final Path layoutPrefix) {
+		final int pos = find(IndexLookup.keyFor(layoutPrefix).getBytes(StandardCharsets.UTF_8));
+		return pos < 0 ? null : readValue(pos);
+	}
+
+	/**
+	 * Visit every record in key order.
+	 *
+	 * @param consumer the record consumer
+	 */
+	@Override
+	public void forEach(@NotNull final BiConsumer<String, String[]> consumer) {
+		final byte[] key = new byte[MAX_KEY_LENGTH];
+		int pos = recordsStart;
+		for (int record = 0; record < recordCount; record++) {
+			final int shared = buffer.getShort(pos) & 0xFFFF;
+			final int suffixLength = buffer.getShort(pos + 2) & 0xFFFF;
+			for (int i = 0; i < suffixLength; i++) {
+				key[shared + i] = buffer.get(pos + 4 + i);
+			}
+			consumer.accept(new String(key, 0, shared + suffixLength, StandardCharsets.UTF_8), readValue(pos));
+			pos = nextRecord(pos);
+		}
+	}
+
+	/**
+	 * Write a binary index.
+	 *
+	 * @param output  the output stream
+	 * @param entries the indexed filenames by lookup key
+	 * @throws IOException if the index can't be written
+	 */
+	public static void write(@NotNull final OutputStream output,
+			@NotNull final Map<String, ? extends Iterable<String>> entries) throws IOException {
+		final TreeMap<byte[], byte[]> sorted = new TreeMap<>(KEY_ORDER);
+		for (Map.Entry<String, ? extends Iterable<String>> entry : entries.entrySet()) {
+			final byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+			if (key.length > MAX_KEY_LENGTH) {
+				throw new IOException("index key is too long: " + entry.getKey());
+			}
+			final List<String> filenames = new ArrayList<>();
+			entry.getValue().forEach(filenames::add);
+			filenames.sort(null);
+			sorted.put(key, String.join("\n", filenames).getBytes(StandardCharsets.UTF_8));
+		}
+		final ByteArrayOutputStream records = new ByteArrayOutputStream();
+		final DataOutputStream recordsOut = new DataOutputStream(records);
+		final List<Integer> restarts = new ArrayList<>();
+		byte[] previous = new byte[0];
+		int record = 0;
+		for (Map.Entry<byte[], byte[]> entry : sorted.entrySet()) {
+			final byte[] key = entry.getKey();
+			int shared = 0;
+			if (record % RESTART_INTERVAL == 0) {
+				restarts.add(recordsOut.size());
+			} else {
+				final int length = Math.min(previous.length, key.length);
+				while (shared < length && previous[shared] == key[shared]) {
+					shared++;
+				}
+			}
+			recordsOut.writeShort(shared);
+			recordsOut.writeShort(key.length - shared);
+			recordsOut.write(key, shared, key.length - shared);
+			recordsOut.writeInt(entry.getValue().length);
+			recordsOut.write(entry.getValue());
+			previous = key;
+			record++;
+		}
+		recordsOut.flush();
+		final DataOutputStream out = new DataOutputStream(output);
+		out.writeInt(MAGIC);
+		out.writeInt(FORMAT_VERSION);
+		out.writeInt(sorted.size());
+		out.writeInt(RESTART_INTERVAL);
+		out.writeInt(restarts.size());
+		for (int restart : restarts) {
+			out.writeInt(restart);
+		}
+		records.writeTo(out);
+		out.flush();
+	}
+
+	/**
+	 * Write a binary index from a directory of text index entries.
+	 *
+	 * @param indexDir the directory of text index entries
+	 * @param binFile  the binary index file to write
+	 * @throws IOException if the directory can't be read or the index can't be written
+	 */
+	public static void writeFromDir(@NotNull final Path indexDir, @NotNull final Path binFile) throws IOException {
+		final Map<String, List<String>> entries = new TreeMap<>();
+		Files.walkFileTree(indexDir, new SimpleFileVisitor<Path>() {
+			@Override
+			public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException {
+				final String name = IndexLookup.keyFor(indexDir.relativize(file));
+				if (name.endsWith(EntryIndexLookup.ENTRY_SUFFIX) && !name.startsWith(EntryIndexLookup.META_INF)) {
+					final List<String> filenames = new ArrayList<>();
+					for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+						if (!line.isEmpty()) {
+							filenames.add(line);
+						}
+					}
+					entries.put(name.substring(0, name.length() - EntryIndexLookup.ENTRY_SUFFIX.length()), filenames);
+				}
+				return FileVisitResult.CONTINUE;
+			}
+		});
+		Files.createDirectories(binFile.getParent());
+		try (OutputStream output = Files.newOutputStream(binFile)) {
+			write(output, entries);
+		}
+	}
+
+	/**
+	 * Expand a binary index file into text index entries, so that an index builder can update it incrementally. Existing
+	 * text entries are left in place.
+	 *
+	 * @param binFile  the binary index file
+	 * @param indexDir the directory of text index entries
+	 * @throws IOException if the index can't be read or the entries can't be written
+	 */
+	public static void expandToDir(@NotNull final Path binFile, @NotNull final Path indexDir) throws IOException {
+		final List<IOException> errors = new ArrayList<>();
+		try (BinaryIndex index = map(binFile)) {
+			index.forEach((key, filenames) -> {
+				final Path entryFile = indexDir.resolve(key + EntryIndexLookup.ENTRY_SUFFIX);
+				if (errors.isEmpty() && !Files.exists(entryFile)) {
+					try {
+						Files.createDirectories(entryFile.getParent());
+						Files.write(entryFile, Arrays.asList(filenames), StandardCharsets.UTF_8);
+					} catch (IOException e) {
+						errors.add(e);
+					}
+				}
+			});
+		}
+		if (!errors.isEmpty()) {
+			throw errors.get(0);
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Completable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.functions.Predicate;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolverException;
+import org.codehaus.plexus.util.StringUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Consolidate the index specified with {@code indexGroupId} and {@code indexArtifactId} and all the indexes specified with
+ * {@code altIndex} into a single index, and deploy it to the deployment repository. The consolidated index is the union
+ * of all entries of the resolved indexes, including the whole chain of each delta index, without entries for SNAPSHOT
+ * versions, without empty entries, and optionally without entries whose pom no longer exists in the deployment repository.
+ * <p>
+ * Pipelines that each maintain their own index can then switch to the consolidated index by setting it as their
+ * {@code indexArtifactId} and dropping the consolidated indexes from {@code altIndex}, which reduces the number and size of
+ * the index artifacts that every execution of the {@code sync} goal has to resolve and load.
+ */
+@Mojo(name = "compact", requiresProject = false, inheritByDefault = false, aggregator = true, requiresOnline = true)
+public class CompactMojo extends AbstractIndexMojo {
+
+	/**
+	 * Specify the artifactId of the consolidated index that is deployed by this execution, in the {@code indexGroupId}
+	 * group. If not specified, the consolidated index is deployed as a new full version of the {@code indexArtifactId}
+	 * index.
+	 */
+	@Parameter(name = "compactIndexArtifactId", property = "blunderbuss.compactIndexArtifactId")
+	private String compactIndexArtifactId;
+
+	/**
+	 * Set to true to resolve the pom of every indexed GAV from the deployment repository, and to drop the entries of the
+	 * GAVs whose pom fails to resolve. Because artifacts that are already present in the local repository are resolved
+	 * without contacting the deployment repository, this should be used with an empty local repository, for example by
+	 * specifying {@code -Dmaven.repo.local=...}.
+	 */
+	@Parameter(name = "compactVerifyPoms", property = "blunderbuss.compactVerifyPoms")
+	private boolean compactVerifyPoms;
+
+	/**
+	 * The maximum number of concurrent pom resolutions when {@code compactVerifyPoms} is true.
+	 */
+	@Parameter(name = "compactParallelism", property = "blunderbuss.compactParallelism", defaultValue = "8")
+	private int compactParallelism;
+
+	String getCompactIndexArtifactId() {
+		return StringUtils.isNotBlank(compactIndexArtifactId) ? compactIndexArtifactId.trim() : indexArtifactId;
+	}
+
+	Predicate<Gav> getPomExistsPredicate(@NotNull final Context context) {
+		return gav -> {
+			try {
+				context.resolve(new DefaultArtifact(gav.getGroupId(), gav.getArtifactId(), gav.getVersion(),
+						"import", "pom", "", artifactHandlerManager.getArtifactHandler("pom")));
+				return true;
+			} catch (ArtifactResolverException e) {
+				context.getLog().debug("failed to resolve pom for " + gav, e);
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Resolve all the indexes to consolidate, starting with the primary index.
+	 *
+	 * @param context the execution context
+	 * @return the indexes
+	 */
+	Single<MergedIndex> getMergedIndex(@NotNull final Context context) {
+		return getIndex(context, indexGroupId, indexArtifactId, true)
+				.flatMap(index -> getAltIndexes(context).flatMap(altIndexes -> {
+					final List<Index> indexes = new ArrayList<>();
+					indexes.add(index);
+					indexes.addAll(altIndexes);
+					for (Index incomplete : indexes) {
+						// the union would silently drop the entries of the unresolved base versions
+						if (!incomplete.isChainComplete()) {
+							return Single.error(new MojoFailureException(String.format(
+									"the delta chain of index %s is incomplete and can't be compacted",
+									incomplete.getIndexArtifact())));
+						}
+					}
+					return Single.just(new MergedIndex(getLog(), indexes));
+				}));
+	}
+
+	@Override
+	Completable doExecute() {
+		return getContext()
+				.flatMapCompletable(context -> getMergedIndex(context)
+						.flatMapCompletable(mergedIndex -> getIndex(context, indexGroupId,
+								getCompactIndexArtifactId(), false)
+								.flatMap(target -> IndexBuilder.fromIndex(target, context,
+										new IndexBuilder.Config(false, 0)
+												.withMaxInFlight(compactParallelism)
+												.withFormat(indexFormat)
+												.withCompression(indexCompression)
+												.withSharding(getIndexSharding())))
+								.flatMap(indexBuilder -> new IndexCompactor(getLog(),
+										compactVerifyPoms ? getPomExistsPredicate(context) : null,
+										compactParallelism).compact(mergedIndex, indexBuilder))
+								.flatMapCompletable(stats -> stats.getBuilder().finishAndUpload(stats, skipDeployIndex))));
+	}
+}
@@ -28,9 +28,17 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinTask;
 
 public final class Context {
 	private final @NotNull ArtifactResolver artifactResolver;
@@ -47,6 +55,12 @@ public final class Context {
 
 	private final @NotNull Log log;
 
+	private final @NotNull ExistenceProbe existenceProbe;
+
+	private final @NotNull RepositoryGuard.Settings guardSettings;
+
+	private final ConcurrentMap<String, RepositoryGuard> guards = new ConcurrentHashMap<>();
+
 	public Context(@NotNull final ArtifactResolver artifactResolver,
 			@NotNull final ArtifactDeployer artifactDeployer,
 			@NotNull final ArtifactRepository releaseRepo,
@@ -54,6 +68,30 @@ public final class Context {
 			@NotNull final ProjectBuildingRequest buildRequest,
 			@NotNull final Path tempDir,
 			@NotNull final Log log) {
+		this(artifactResolver, artifactDeployer, releaseRepo, snapshotRepo, buildRequest, tempDir, log, null);
+	}
+
+	public Context(@NotNull final ArtifactResolver artifactResolver,
+			@NotNull final ArtifactDeployer artifactDeployer,
+			@NotNull final ArtifactRepository releaseRepo,
+			@Nullable final ArtifactRepository snapshotRepo,
+			@NotNull final ProjectBuildingRequest buildRequest,
+			@NotNull final Path tempDir,
+			@NotNull final Log log,
+			@Nullable final ExistenceProbe existenceProbe) {
+		this(artifactResolver, artifactDeployer, releaseRepo, snapshotRepo, buildRequest, tempDir, log, existenceProbe,
+				null);
+	}
+
+	public Context(@NotNull final ArtifactResolver artifactResolver,
+			@NotNull final ArtifactDeployer artifactDeployer,
+			@NotNull final ArtifactRepository releaseRepo,
+			@Nullable final ArtifactRepository snapshotRepo,
+			@NotNull final ProjectBuildingRequest buildRequest,
+			@NotNull final Path tempDir,
+			@NotNull final Log log,
+			@Nullable final ExistenceProbe existenceProbe,
+			@Nullable final RepositoryGuard.Settings guardSettings) {
 		this.artifactResolver = artifactResolver;
 		this.artifactDeployer = artifactDeployer;
 		this.releaseRepo = releaseRepo;
@@ -61,6 +99,8 @@ public final class Context {
 		this.buildRequest = buildRequest;
 		this.tempDir = tempDir;
 		this.log = log;
+		this.existenceProbe = existenceProbe != null ? existenceProbe : new ExistenceProbe(0, log);
+		this.guardSettings = guardSettings != null ? guardSettings : RepositoryGuard.Settings.NONE;
 	}
 
 	public ArtifactResolver getArtifactResolver() {
@@ -91,6 +131,21 @@ public final class Context {
 		return log;
 	}
 
+	@NotNull ExistenceProbe getExistenceProbe() {
+		return existenceProbe;
+	}
+
+	/**
+	 * Get the guard of the requests sent to a deployment repository, which is shared by all rails.
+	 *
+	 * @param repository the deployment repository
+	 * @return the repository guard
+	 */
+	@NotNull RepositoryGuard getGuard(@NotNull final ArtifactRepository repository) {
+		final String repositoryId = String.valueOf(repository.getId());
+		return guards.computeIfAbsent(repositoryId, key -> new RepositoryGuard(key, guardSettings, log));
+	}
+
 	public void deploy(@NotNull final Gav gav, @NotNull final Artifact... artifacts) throws ArtifactDeployerException {
 		this.deploy(gav, Arrays.asList(artifacts));
 	}
@@ -102,35 +157,132 @@ public final class Context {
 						"No snapshot deployment repository is specified. Use -DaltSnapshotDeploymentRepository or -DaltDeploymentRepository.",
 						new NullPointerException("snapshotRepo"));
 			}
-			getArtifactDeployer().deploy(getBuildRequest(), getSnapshotRepo(), artifacts);
+			deployTo(getSnapshotRepo(), artifacts);
 		} else {
-			getArtifactDeployer().deploy(getBuildRequest(), getReleaseRepo(), artifacts);
+			deployTo(getReleaseRepo(), artifacts);
 		}
 	}
 
+	void deployTo(@NotNull final ArtifactRepository repository, @NotNull final Collection<Artifact> artifacts)
+			throws ArtifactDeployerException {
+		getGuard(repository).send(() -> getArtifactDeployer().deploy(getBuildRequest(), repository, artifacts));
+	}
+
 	public Artifact resolve(@NotNull final Artifact artifact) throws ArtifactResolverException {
 		return getArtifactResolver().resolveArtifact(getBuildRequest(), artifact).getArtifact();
 	}
 
+	/**
+	 * Check whether a release artifact already exists in the release repository, without downloading it when the
+	 * repository can be probed. Otherwise, the artifact is resolved to prove that it exists.
+	 *
+	 * @param artifact the local artifact
+	 * @return true if the artifact exists in the release repository
+	 */
+	boolean existsRemotely(@NotNull final Artifact artifact) {
+		switch (existenceProbe.check(getReleaseRepo(), artifact, getGuard(getReleaseRepo()))) {
+			case PRESENT:
+				return true;
+			case MISSING:
+				return false;
+			default:
+				try {
+					this.resolve(artifact);
+					return true;
+				} catch (ArtifactResolverException e) {
+					return false;
+				}
+		}
+	}
+
+	/**
+	 * Deploy the files of an artifact group, treating files that already exist in the release repository as synced.
+	 * Release files are probed concurrently first when the existence probe allows it, and only the missing files are
+	 * deployed. If deploying the missing files fails, each file is checked and deployed on its own, largest first, and
+	 * forked so that idle upload workers can steal them.
+	 *
+	 * @param gav         the GAV of the artifact group
+	 * @param deployables the deployable artifacts, keyed by relative path
+	 * @throws SyncFailure if a file fails to deploy
+	 */
 	public void syncAll(@NotNull final Gav gav, @NotNull final Map<Path, Artifact> deployables) throws SyncFailure {
+		if (!gav.isSnapshot()) {
+			final Set<Path> present = existenceProbe.probe(getReleaseRepo(), deployables, getGuard(getReleaseRepo()));
+			if (!present.isEmpty()) {
+				getLog().debug(String.format("%d of %d files of %s already exist", present.size(), deployables.size(), gav));
+				final Map<Path, Artifact> missing = new LinkedHashMap<>(deployables);
+				missing.keySet().removeAll(present);
+				deployMissing(gav, missing);
+				return;
+			}
+		}
+		deployMissing(gav, deployables);
+	}
+
+	void deployMissing(@NotNull final Gav gav, @NotNull final Map<Path, Artifact> deployables) throws SyncFailure {
+		if (deployables.isEmpty()) {
+			return;
+		}
 		try {
 			this.deploy(gav, deployables.values());
 		} catch (ArtifactDeployerException deployAllError) {
-			if (gav.isSnapshot() && !deployables.isEmpty()) {
+			final DeployFailure deployAllFailure = DeployFailure.classify(deployAllError);
+			// a transient failure outlived its retries, so deploying the files one by one would only fail again
+			if (gav.isSnapshot() || deployAllFailure.isTransient()) {
 				final Map.Entry<Path, Artifact> firstArtifact = deployables.entrySet().iterator().next();
-				throw new SyncFailure(deployAllError, firstArtifact.getKey(), firstArtifact.getValue());
+				throw new SyncFailure(deployAllError, firstArtifact.getKey(), firstArtifact.getValue(), deployAllFailure);
 			}
-			for (Map.Entry<Path, Artifact> deployableEntry : deployables.entrySet()) {
-				try {
-					this.resolve(deployableEntry.getValue());
-				} catch (ArtifactResolverException resolveOneError) {
-					try {
-						this.deploy(gav, deployableEntry.getValue());
-					} catch (ArtifactDeployerException deployOneError) {
-						throw new SyncFailure(deployOneError, deployableEntry.getKey(), deployableEntry.getValue());
+			getLog().debug(String.format("deploy of %s failed (%s), deploying files one by one", gav, deployAllFailure));
+			final List<Map.Entry<Path, Artifact>> largestFirst = new ArrayList<>(deployables.entrySet());
+			largestFirst.sort(Comparator.comparingLong((Map.Entry<Path, Artifact> entry) ->
+					entry.getValue().getFile() != null ? entry.getValue().getFile().length() : 0L).reversed());
+			// fork the files when running in the upload pool, so that idle workers can steal them, and let every file
+			// settle before reporting the first failure
+			if (ForkJoinTask.inForkJoinPool()) {
+				final List<ForkJoinTask<SyncFailure>> tasks = new ArrayList<>();
+				for (Map.Entry<Path, Artifact> deployableEntry : largestFirst) {
+					tasks.add(ForkJoinTask.adapt(() -> syncOne(gav, deployableEntry)));
+				}
+				for (ForkJoinTask<SyncFailure> task : ForkJoinTask.invokeAll(tasks)) {
+					if (task.join() != null) {
+						throw task.join();
 					}
 				}
+			} else {
+				for (Map.Entry<Path, Artifact> deployableEntry : largestFirst) {
+					final SyncFailure failure = syncOne(gav, deployableEntry);
+					if (failure != null) {
+						throw failure;
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deploy a single file of a release artifact group unless it already exists in the repository.
+	 *
+	 * @param gav             the artifact group gav
+	 * @param deployableEntry the relative path and artifact
+	 * @return the failure, or null if the file exists or was deployed
+	 */
+	@Nullable SyncFailure syncOne(@NotNull final Gav gav, @NotNull final Map.Entry<Path, Artifact> deployableEntry) {
+		if (existsRemotely(deployableEntry.getValue())) {
+			return null;
+		}
+		try {
+			this.deploy(gav, deployableEntry.getValue());
+			return null;
+		} catch (ArtifactDeployerException deployOneError) {
+			final DeployFailure deployOneFailure = DeployFailure.classify(deployOneError);
+			// another execution may have deployed the file since it was checked
+			if ((deployOneFailure == DeployFailure.CONFLICT || deployOneFailure == DeployFailure.FORBIDDEN)
+					&& existenceProbe.check(getReleaseRepo(), deployableEntry.getValue(),
+					getGuard(getReleaseRepo())) == ExistenceProbe.Existence.PRESENT) {
+				return null;
 			}
+			return new SyncFailure(deployOneError, deployableEntry.getKey(), deployableEntry.getValue(),
+					deployOneFailure);
 		}
 	}
 
@@ -139,10 +291,18 @@ public final class Context {
 
 		private final Artifact artifact;
 
+		private final DeployFailure failure;
+
 		public SyncFailure(final Throwable cause, final Path relPath, final Artifact artifact) {
+			this(cause, relPath, artifact, DeployFailure.classify(cause));
+		}
+
+		public SyncFailure(final Throwable cause, final Path relPath, final Artifact artifact,
+				final DeployFailure failure) {
 			super(cause);
 			this.relPath = relPath;
 			this.artifact = artifact;
+			this.failure = failure;
 		}
 
 		public Path getRelPath() {
@@ -152,6 +312,10 @@ public final class Context {
 		public Artifact getArtifact() {
 			return artifact;
 		}
+
+		public DeployFailure getFailure() {
+			return failure;
+		}
 	}
 
 }
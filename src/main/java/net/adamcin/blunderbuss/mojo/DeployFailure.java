@@ -0,0 +1,120 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Classifies a failed deployment by the HTTP status reported by the transport. The deployer API only surfaces a generic
+ * exception, so the status is read from a {@code getStatusCode()} method of any cause, or else from the wording that the
+ * wagon and resolver transports use in their messages.
+ */
+public enum DeployFailure {
+	/**
+	 * The repository already has the file and doesn't allow redeploying it (409, or 400 for some repository managers).
+	 */
+	CONFLICT,
+	/**
+	 * The credentials are missing or not allowed to deploy, or to overwrite, the file (401 or 403).
+	 */
+	FORBIDDEN,
+	/**
+	 * The repository is rate limiting the deployment (429).
+	 */
+	THROTTLED,
+	/**
+	 * The repository failed to handle the deployment (5xx).
+	 */
+	SERVER_ERROR,
+	/**
+	 * The failure has no recognizable status.
+	 */
+	OTHER;
+
+	private static final Pattern STATUS = Pattern.compile(
+			"(?i)(?:status code|return code is|status|(?:transfer|authentication|authorization) failed for \\S+)"
+					+ "[:=\\s]+([1-5]\\d\\d)\\b");
+
+	/**
+	 * @return true if the failure may succeed when the deployment is tried again later
+	 */
+	public boolean isTransient() {
+		return this == THROTTLED || this == SERVER_ERROR;
+	}
+
+	/**
+	 * Classify a deployment failure.
+	 *
+	 * @param error the deployment failure
+	 * @return the classification
+	 */
+	public static @NotNull DeployFailure classify(@Nullable final Throwable error) {
+		final int status = statusOf(error);
+		if (status == 409 || status == 400) {
+			return CONFLICT;
+		} else if (status == 401 || status == 403) {
+			return FORBIDDEN;
+		} else if (status == 429) {
+			return THROTTLED;
+		} else if (status >= 500 && status < 600) {
+			return SERVER_ERROR;
+		}
+		return OTHER;
+	}
+
+	/**
+	 * Find the HTTP status of a failure in its cause chain.
+	 *
+	 * @param error the failure
+	 * @return the status, or -1 if none is found
+	 */
+	static int statusOf(@Nullable final Throwable error) {
+		final Set<Throwable> visited = new HashSet<>();
+		for (Throwable cause = error; cause != null && visited.add(cause); cause = cause.getCause()) {
+			final int reported = reportedStatusOf(cause);
+			if (reported > 0) {
+				return reported;
+			}
+			if (cause.getMessage() != null) {
+				final Matcher matcher = STATUS.matcher(cause.getMessage());
+				if (matcher.find()) {
+					return Integer.parseInt(matcher.group(1));
+				}
+			}
+		}
+		return -1;
+	}
+
+	static int reportedStatusOf(@NotNull final Throwable error) {
+		try {
+			final Method method = error.getClass().getMethod("getStatusCode");
+			if (method.getReturnType() == int.class) {
+				return (Integer) method.invoke(error);
+			}
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// no reported status
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+
+/**
+ * Immutable in-memory view of the text entries of an index jar, mapping each layout prefix to the sorted array of indexed
+ * filenames. The jar is inflated once, sequentially, when the lookup is loaded, so that filtering an artifact group is a pure
+ * hash lookup that is safe to call concurrently.
+ */
+final class EntryIndexLookup implements IndexLookup {
+	static final String ENTRY_SUFFIX = ".txt";
+
+	static final String META_INF = "META-INF/";
+
+	private final Map<String, String[]> filenames;
+
+	EntryIndexLookup(@NotNull final Map<String, String[]> filenames) {
+		this.filenames = filenames;
+	}
+
+	@Override
+	public @Nullable String[] getFilenames(@NotNull final Path layoutPrefix) {
+		return filenames.get(IndexLookup.keyFor(layoutPrefix));
+	}
+
+	Map<String, String[]> getEntries() {
+		return filenames;
+	}
+
+	@Override
+	public int size() {
+		return filenames.size();
+	}
+
+	@Override
+	public void forEach(@NotNull final BiConsumer<String, String[]> consumer) {
+		filenames.forEach(consumer);
+	}
+
+	/**
+	 * Read all index entries from the jar file in a single sequential pass.
+	 *
+	 * @param jarFile the index jar file
+	 * @return the lookup
+	 * @throws IOException if the jar file can't be read
+	 */
+	static EntryIndexLookup load(@NotNull final File jarFile) throws IOException {
+		final Map<String, String[]> filenames = new HashMap<>();
+		try (JarInputStream jarInput = new JarInputStream(new BufferedInputStream(new FileInputStream(jarFile)))) {
+			final List<String> lines = new ArrayList<>();
+			for (JarEntry entry = jarInput.getNextJarEntry(); entry != null; entry = jarInput.getNextJarEntry()) {
+				final String name = entry.getName();
+				if (entry.isDirectory() || !name.endsWith(ENTRY_SUFFIX) || name.startsWith(META_INF)) {
+					continue;
+				}
+				lines.clear();
+				// the reader is not closed, because that would close the jar stream
+				final BufferedReader reader = new BufferedReader(new InputStreamReader(jarInput, StandardCharsets.UTF_8));
+				for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+					if (!line.isEmpty()) {
+						lines.add(line);
+					}
+				}
+				final String[] packed = lines.toArray(new String[0]);
+				Arrays.sort(packed);
+				filenames.put(name.substring(0, name.length() - ENTRY_SUFFIX.length()), packed);
+			}
+		}
+		return new EntryIndexLookup(Collections.unmodifiableMap(filenames));
+	}
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Checks whether files of an artifact group already exist in a deployment repository without downloading them, using HEAD
+ * requests for http and https repositories through the proxy of the repository, and plain file checks for file
+ * repositories. Before an artifact group is
+ * deployed, its files are probed concurrently so that only the missing files are deployed, and after a failed deployment
+ * each file is probed again to tell a file that already exists apart from a real failure.
+ */
+final class ExistenceProbe {
+	static final int TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * The result of an existence check.
+	 */
+	enum Existence {
+		PRESENT,
+		MISSING,
+		/**
+		 * The repository can't be probed, because of its protocol, an unexpected status, or an I/O error.
+		 */
+		UNKNOWN
+	}
+
+	private final int parallelism;
+
+	private final @NotNull Log log;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param parallelism the maximum number of concurrent checks per artifact group before deploying it, or 0 to only
+	 *                    check files after a failed deployment
+	 * @param log         the log
+	 */
+	ExistenceProbe(final int parallelism, @NotNull final Log log) {
+		this.parallelism = Math.max(0, parallelism);
+		this.log = log;
+	}
+
+	static @Nullable String authorizationOf(@NotNull final ArtifactRepository repository) {
+		return repository.getAuthentication() != null
+				? RangeIndexLookup.basicAuthorization(repository.getAuthentication().getUsername(),
+				repository.getAuthentication().getPassword())
+				: null;
+	}
+
+	/**
+	 * Check whether the proxy of the repository can be honored by the probes. Requests that would bypass the proxy or drop
+	 * its credentials are never sent.
+	 *
+	 * @param repository the deployment repository
+	 * @return true if the repository can be probed
+	 */
+	boolean isProxySupported(@NotNull final ArtifactRepository repository) {
+		try {
+			if (RangeIndexLookup.isProxySupported(new URL(repository.getUrl()), repository.getProxy())) {
+				return true;
+			}
+		} catch (MalformedURLException e) {
+			return true;
+		}
+		log.debug("skipping existence probes through the proxy of " + repository.getId());
+		return false;
+	}
+
+	/**
+	 * Check which deployables already exist in the repository before deploying them.
+	 *
+	 * @param repository  the deployment repository
+	 * @param deployables the deployable artifacts, keyed by relative path
+	 * @return the relative paths of the deployables that exist in the repository, which is empty if probing before
+	 * deploying is disabled
+	 */
+	Set<Path> probe(@NotNull final ArtifactRepository repository, @NotNull final Map<Path, Artifact> deployables) {
+		return probe(repository, deployables, new RepositoryGuard(String.valueOf(repository.getId()),
+				RepositoryGuard.Settings.NONE, log));
+	}
+
+	/**
+	 * Check which deployables already exist in the repository before deploying them, sending each request through the
+	 * guard of the repository.
+	 *
+	 * @param repository  the deployment repository
+	 * @param deployables the deployable artifacts, keyed by relative path
+	 * @param guard       the repository guard
+	 * @return the relative paths of the deployables that exist in the repository, which is empty if probing before
+	 * deploying is disabled
+	 */
+	Set<Path> probe(@NotNull final ArtifactRepository repository, @NotNull final Map<Path, Artifact> deployables,
+			@NotNull final RepositoryGuard guard) {
+		if (parallelism == 0 || deployables.isEmpty() || repository.getUrl() == null || !isProxySupported(repository)) {
+			return new HashSet<>();
+		}
+		final String authorization = authorizationOf(repository);
+		return Flowable.fromIterable(deployables.entrySet())
+				.parallel(Math.min(parallelism, deployables.size()))
+				.runOn(Schedulers.io())
+				.filter(entry -> check(repository, authorization, entry.getValue(), guard) == Existence.PRESENT)
+				.map(Map.Entry::getKey)
+				.sequential()
+				.collect(HashSet<Path>::new, Set::add)
+				.blockingGet();
+	}
+
+	/**
+	 * Check whether an artifact exists in the repository.
+	 *
+	 * @param repository the deployment repository
+	 * @param artifact   the local artifact
+	 * @return the existence
+	 */
+	Existence check(@NotNull final ArtifactRepository repository, @NotNull final Artifact artifact,
+			@NotNull final RepositoryGuard guard) {
+		return check(repository, authorizationOf(repository), artifact, guard);
+	}
+
+	Existence check(@NotNull final ArtifactRepository repository, @Nullable final String authorization,
+			@NotNull final Artifact artifact, @NotNull final RepositoryGuard guard) {
+		if (repository.getUrl() == null) {
+			return Existence.UNKNOWN;
+		}
+		final String path = repository.pathOf(artifact);
+		if (path == null) {
+			return Existence.UNKNOWN;
+		}
+		try {
+			final URL url = RangeIndexLookup.artifactUrl(repository.getUrl(), path);
+			if ("file".equals(url.getProtocol())) {
+				return Files.isRegularFile(Paths.get(URI.create(url.toString()))) ? Existence.PRESENT : Existence.MISSING;
+			} else if (!"http".equals(url.getProtocol()) && !"https".equals(url.getProtocol())
+					|| !RangeIndexLookup.isProxySupported(url, repository.getProxy())) {
+				return Existence.UNKNOWN;
+			}
+			final boolean trial = guard.acquire();
+			// the outcome is always recorded, since a half open circuit breaker waits for the outcome of its trial, and an
+			// I/O error counts as a transient failure
+			boolean transientFailure = true;
+			long retryAfterMillis = 0L;
+			HttpURLConnection connection = null;
+			try {
+				connection = RangeIndexLookup.openConnection(url, repository.getProxy());
+				connection.setRequestMethod("HEAD");
+				connection.setConnectTimeout(TIMEOUT_MILLIS);
+				connection.setReadTimeout(TIMEOUT_MILLIS);
+				if (authorization != null) {
+					connection.setRequestProperty("Authorization", authorization);
+				}
+				final int status = connection.getResponseCode();
+				transientFailure = status == 429 || status >= 500;
+				if (transientFailure) {
+					retryAfterMillis = RepositoryGuard.parseRetryAfter(connection.getHeaderField("Retry-After"));
+				}
+				if (status == HttpURLConnection.HTTP_OK) {
+					return isSameLength(artifact, connection.getContentLengthLong()) ? Existence.PRESENT : Existence.MISSING;
+				} else if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+					return Existence.MISSING;
+				}
+				log.debug("unexpected status " + status + " probing " + url);
+				return Existence.UNKNOWN;
+			} finally {
+				guard.record(trial, retryAfterMillis, transientFailure);
+				if (connection != null) {
+					connection.disconnect();
+				}
+			}
+		} catch (IOException | IllegalArgumentException e) {
+			log.debug("failed to probe " + artifact + " in " + repository.getId(), e);
+			return Existence.UNKNOWN;
+		}
+	}
+
+	/**
+	 * A remote file whose reported length differs from the local file is not treated as present.
+	 *
+	 * @param artifact      the local artifact
+	 * @param contentLength the reported length, or -1 if unknown
+	 * @return true unless both lengths are known and differ
+	 */
+	static boolean isSameLength(@NotNull final Artifact artifact, final long contentLength) {
+		return contentLength < 0 || artifact.getFile() == null || artifact.getFile().length() == contentLength;
+	}
+}
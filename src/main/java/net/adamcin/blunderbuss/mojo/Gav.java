@@ -4,19 +4,60 @@ import org.apache.maven.artifact.Artifact;
 import org.apache.maven.project.MavenProject;
 import org.jetbrains.annotations.NotNull;
 
-import java.util.Objects;
+import java.nio.file.Path;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 public final class Gav {
+	/**
+	 * Interns the groupId and artifactId strings, which are repeated across many versions and artifacts, so that the
+	 * gavs of one walk share them. An interner is owned by one walk of the local repository, so that its table becomes
+	 * unreachable when the walk is done, even when the plugin runs in a long-lived JVM.
+	 */
+	static final class Interner {
+		private final ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+
+		String name(final @NotNull String name) {
+			final String existing = names.putIfAbsent(name, name);
+			return existing != null ? existing : name;
+		}
+
+		/**
+		 * Create a gav for the provided coordinates, interning the groupId and artifactId. Each version directory is only
+		 * visited once per walk, so the gav itself is not interned.
+		 *
+		 * @param groupId    the groupId
+		 * @param artifactId the artifactId
+		 * @param version    the version
+		 * @return the gav
+		 */
+		Gav of(final @NotNull String groupId, final @NotNull String artifactId, final @NotNull String version) {
+			return new Gav(name(groupId), name(artifactId), version);
+		}
+
+		/**
+		 * @param groupPath the relative groupId directory path
+		 * @return the interned groupId
+		 * @see Gav#groupIdOf(Path)
+		 */
+		String groupIdOf(final @NotNull Path groupPath) {
+			return name(Gav.groupIdOf(groupPath));
+		}
+	}
+
 	private final @NotNull String groupId;
 
 	private final @NotNull String artifactId;
 
 	private final @NotNull String version;
 
+	private final int hash;
+
 	public Gav(@NotNull final String groupId, @NotNull final String artifactId, @NotNull final String version) {
 		this.groupId = groupId;
 		this.artifactId = artifactId;
 		this.version = version;
+		this.hash = 31 * (31 * groupId.hashCode() + artifactId.hashCode()) + version.hashCode();
 	}
 
 	public String getGroupId() {
@@ -51,7 +92,7 @@ public final class Gav {
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(groupId, artifactId, version);
+		return hash;
 	}
 
 	@Override
@@ -59,11 +100,60 @@ public final class Gav {
 		return groupId + ":" + artifactId + ":" + version;
 	}
 
+	/**
+	 * Create a gav for the provided coordinates.
+	 *
+	 * @param groupId    the groupId
+	 * @param artifactId the artifactId
+	 * @param version    the version
+	 * @return the gav
+	 */
+	public static Gav of(final @NotNull String groupId, final @NotNull String artifactId, final @NotNull String version) {
+		return new Gav(groupId, artifactId, version);
+	}
+
+	/**
+	 * Join the name elements of a groupId directory path relative to the local repository root with periods.
+	 *
+	 * @param groupPath the relative groupId directory path
+	 * @return the groupId
+	 */
+	static String groupIdOf(final @NotNull Path groupPath) {
+		final int count = groupPath.getNameCount();
+		if (count == 1) {
+			return groupPath.toString();
+		}
+		final StringBuilder groupId = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				groupId.append('.');
+			}
+			groupId.append(groupPath.getName(i).toString());
+		}
+		return groupId.toString();
+	}
+
+	/**
+	 * Parse the gav from a relative version directory path, like {@code com/example/widget/1.0}.
+	 *
+	 * @param layoutPrefix the relative version directory path
+	 * @return the gav
+	 */
+	public static Gav fromLayoutPrefix(final @NotNull Path layoutPrefix) {
+		final int count = layoutPrefix.getNameCount();
+		if (count < 3) {
+			throw new IllegalArgumentException("layout prefix must have at least 3 elements: " + layoutPrefix);
+		}
+		return of(groupIdOf(layoutPrefix.subpath(0, count - 2)),
+				layoutPrefix.getName(count - 2).toString(),
+				layoutPrefix.getFileName().toString());
+	}
+
 	public static Gav fromArtifact(final @NotNull Artifact artifact) {
-		return new Gav(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
+		return of(artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion());
 	}
 
 	public static Gav fromProject(final @NotNull MavenProject project) {
-		return new Gav(project.getGroupId(), project.getArtifactId(), project.getVersion());
+		return of(project.getGroupId(), project.getArtifactId(), project.getVersion());
 	}
 }
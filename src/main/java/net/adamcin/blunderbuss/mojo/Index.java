@@ -16,39 +16,97 @@
 
 package net.adamcin.blunderbuss.mojo;
 
-import io.reactivex.rxjava3.core.BackpressureStrategy;
 import io.reactivex.rxjava3.core.Flowable;
-import io.reactivex.rxjava3.disposables.CompositeDisposable;
-import io.reactivex.rxjava3.disposables.Disposable;
+import io.reactivex.rxjava3.core.Maybe;
 import io.reactivex.rxjava3.functions.Function;
 import io.reactivex.rxjava3.functions.Predicate;
-import io.reactivex.rxjava3.schedulers.Schedulers;
-import org.apache.commons.io.IOUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.plugin.logging.Log;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import java.io.InputStreamReader;
-import java.io.Reader;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
-import java.nio.file.Paths;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.jar.JarEntry;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.jar.JarFile;
-import java.util.stream.Collectors;
+import java.util.jar.Manifest;
 
 public final class Index implements ArtifactPipe {
+	/**
+	 * The manifest attribute of a delta index jar that specifies the version of the index it was built on.
+	 */
+	public static final String BASE_VERSION_ATTRIBUTE = "Blunderbuss-Index-Base";
+
+	/**
+	 * The manifest attribute of a delta index jar that specifies the number of deltas overlaid on the full index.
+	 */
+	public static final String DEPTH_ATTRIBUTE = "Blunderbuss-Index-Depth";
+
 	private final Log log;
 
 	private final Artifact indexArtifact;
 
 	private final Artifact indexMetadataArtifact;
 
+	private final List<Artifact> baseArtifacts;
+
+	private final boolean chainComplete;
+
+	private final @Nullable ShardResolver shardResolver;
+
+	private final ConcurrentMap<String, Optional<File>> shardFiles = new ConcurrentHashMap<>();
+
+	private final List<IndexLookup> remoteChain;
+
+	/**
+	 * Resolves the shards of a sharded index.
+	 */
+	@FunctionalInterface
+	interface ShardResolver {
+		/**
+		 * Resolve the file of a shard.
+		 *
+		 * @param classifier the classifier of the shard
+		 * @param version    the version of the index artifact that the shard was deployed with
+		 * @return the resolved file
+		 * @throws Exception if the shard can't be resolved
+		 */
+		File resolve(@NotNull String classifier, @NotNull String version) throws Exception;
+	}
+
 	public Index(@NotNull final Log log, @NotNull final Artifact indexArtifact, @NotNull final Artifact indexMetadataArtifact) {
+		this(log, indexArtifact, indexMetadataArtifact, Collections.emptyList(), true, null, Collections.emptyList());
+	}
+
+	/**
+	 * Construct an index whose artifact may be a delta over a chain of base index artifacts, that may be sharded, and
+	 * that may be read remotely instead of from resolved files.
+	 *
+	 * @param log                   the logger
+	 * @param indexArtifact         the latest index artifact
+	 * @param indexMetadataArtifact the latest index pom artifact
+	 * @param baseArtifacts         the base index artifacts, starting from the full index
+	 * @param chainComplete         false if a base index artifact could not be resolved
+	 * @param shardResolver         resolves the shards of a sharded index when they are first needed
+	 * @param remoteChain           the remote lookups of the delta chain, starting from the full index, or empty if the
+	 *                              index artifacts are resolved
+	 */
+	Index(@NotNull final Log log, @NotNull final Artifact indexArtifact, @NotNull final Artifact indexMetadataArtifact,
+			@NotNull final List<Artifact> baseArtifacts, final boolean chainComplete,
+			@Nullable final ShardResolver shardResolver, @NotNull final List<IndexLookup> remoteChain) {
 		this.log = log;
 		this.indexArtifact = indexArtifact;
 		this.indexMetadataArtifact = indexMetadataArtifact;
+		this.baseArtifacts = Collections.unmodifiableList(new ArrayList<>(baseArtifacts));
+		this.chainComplete = chainComplete;
+		this.shardResolver = shardResolver;
+		this.remoteChain = Collections.unmodifiableList(new ArrayList<>(remoteChain));
 	}
 
 	public Artifact getIndexArtifact() {
@@ -59,24 +117,180 @@ public final class Index implements ArtifactPipe {
 		return indexMetadataArtifact;
 	}
 
-	Function<ArtifactGroup, Flowable<ArtifactGroup>> applyFilter(@NotNull final JarFile jarFile) throws Exception {
-		return artifactGroup -> {
-			JarEntry entry = jarFile.getJarEntry(artifactGroup.getLayoutPrefix().toString() + ".txt");
-			if (entry != null) {
-				try (Reader indexReader = new InputStreamReader(jarFile.getInputStream(entry), StandardCharsets.UTF_8)) {
-					List<String> lines = IOUtils.readLines(indexReader);
-					List<Path> contents = lines.stream().map(Paths::get).collect(Collectors.toList());
-					final ArtifactGroup newGroup = artifactGroup.filteredByIndex(contents);
-					if (newGroup.getDeployables().isEmpty()) {
-						return Flowable.empty();
-					} else {
-						return Flowable.just(newGroup);
-					}
-				} catch (Exception e) {
-					log.info("failed to read index for artifact group: " + artifactGroup.getLayoutPrefix().toString(), e);
+	/**
+	 * @return the resolved base index artifacts of a delta index, starting from the full index, or empty for a full index
+	 */
+	public List<Artifact> getBaseArtifacts() {
+		return baseArtifacts;
+	}
+
+	/**
+	 * @return false if the latest index is a delta and any of its base index artifacts could not be resolved
+	 */
+	public boolean isChainComplete() {
+		return chainComplete;
+	}
+
+	/**
+	 * @return true if the index is read remotely with range requests instead of from resolved files
+	 */
+	public boolean isRemote() {
+		return !remoteChain.isEmpty();
+	}
+
+	/**
+	 * @return true if the latest index was either resolved or opened remotely
+	 */
+	public boolean isResolved() {
+		return indexArtifact.getFile() != null || isRemote();
+	}
+
+	/**
+	 * @return the number of delta index artifacts overlaid on the full index, which is 0 for a full index
+	 */
+	public int getDeltaDepth() {
+		return baseArtifacts.size();
+	}
+
+	/**
+	 * @return the resolved index files, starting from the full index and ending with the latest delta
+	 */
+	public List<File> getChainFiles() {
+		final List<File> files = new ArrayList<>();
+		for (Artifact artifact : baseArtifacts) {
+			if (artifact.getFile() != null) {
+				files.add(artifact.getFile());
+			}
+		}
+		if (indexArtifact.getFile() != null) {
+			files.add(indexArtifact.getFile());
+		}
+		return files;
+	}
+
+	/**
+	 * @return the sharding of the latest index, or null if the index is not sharded or not resolved
+	 * @throws IOException if the index jar can't be read
+	 */
+	@Nullable IndexSharding getSharding() throws IOException {
+		return indexArtifact.getFile() != null ? IndexSharding.read(indexArtifact.getFile()) : null;
+	}
+
+	/**
+	 * @return the deployed version of each shard of the latest index, keyed by shard
+	 * @throws IOException if the index jar can't be read
+	 */
+	Map<String, String> getShardVersions() throws IOException {
+		return indexArtifact.getFile() != null ? IndexSharding.readVersions(indexArtifact.getFile()) : Collections.emptyMap();
+	}
+
+	/**
+	 * Resolve the file of a shard of the latest index the first time it is requested. A shard that fails to resolve is
+	 * treated as empty for the rest of the execution.
+	 *
+	 * @param shard the shard
+	 * @return the shard file, or null if the shard is not deployed or can't be resolved
+	 */
+	@Nullable File getShardFile(@NotNull final String shard) {
+		return shardFiles.computeIfAbsent(shard, key -> {
+			try {
+				final String version = getShardVersions().get(key);
+				if (version == null || shardResolver == null) {
+					return Optional.empty();
 				}
+				final File file = shardResolver.resolve(IndexSharding.classifierOf(key), version);
+				log.debug("resolved index shard " + key + " to " + file);
+				return Optional.ofNullable(file);
+			} catch (Exception e) {
+				log.warn("failed to resolve index shard " + key + ": " + e.getMessage());
+				log.debug("failed to resolve index shard " + key, e);
+				return Optional.empty();
+			}
+		}).orElse(null);
+	}
+
+	/**
+	 * Read the version of the base index that a delta index jar was built on.
+	 *
+	 * @param jarFile the index jar file
+	 * @return the base version, or null if the jar is a full index
+	 * @throws IOException if the jar can't be read
+	 */
+	static @Nullable String readBaseVersion(@NotNull final File jarFile) throws IOException {
+		try (JarFile jar = new JarFile(jarFile)) {
+			final Manifest manifest = jar.getManifest();
+			if (manifest == null) {
+				return null;
+			}
+			return manifest.getMainAttributes().getValue(BASE_VERSION_ATTRIBUTE);
+		}
+	}
+
+	/**
+	 * Load the union of every index file in the delta chain. Delta entries always contain the filenames of the same entry in
+	 * the base index, so the union is the same as overlaying the deltas in order. The shards of a sharded index are loaded
+	 * lazily, when the first key of each shard is looked up.
+	 *
+	 * @return the index lookup
+	 * @throws IOException if any index file can't be read
+	 */
+	IndexLookup loadLookup() throws IOException {
+		if (isRemote()) {
+			return remoteChain.size() == 1 ? remoteChain.get(0) : UnionIndexLookup.of(remoteChain);
+		}
+		final IndexSharding sharding = getSharding();
+		if (sharding != null) {
+			return new ShardedIndexLookup(sharding, getShardVersions().keySet(), this::getShardFile);
+		}
+		final List<File> files = getChainFiles();
+		if (files.size() == 1) {
+			return IndexLookup.load(files.get(0));
+		}
+		final List<IndexLookup> lookups = new ArrayList<>();
+		try {
+			for (File file : files) {
+				lookups.add(IndexLookup.load(file));
+			}
+		} catch (IOException e) {
+			for (IndexLookup lookup : lookups) {
+				lookup.close();
+			}
+			throw e;
+		}
+		return UnionIndexLookup.of(lookups);
+	}
+
+	/**
+	 * Filter artifact groups using the preloaded index. This is a pure memory lookup, so it can be applied concurrently.
+	 *
+	 * @param lookup the preloaded index
+	 * @return the filter function, which completes empty if the group has nothing left to deploy
+	 */
+	static Function<ArtifactGroup, Maybe<ArtifactGroup>> applyLookup(@NotNull final IndexLookup lookup) {
+		return applyLookup(lookup, false);
+	}
+
+	/**
+	 * Filter artifact groups using the preloaded index, optionally keeping deployable files whose content differs from the
+	 * size and SHA-1 of their index records.
+	 *
+	 * @param lookup        the preloaded index
+	 * @param verifyContent true to compare deployable files with their index records
+	 * @return the filter function, which completes empty if the group has nothing left to deploy
+	 */
+	static Function<ArtifactGroup, Maybe<ArtifactGroup>> applyLookup(@NotNull final IndexLookup lookup,
+			final boolean verifyContent) {
+		return artifactGroup -> {
+			final String[] indexed = lookup.getFilenames(artifactGroup.getLayoutPrefix());
+			if (indexed == null) {
+				return Maybe.just(artifactGroup);
+			}
+			final ArtifactGroup newGroup = artifactGroup.filteredByIndex(indexed, verifyContent);
+			if (newGroup.getDeployables().isEmpty()) {
+				return Maybe.empty();
+			} else {
+				return Maybe.just(newGroup);
 			}
-			return Flowable.just(artifactGroup);
 		};
 	}
 
@@ -90,17 +304,18 @@ public final class Index implements ArtifactPipe {
 	@Override
 	@NotNull
 	public Flowable<ArtifactGroup> attachPipe(@NotNull final Flowable<ArtifactGroup> artifactGroups) {
-		if (indexArtifact.getFile() == null) {
+		if (!isResolved()) {
 			return artifactGroups.filter(getNotMyselfPredicate());
 		}
-		return Flowable.create(emitter -> {
-			final JarFile jarFile = new JarFile(indexArtifact.getFile());
-			final Disposable disposable = artifactGroups
-					.filter(getNotMyselfPredicate())
-					.flatMap(this.applyFilter(jarFile))
-					.observeOn(Schedulers.io())
-					.subscribe(emitter::onNext, emitter::onError, emitter::onComplete);
-			emitter.setDisposable(new CompositeDisposable(disposable, Disposable.fromAutoCloseable(jarFile)));
-		}, BackpressureStrategy.BUFFER);
+		return Flowable.using(() -> {
+					final IndexLookup lookup = loadLookup();
+					log.debug("loaded " + lookup.size() + " index entries from "
+							+ (isRemote() ? remoteChain.get(remoteChain.size() - 1) : indexArtifact.getFile()));
+					return lookup;
+				},
+				lookup -> artifactGroups
+						.filter(getNotMyselfPredicate())
+						.concatMapMaybe(applyLookup(lookup)),
+				IndexLookup::close);
 	}
 }
@@ -18,10 +18,12 @@ package net.adamcin.blunderbuss.mojo;
 
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.functions.BiFunction;
 import io.reactivex.rxjava3.functions.Function;
 import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.apache.commons.io.FileUtils;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.DefaultArtifact;
 import org.apache.maven.model.Model;
@@ -32,18 +34,37 @@ import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.time.Clock;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Queue;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
 import java.util.stream.Collectors;
 
 public final class IndexBuilder {
@@ -61,12 +82,99 @@ public final class IndexBuilder {
 
 	private final int terminateAtFailureCount;
 
+	private final int maxInFlight;
+
+	private final int minUploads;
+
+	private final int maxUploads;
+
+	private final Format format;
+
+	private final @Nullable String deltaBaseVersion;
+
+	private final int deltaDepth;
+
+	private final List<File> previousJars;
+
+	private final boolean recordChecksums;
+
+	private final JarUtils.Compression compression;
+
+	private final @Nullable IndexSharding sharding;
+
+	private final @Nullable Index previousShards;
+
+	private final List<Artifact> shardArtifacts = new ArrayList<>();
+
+	private volatile boolean deployed;
+
+	/**
+	 * The entries saved by this execution, keyed by the relative path of the index entry. Upload workers only add to this
+	 * map, and it is written to the working directory once, in sorted order, when the index jar is built.
+	 */
+	private final ConcurrentNavigableMap<Path, List<String>> changedEntries = new ConcurrentSkipListMap<>();
+
 	IndexBuilder(
 			@NotNull final Path indexDir,
 			@NotNull final Artifact indexBuilderArtifact,
 			@NotNull final Artifact indexBuilderMetadataArtifact,
 			@NotNull final Context context,
 			@NotNull final Config config) {
+		this(indexDir, indexBuilderArtifact, indexBuilderMetadataArtifact, context, config, null, 0, Collections.emptyList());
+	}
+
+	/**
+	 * Construct an index builder that may deploy a delta over the index it was built from.
+	 *
+	 * @param indexDir                     the working directory of text index entries
+	 * @param indexBuilderArtifact         the new index artifact
+	 * @param indexBuilderMetadataArtifact the new index pom artifact
+	 * @param context                      the execution context
+	 * @param config                       the builder configuration
+	 * @param deltaBaseVersion             the version of the index to build a delta on, or null to build a full index
+	 * @param deltaDepth                   the number of deltas in the chain, including the new delta
+	 * @param previousJars                 the previous index files to copy unchanged entries from, starting from the
+	 *                                     latest delta
+	 */
+	IndexBuilder(
+			@NotNull final Path indexDir,
+			@NotNull final Artifact indexBuilderArtifact,
+			@NotNull final Artifact indexBuilderMetadataArtifact,
+			@NotNull final Context context,
+			@NotNull final Config config,
+			@Nullable final String deltaBaseVersion,
+			final int deltaDepth,
+			@NotNull final List<File> previousJars) {
+		this(indexDir, indexBuilderArtifact, indexBuilderMetadataArtifact, context, config, deltaBaseVersion, deltaDepth,
+				previousJars, null);
+	}
+
+	/**
+	 * Construct an index builder that may deploy a delta over the index it was built from, or that may deploy only the
+	 * changed shards of a sharded index.
+	 *
+	 * @param indexDir                     the working directory of text index entries
+	 * @param indexBuilderArtifact         the new index artifact
+	 * @param indexBuilderMetadataArtifact the new index pom artifact
+	 * @param context                      the execution context
+	 * @param config                       the builder configuration
+	 * @param deltaBaseVersion             the version of the index to build a delta on, or null to build a full index
+	 * @param deltaDepth                   the number of deltas in the chain, including the new delta
+	 * @param previousJars                 the previous index files to copy unchanged entries from, starting from the
+	 *                                     latest delta
+	 * @param previousShards               the previous index with the same sharding as the config, to copy unchanged
+	 *                                     shards from
+	 */
+	IndexBuilder(
+			@NotNull final Path indexDir,
+			@NotNull final Artifact indexBuilderArtifact,
+			@NotNull final Artifact indexBuilderMetadataArtifact,
+			@NotNull final Context context,
+			@NotNull final Config config,
+			@Nullable final String deltaBaseVersion,
+			final int deltaDepth,
+			@NotNull final List<File> previousJars,
+			@Nullable final Index previousShards) {
 		this.indexDir = indexDir;
 		this.indexBuilderArtifact = indexBuilderArtifact;
 		this.indexBuilderMetadataArtifact = indexBuilderMetadataArtifact;
@@ -74,6 +182,43 @@ public final class IndexBuilder {
 		this.context = context;
 		this.ignoreFailures = config.isIgnoreFailures();
 		this.terminateAtFailureCount = config.getTerminateAtFailureCount();
+		this.maxInFlight = config.getMaxInFlight();
+		this.minUploads = config.getMinUploads();
+		this.maxUploads = config.getMaxUploads();
+		this.format = config.getFormat();
+		this.recordChecksums = config.isRecordChecksums();
+		this.compression = config.getCompression();
+		this.sharding = config.getSharding();
+		this.previousShards = previousShards;
+		this.deltaBaseVersion = deltaBaseVersion;
+		this.deltaDepth = deltaDepth;
+		this.previousJars = Collections.unmodifiableList(new ArrayList<>(previousJars));
+	}
+
+	/**
+	 * The entry formats written to the index jar.
+	 */
+	public enum Format {
+		/**
+		 * One text entry per layout prefix, listing the indexed filenames.
+		 */
+		TEXT,
+		/**
+		 * A single binary entry, see {@link BinaryIndex}.
+		 */
+		BINARY,
+		/**
+		 * Both the text entries and the binary entry, for compatibility with older readers during a migration.
+		 */
+		BOTH;
+
+		boolean writesText() {
+			return this != BINARY;
+		}
+
+		boolean writesBinary() {
+			return this != TEXT;
+		}
 	}
 
 	public static class Config {
@@ -81,11 +226,92 @@ public final class IndexBuilder {
 
 		private final int terminateAtFailureCount;
 
+		private int maxInFlight = Flowable.bufferSize();
+
+		private Format format = Format.TEXT;
+
+		private int deltaThreshold;
+
+		private boolean recordChecksums;
+
+		private JarUtils.Compression compression = JarUtils.Compression.DEFLATED;
+
+		private @Nullable IndexSharding sharding;
+
+		private int minUploads = Runtime.getRuntime().availableProcessors();
+
+		private int maxUploads = Runtime.getRuntime().availableProcessors();
+
 		public Config(final boolean ignoreFailures, final int terminateAtFailureCount) {
 			this.ignoreFailures = ignoreFailures;
 			this.terminateAtFailureCount = terminateAtFailureCount;
 		}
 
+		/**
+		 * @param maxInFlight the maximum number of artifact groups read ahead of the upload workers
+		 * @return this config
+		 */
+		public Config withMaxInFlight(final int maxInFlight) {
+			this.maxInFlight = Math.max(1, maxInFlight);
+			return this;
+		}
+
+		/**
+		 * @param format the format of the entries of the index jar
+		 * @return this config
+		 */
+		public Config withFormat(@NotNull final Format format) {
+			this.format = format;
+			return this;
+		}
+
+		/**
+		 * @param deltaThreshold the maximum number of deltas overlaid on a full index, or 0 to always build a full index
+		 * @return this config
+		 */
+		public Config withDeltaThreshold(final int deltaThreshold) {
+			this.deltaThreshold = Math.max(0, deltaThreshold);
+			return this;
+		}
+
+		/**
+		 * @param recordChecksums true to record the size and SHA-1 of every synced file in its index entry line
+		 * @return this config
+		 */
+		public Config withRecordChecksums(final boolean recordChecksums) {
+			this.recordChecksums = recordChecksums;
+			return this;
+		}
+
+		/**
+		 * @param compression the compression method of the entries of the index jar
+		 * @return this config
+		 */
+		public Config withCompression(@NotNull final JarUtils.Compression compression) {
+			this.compression = compression;
+			return this;
+		}
+
+		/**
+		 * @param sharding the sharding of the index, or null to deploy a single index jar
+		 * @return this config
+		 */
+		public Config withSharding(@Nullable final IndexSharding sharding) {
+			this.sharding = sharding;
+			return this;
+		}
+
+		/**
+		 * @param minUploads the lower bound of the adaptive number of concurrent artifact group uploads
+		 * @param maxUploads the upper bound of the adaptive number of concurrent artifact group uploads
+		 * @return this config
+		 */
+		public Config withUploads(final int minUploads, final int maxUploads) {
+			this.minUploads = Math.max(1, minUploads);
+			this.maxUploads = Math.max(this.minUploads, maxUploads);
+			return this;
+		}
+
 		public boolean isIgnoreFailures() {
 			return ignoreFailures;
 		}
@@ -93,6 +319,56 @@ public final class IndexBuilder {
 		public int getTerminateAtFailureCount() {
 			return terminateAtFailureCount;
 		}
+
+		public int getMaxInFlight() {
+			return maxInFlight;
+		}
+
+		public Format getFormat() {
+			return format;
+		}
+
+		/**
+		 * @return the maximum number of deltas overlaid on a full index, or 0 to always build a full index
+		 */
+		public int getDeltaThreshold() {
+			return deltaThreshold;
+		}
+
+		/**
+		 * @return true to record the size and SHA-1 of every synced file in its index entry line
+		 */
+		public boolean isRecordChecksums() {
+			return recordChecksums;
+		}
+
+		/**
+		 * @return the compression method of the entries of the index jar
+		 */
+		public JarUtils.Compression getCompression() {
+			return compression;
+		}
+
+		/**
+		 * @return the sharding of the index, or null to deploy a single index jar
+		 */
+		public @Nullable IndexSharding getSharding() {
+			return sharding;
+		}
+
+		/**
+		 * @return the lower bound of the adaptive number of concurrent artifact group uploads
+		 */
+		public int getMinUploads() {
+			return minUploads;
+		}
+
+		/**
+		 * @return the upper bound of the adaptive number of concurrent artifact group uploads
+		 */
+		public int getMaxUploads() {
+			return maxUploads;
+		}
 	}
 
 	public static Single<IndexBuilder> fromIndex(@NotNull final Index index, @NotNull final Context context, @NotNull final Config config) {
@@ -115,10 +391,38 @@ public final class IndexBuilder {
 			try (OutputStream outputStream = new FileOutputStream(pomFile)) {
 				writer.write(outputStream, model);
 			}
-			if (indexArtifact.getFile() == null || !indexArtifact.getFile().isFile()) {
-				Files.createDirectories(indexDir);
-			} else {
-				JarUtils.extractJarFile(indexArtifact.getFile(), indexDir).blockingAwait();
+			Files.createDirectories(indexDir);
+			final List<File> chainFiles = index.getChainFiles().stream().filter(File::isFile).collect(Collectors.toList());
+			final IndexSharding previousSharding = index.getSharding();
+			final boolean sameSharding = Objects.equals(config.getSharding(), previousSharding);
+			final boolean canExtend = config.getSharding() == null
+					&& previousSharding == null
+					&& (!chainFiles.isEmpty() || index.isRemote());
+			// the entries of unresolved base versions are only in the repository, so a partial chain must never be
+			// compacted into a full index, and is extended with another delta whatever the threshold
+			if (!index.isChainComplete()) {
+				if (!canExtend) {
+					emitter.onError(new MojoFailureException(String.format("the delta chain of index %s is incomplete, "
+							+ "and it can't be rewritten without losing the entries of its unresolved base versions",
+							indexArtifact)));
+					return;
+				}
+				context.getLog().warn(String.format("the delta chain of index %s is incomplete, deploying a delta over it "
+						+ "instead of a full index", indexArtifact));
+			}
+			final boolean buildDelta = canExtend
+					&& (!index.isChainComplete()
+					|| config.getDeltaThreshold() > 0 && index.getDeltaDepth() < config.getDeltaThreshold());
+			// the working directory only receives the entries that change in this execution, and a full index copies the
+			// remaining entries from the previous jars when it is finished, unless a previous jar has no text entries to copy
+			final List<File> previousJars = new ArrayList<>();
+			if (!buildDelta && config.getSharding() == null && previousSharding == null) {
+				if (config.getFormat().writesText() && chainFiles.stream().anyMatch(IndexBuilder::isBinaryOnly)) {
+					extractChain(chainFiles, indexDir);
+				} else {
+					previousJars.addAll(chainFiles);
+					Collections.reverse(previousJars);
+				}
 			}
 			final Artifact indexBuilderArtifact = new DefaultArtifact(groupId, artifactId, version, indexArtifact.getScope(),
 					indexArtifact.getType(), indexArtifact.getClassifier(), indexArtifact.getArtifactHandler());
@@ -126,12 +430,94 @@ public final class IndexBuilder {
 			final Artifact indexBuilderMetadataArtifact = new DefaultArtifact(groupId, artifactId, version, indexMetadataArtifact.getScope(),
 					indexMetadataArtifact.getType(), indexMetadataArtifact.getClassifier(), indexMetadataArtifact.getArtifactHandler());
 			indexBuilderMetadataArtifact.setFile(pomFile);
-			emitter.onSuccess(new IndexBuilder(indexDir, indexBuilderArtifact, indexBuilderMetadataArtifact, context, config));
+			if (buildDelta) {
+				emitter.onSuccess(new IndexBuilder(indexDir, indexBuilderArtifact, indexBuilderMetadataArtifact, context, config,
+						indexArtifact.getVersion(), index.getDeltaDepth() + 1, previousJars));
+			} else if (index.isRemote()) {
+				// saving every entry again would issue a range request per entry
+				emitter.onError(new IllegalStateException(String.format("remote index %s can only be extended with a delta, "
+						+ "resolve the index jars to rewrite it", indexArtifact)));
+			} else if (sameSharding || chainFiles.isEmpty()) {
+				emitter.onSuccess(new IndexBuilder(indexDir, indexBuilderArtifact, indexBuilderMetadataArtifact, context, config,
+						null, 0, previousJars, previousSharding != null ? index : null));
+			} else {
+				// the entries of an index with a different sharding are saved again, which reshards the whole index
+				final IndexBuilder builder = new IndexBuilder(indexDir, indexBuilderArtifact, indexBuilderMetadataArtifact,
+						context, config, null, 0, previousJars);
+				try (IndexLookup lookup = index.loadLookup()) {
+					lookup.forEach((key, filenames) ->
+							builder.saveEntry(Paths.get(key + EntryIndexLookup.ENTRY_SUFFIX), Arrays.asList(filenames)));
+				}
+				context.getLog().info(String.format("rewriting %d entries of index %s with sharding %s",
+						builder.changedEntries.size(), indexArtifact, config.getSharding()));
+				emitter.onSuccess(builder);
+			}
 		});
 	}
 
+	static boolean isBinaryOnly(@NotNull final File jarFile) {
+		try (JarFile jar = new JarFile(jarFile)) {
+			return jar.getJarEntry(BinaryIndex.ENTRY_NAME) != null && !IndexLookup.hasTextEntries(jar);
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	static boolean isTextEntry(@NotNull final String name) {
+		return name.endsWith(EntryIndexLookup.ENTRY_SUFFIX) && !name.startsWith(EntryIndexLookup.META_INF);
+	}
+
+	/**
+	 * Extract the delta chain in order, so that later entries replace earlier entries for the same layout prefix.
+	 *
+	 * @param chainFiles the index files, starting from the full index
+	 * @param indexDir   the working directory of text index entries
+	 * @throws IOException if an index file can't be extracted
+	 */
+	static void extractChain(@NotNull final List<File> chainFiles, @NotNull final Path indexDir) throws IOException {
+		for (File chainFile : chainFiles) {
+			JarUtils.extractJarFile(chainFile, indexDir).blockingAwait();
+			// the builder works on text entries, whatever format the previous index was written in, and the binary entry
+			// of a jar that has both is the one that lookups read
+			final Path binFile = indexDir.resolve(BinaryIndex.ENTRY_NAME);
+			if (Files.isRegularFile(binFile)) {
+				BinaryIndex.expandToDir(binFile, indexDir);
+				Files.delete(binFile);
+			}
+		}
+		// the manifest of a previous delta must not leak into a full index
+		Files.deleteIfExists(indexDir.resolve(JarFile.MANIFEST_NAME));
+	}
+
+	public Gav getIndexGav() {
+		return indexGav;
+	}
+
+	/**
+	 * @return true if {@link #finishAndUpload} deployed the index artifacts with the version of {@link #getIndexGav()}
+	 */
+	public boolean isDeployed() {
+		return deployed;
+	}
+
+	Path getIndexDir() {
+		return indexDir;
+	}
+
+	/**
+	 * @return the version of the index that this builder deploys a delta over, or null if it deploys a full index
+	 */
+	public @Nullable String getDeltaBaseVersion() {
+		return deltaBaseVersion;
+	}
+
+	/**
+	 * @return the artifacts to deploy, which are the pom, the index jar, and the changed shards of a sharded index
+	 */
 	public List<Artifact> getArtifacts() {
-		return Arrays.asList(indexBuilderMetadataArtifact, indexBuilderArtifact);
+		final List<Artifact> artifacts = new ArrayList<>(Arrays.asList(indexBuilderMetadataArtifact, indexBuilderArtifact));
+		artifacts.addAll(shardArtifacts);
+		return artifacts;
 	}
 
 	private final Stats NOOP = this.new Stats(0, false);
@@ -140,6 +526,13 @@ public final class IndexBuilder {
 
 	private final Stats FAILED = this.new Stats(1, false);
 
+	/**
+	 * @return the stats of an execution that neither changed the index nor failed
+	 */
+	Stats getNoopStats() {
+		return NOOP;
+	}
+
 	public final class Stats {
 
 		private final int failures;
@@ -192,57 +585,438 @@ public final class IndexBuilder {
 		}
 	}
 
+	/**
+	 * Create the limiter of concurrent artifact group uploads, which starts at the number of available processors within
+	 * the configured bounds.
+	 *
+	 * @return a new upload limiter
+	 */
+	AdaptiveLimiter newUploadLimiter() {
+		return new AdaptiveLimiter(minUploads, maxUploads, Runtime.getRuntime().availableProcessors(), context.getLog());
+	}
+
 	Function<ArtifactGroup, Stats> getUploadFunction() {
-		return artifactGroup -> {
-			final Set<Path> indexed = new HashSet<>(artifactGroup.getIndexed());
-			final Map<Path, Artifact> deployables = artifactGroup.getDeployables().entrySet().stream()
-					.filter(entry -> !indexed.contains(entry.getKey()))
-					.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
-			// we never index snapshots, and we shouldn't overwrite index files if we don't have anything to upload
-			boolean doSave = artifactGroup.nonSnapshot() && !deployables.isEmpty();
-			Stats stats = NOOP;
-			if (!deployables.isEmpty()) {
-				try {
-					context.syncAll(artifactGroup.getGav(), deployables);
-					indexed.addAll(deployables.keySet());
-				} catch (Context.SyncFailure syncFailure) {
-					if (artifactGroup.isTerminateOnFailure()) {
-						throw new MojoFailureException("failed to sync required artifact: " + artifactGroup.getGav(), syncFailure);
-					} else {
-						context.getLog().warn("failed to sync artifact: " + artifactGroup.getGav());
-						context.getLog().debug("failed to sync artifact: " + artifactGroup.getGav(), syncFailure);
-						stats = FAILED;
-						doSave = false;
-					}
+		return getUploadFunction(newUploadLimiter(), null);
+	}
+
+	/**
+	 * Get the function that syncs an artifact group and saves its index entry. Only the sync of the deployable files is
+	 * subject to the upload limiter, which is told about the latency of each sync and whether it failed because the
+	 * repository was throttling or failing. Groups that fail with a transient error are added to the deferred groups
+	 * instead of failing, when a queue is provided.
+	 *
+	 * @param limiter  the upload limiter
+	 * @param deferred the queue of groups to retry at the end of the run, or null to fail them right away
+	 * @return the upload function
+	 */
+	Function<ArtifactGroup, Stats> getUploadFunction(@NotNull final AdaptiveLimiter limiter,
+			@Nullable final Queue<ArtifactGroup> deferred) {
+		return artifactGroup -> upload(artifactGroup, limiter, deferred, false);
+	}
+
+	/**
+	 * Sync an artifact group and save its index entry.
+	 *
+	 * @param artifactGroup the artifact group
+	 * @param limiter       the upload limiter
+	 * @param deferred      the queue of groups to retry at the end of the run, or null to fail them right away
+	 * @param permitHeld    true if the caller already acquired a permit from the limiter, which is given back here
+	 * @return the stats
+	 * @throws Exception if the group fails and must terminate the build
+	 */
+	Stats upload(@NotNull final ArtifactGroup artifactGroup, @NotNull final AdaptiveLimiter limiter,
+			@Nullable final Queue<ArtifactGroup> deferred, final boolean permitHeld) throws Exception {
+		final Set<Path> indexed = new HashSet<>(artifactGroup.getIndexed());
+		final Map<Path, Artifact> deployables = artifactGroup.getDeployables().entrySet().stream()
+				.filter(entry -> !indexed.contains(entry.getKey()))
+				.collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+		// we never index snapshots, and we shouldn't overwrite index files if we don't have anything to upload
+		boolean doSave = artifactGroup.nonSnapshot() && !deployables.isEmpty();
+		Stats stats = NOOP;
+		if (deployables.isEmpty() && permitHeld) {
+			limiter.cancel();
+		} else if (!deployables.isEmpty()) {
+			if (!permitHeld) {
+				limiter.acquire();
+			}
+			final long bytes = deployables.values().stream()
+					.mapToLong(artifact -> artifact.getFile() != null ? artifact.getFile().length() : 0L).sum();
+			final long started = System.nanoTime();
+			boolean congested = false;
+			try {
+				context.syncAll(artifactGroup.getGav(), deployables);
+				indexed.addAll(deployables.keySet());
+			} catch (Context.SyncFailure syncFailure) {
+				congested = syncFailure.getFailure().isTransient();
+				if (congested && deferred != null) {
+					context.getLog().debug("deferring artifact group after transient failure: " + artifactGroup.getGav());
+					deferred.add(artifactGroup);
+					return NOOP;
+				} else if (artifactGroup.isTerminateOnFailure()) {
+					throw new MojoFailureException("failed to sync required artifact: " + artifactGroup.getGav(), syncFailure);
+				} else {
+					context.getLog().warn("failed to sync artifact: " + artifactGroup.getGav()
+							+ " (" + syncFailure.getFailure() + ")");
+					context.getLog().debug("failed to sync artifact: " + artifactGroup.getGav(), syncFailure);
+					stats = FAILED;
+					doSave = false;
 				}
+			} finally {
+				limiter.release(System.nanoTime() - started, bytes, congested);
 			}
-			if (doSave) {
-				Path indexFile = indexDir.resolve(artifactGroup.getIndexFileRelPath());
-				if (!Files.isDirectory(indexFile.getParent())) {
-					Files.createDirectories(indexFile.getParent());
+		}
+		if (doSave) {
+			return saveEntry(artifactGroup.getIndexFileRelPath(), getIndexLines(artifactGroup, indexed, deployables));
+		}
+		return stats;
+	}
+
+	/**
+	 * Build the index entry lines of an artifact group. Files that were synced by this execution are recorded with their
+	 * size and SHA-1 when checksums are enabled, and other files keep the line they were indexed with.
+	 *
+	 * @param artifactGroup the artifact group
+	 * @param indexed       the indexed filenames, including the synced files
+	 * @param synced        the synced files
+	 * @return the index entry lines
+	 */
+	List<String> getIndexLines(@NotNull final ArtifactGroup artifactGroup,
+			@NotNull final Set<Path> indexed,
+			@NotNull final Map<Path, Artifact> synced) {
+		final List<String> lines = new ArrayList<>(indexed.size());
+		for (Path filename : indexed) {
+			String line = artifactGroup.getIndexRecords().get(filename);
+			final Artifact artifact = synced.get(filename);
+			if (recordChecksums && artifact != null && artifact.getFile() != null) {
+				try {
+					line = IndexRecord.of(artifact.getFile()).toLine();
+				} catch (IOException e) {
+					context.getLog().debug("failed to record checksum of " + artifact.getFile(), e);
+					line = null;
 				}
-				Files.write(indexFile, indexed.stream().map(Path::toString)
-						.collect(Collectors.toList()), StandardCharsets.UTF_8);
-				return DIRTY;
 			}
-			return stats;
-		};
+			lines.add(line != null ? line : filename.toString());
+		}
+		return lines;
+	}
+
+	/**
+	 * Save the text index entry for a version directory, replacing any entry saved earlier for the same version directory.
+	 * The entry is held in memory until {@link #flushEntries()} is called.
+	 *
+	 * @param indexFileRelPath the relative path of the index entry
+	 * @param filenames        the indexed filenames
+	 * @return the dirty stats
+	 */
+	Stats saveEntry(@NotNull final Path indexFileRelPath, @NotNull final Collection<String> filenames) {
+		changedEntries.put(indexFileRelPath, new ArrayList<>(filenames));
+		return DIRTY;
+	}
+
+	/**
+	 * Get the shard of a saved entry.
+	 *
+	 * @param indexFileRelPath the relative path of the index entry
+	 * @return the shard
+	 */
+	String shardOf(@NotNull final Path indexFileRelPath) {
+		final String name = IndexLookup.keyFor(indexFileRelPath);
+		return Objects.requireNonNull(sharding, "sharding")
+				.shardOf(name.substring(0, name.length() - EntryIndexLookup.ENTRY_SUFFIX.length()));
+	}
+
+	/**
+	 * Write the saved entries to the working directory in sorted order, so that the entries of each directory are written
+	 * together and each directory is created once. The entries of a sharded index are written to one subdirectory per
+	 * shard.
+	 *
+	 * @throws IOException if an entry can't be written
+	 */
+	void flushEntries() throws IOException {
+		Path lastDir = null;
+		for (Map.Entry<Path, List<String>> entry : changedEntries.entrySet()) {
+			final Path entryDir = sharding != null ? indexDir.resolve(shardOf(entry.getKey())) : indexDir;
+			final Path indexFile = entryDir.resolve(entry.getKey());
+			if (!indexFile.getParent().equals(lastDir)) {
+				lastDir = indexFile.getParent();
+				Files.createDirectories(lastDir);
+			}
+			Files.write(indexFile, entry.getValue(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * An artifact group waiting for a worker, ordered by largest deployable size first, and then by discovery order.
+	 */
+	static final class PendingGroup implements Comparable<PendingGroup> {
+		private static final AtomicLong SEQUENCE = new AtomicLong();
+
+		private final ArtifactGroup artifactGroup;
+
+		private final long size;
+
+		private final long sequence = SEQUENCE.getAndIncrement();
+
+		PendingGroup(@NotNull final ArtifactGroup artifactGroup) {
+			this.artifactGroup = artifactGroup;
+			this.size = artifactGroup.getDeployableSize();
+		}
+
+		ArtifactGroup getArtifactGroup() {
+			return artifactGroup;
+		}
+
+		@Override
+		public int compareTo(@NotNull final PendingGroup other) {
+			final int bySize = Long.compare(other.size, size);
+			return bySize != 0 ? bySize : Long.compare(sequence, other.sequence);
+		}
 	}
 
+	/**
+	 * Sync the artifact groups and save their index entries. Up to {@code maxInFlight} discovered groups wait in a queue
+	 * ordered by deployable size, and each time a worker is free it takes the largest waiting group, so that large
+	 * transfers start first and small groups fill in around them. The workers form a work stealing pool as large as the
+	 * maximum number of concurrent uploads, which lets idle workers steal the file-level tasks that a group forks when
+	 * its files are synced one by one. An adaptive limiter decides how many groups may upload at the same time, and a
+	 * worker only takes a group once it holds a permit, so that a group discovered while the limit is saturated still
+	 * goes before smaller groups. The index entry of each group is saved once all of its files have settled.
+	 *
+	 * @param artifactGroups the artifact groups
+	 * @return the combined stats
+	 */
 	Single<Stats> buildIndexFrom(@NotNull final Flowable<ArtifactGroup> artifactGroups) {
-		return artifactGroups
-				.parallel()
-				.runOn(Schedulers.io())
-				.map(getUploadFunction())
-				.sequential()
-				.reduce(NOOP, getStatsReducer());
+		return buildIndexFrom(artifactGroups, newUploadLimiter());
+	}
+
+	Single<Stats> buildIndexFrom(@NotNull final Flowable<ArtifactGroup> artifactGroups,
+			@NotNull final AdaptiveLimiter limiter) {
+		final Queue<ArtifactGroup> deferred = new ConcurrentLinkedQueue<>();
+		context.getLog().info(String.format("upload concurrency limit starts at %d (min %d, max %d)",
+				limiter.getLimit(), limiter.getMin(), limiter.getMax()));
+		return Single.using(
+				() -> new ForkJoinPool(limiter.getMax(), ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true),
+				pool -> {
+					final Scheduler scheduler = Schedulers.from(pool);
+					final Queue<PendingGroup> pending = new PriorityBlockingQueue<>();
+					// every queued group schedules one worker run, which takes whichever group is the largest by then
+					return artifactGroups
+							.flatMapSingle(artifactGroup -> {
+								pending.add(new PendingGroup(artifactGroup));
+								return Single.fromSupplier(() -> {
+									limiter.acquire();
+									final PendingGroup next = pending.poll();
+									if (next == null) {
+										limiter.cancel();
+										throw new IllegalStateException("no pending group");
+									}
+									return upload(next.getArtifactGroup(), limiter, deferred, true);
+								}).subscribeOn(scheduler);
+							}, false, maxInFlight)
+							.reduce(NOOP, getStatsReducer())
+							.flatMap(stats -> retryDeferred(stats, limiter, deferred));
+				},
+				ForkJoinPool::shutdown)
+				.doOnSuccess(stats -> context.getLog().info(String.format(
+						"upload concurrency limit ended at %d (peak %d)", limiter.getLimit(), limiter.getPeak())));
+	}
+
+	/**
+	 * Sync the artifact groups that failed with a transient error one more time, one at a time, after all other groups
+	 * were synced. Only the groups that fail again are counted as failures.
+	 *
+	 * @param stats    the stats of the first pass
+	 * @param limiter  the upload limiter
+	 * @param deferred the deferred groups
+	 * @return the combined stats
+	 */
+	Single<Stats> retryDeferred(@NotNull final Stats stats, @NotNull final AdaptiveLimiter limiter,
+			@NotNull final Queue<ArtifactGroup> deferred) {
+		if (deferred.isEmpty()) {
+			return Single.just(stats);
+		}
+		context.getLog().info(String.format("retrying %d artifact groups that failed with transient errors",
+				deferred.size()));
+		return Flowable.fromIterable(new ArrayList<>(deferred))
+				.map(getUploadFunction(limiter, null))
+				.reduce(stats, getStatsReducer());
+	}
+
+	Manifest newManifest() {
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (deltaBaseVersion != null) {
+			manifest.getMainAttributes().putValue(Index.BASE_VERSION_ATTRIBUTE, deltaBaseVersion);
+			manifest.getMainAttributes().putValue(Index.DEPTH_ATTRIBUTE, Integer.toString(deltaDepth));
+		}
+		return manifest;
+	}
+
+	/**
+	 * Write the binary index entry for an index that is built from previous jars and a directory of changed entries, by
+	 * overlaying the records of each previous index and then the changed entries.
+	 *
+	 * @param previous   the previous index files, starting from the latest
+	 * @param changedDir the directory of changed entries
+	 * @return the binary index file
+	 * @throws IOException if an index can't be read or the binary index can't be written
+	 */
+	static Path writeBinary(@NotNull final List<File> previous, @NotNull final Path changedDir) throws IOException {
+		final Path binFile = changedDir.resolveSibling(changedDir.getFileName().toString() + ".index.bin");
+		if (previous.isEmpty()) {
+			BinaryIndex.writeFromDir(changedDir, binFile);
+			return binFile;
+		}
+		final Map<String, String[]> overlay = new HashMap<>();
+		final List<File> oldestFirst = new ArrayList<>(previous);
+		Collections.reverse(oldestFirst);
+		for (File previousJar : oldestFirst) {
+			try (IndexLookup lookup = IndexLookup.load(previousJar)) {
+				lookup.forEach(overlay::put);
+			}
+		}
+		final Path changedBin = changedDir.resolveSibling(changedDir.getFileName().toString() + ".changed.bin");
+		BinaryIndex.writeFromDir(changedDir, changedBin);
+		try (BinaryIndex changed = BinaryIndex.map(changedBin)) {
+			changed.forEach(overlay::put);
+		}
+		final Map<String, List<String>> entries = new HashMap<>();
+		overlay.forEach((key, filenames) -> entries.put(key, Arrays.asList(filenames)));
+		try (OutputStream output = Files.newOutputStream(binFile)) {
+			BinaryIndex.write(output, entries);
+		}
+		return binFile;
+	}
+
+	/**
+	 * Write an index jar from previous jars and a directory of changed entries. Entries are written in a stable order with
+	 * fixed timestamps, so that the same entries always produce the same bytes. The compressed bytes of all unchanged text
+	 * entries are copied from the previous jars, so that only the entries that changed in this execution are compressed.
+	 *
+	 * @param targetJar  the jar file to write
+	 * @param manifest   the manifest of the jar
+	 * @param previous   the previous index files, starting from the latest
+	 * @param changedDir the directory of changed entries
+	 * @return the completable
+	 */
+	Completable writeIndexJar(@NotNull final File targetJar, @NotNull final Manifest manifest,
+			@NotNull final List<File> previous, @NotNull final Path changedDir) {
+		return Completable.defer(() -> {
+			final Map<String, Path> extraEntries = format.writesBinary()
+					? Collections.singletonMap(BinaryIndex.ENTRY_NAME, writeBinary(previous, changedDir))
+					: Collections.emptyMap();
+			final int parallelism = Runtime.getRuntime().availableProcessors();
+			return format.writesText()
+					? JarUtils.writeJarFile(targetJar, manifest, previous, IndexBuilder::isTextEntry, changedDir,
+					extraEntries, compression, parallelism)
+					: JarUtils.writeJarFile(targetJar, manifest, Collections.emptyList(), IndexBuilder::isTextEntry, null,
+					extraEntries, compression, parallelism);
+		});
+	}
+
+	/**
+	 * Write the new index jar, or the changed shards and the shard list of a sharded index.
+	 *
+	 * @return the completable
+	 */
+	Completable writeJar() {
+		if (sharding != null) {
+			return writeShardedJar(sharding);
+		}
+		return writeIndexJar(indexBuilderArtifact.getFile(), newManifest(), previousJars, indexDir);
+	}
+
+	Artifact newShardArtifact(@NotNull final String shard) {
+		final Artifact shardArtifact = new DefaultArtifact(indexBuilderArtifact.getGroupId(),
+				indexBuilderArtifact.getArtifactId(), indexBuilderArtifact.getVersion(), indexBuilderArtifact.getScope(),
+				indexBuilderArtifact.getType(), IndexSharding.classifierOf(shard), indexBuilderArtifact.getArtifactHandler());
+		shardArtifact.setFile(new File(indexBuilderArtifact.getFile().getParentFile(), indexBuilderArtifact.getArtifactId()
+				+ "-" + indexBuilderArtifact.getVersion() + "-" + IndexSharding.classifierOf(shard) + ".jar"));
+		return shardArtifact;
+	}
+
+	/**
+	 * Write a jar for every shard with saved entries, on top of the previous jar of the same shard. A shard jar that is
+	 * identical to the previous jar keeps its previous version and is not deployed. The index jar itself only lists the
+	 * version of every shard. Fails if a changed shard is listed by the previous index but can't be resolved.
+	 *
+	 * @param sharding the sharding
+	 * @return the completable
+	 */
+	Completable writeShardedJar(@NotNull final IndexSharding sharding) {
+		return Completable.fromAction(() -> {
+			final Map<String, String> versions = new TreeMap<>(previousShards != null
+					? previousShards.getShardVersions()
+					: Collections.emptyMap());
+			final Set<String> changedShards = new TreeSet<>();
+			for (Path indexFileRelPath : changedEntries.keySet()) {
+				changedShards.add(shardOf(indexFileRelPath));
+			}
+			for (String shard : changedShards) {
+				final Artifact shardArtifact = newShardArtifact(shard);
+				final File previous = previousShards != null ? previousShards.getShardFile(shard) : null;
+				if (previous == null && versions.containsKey(shard)) {
+					// a shard rebuilt from the changed entries alone would replace every other entry of the shard
+					throw new MojoFailureException(String.format("index shard %s version %s can't be resolved, "
+							+ "so its changed entries can't be merged", shard, versions.get(shard)));
+				}
+				writeIndexJar(shardArtifact.getFile(), newManifest(),
+						previous != null ? Collections.singletonList(previous) : Collections.emptyList(),
+						indexDir.resolve(shard)).blockingAwait();
+				if (previous == null || !FileUtils.contentEquals(previous, shardArtifact.getFile())) {
+					versions.put(shard, indexBuilderArtifact.getVersion());
+					shardArtifacts.add(shardArtifact);
+				}
+			}
+			final Path shardsFile = indexDir.resolveSibling(indexDir.getFileName().toString() + ".shards.txt");
+			Files.write(shardsFile, versions.entrySet().stream()
+					.map(entry -> entry.getKey() + "\t" + entry.getValue())
+					.collect(Collectors.toList()), StandardCharsets.UTF_8);
+			final Manifest manifest = newManifest();
+			manifest.getMainAttributes().putValue(IndexSharding.SHARDING_ATTRIBUTE, sharding.toString());
+			JarUtils.writeJarFile(indexBuilderArtifact.getFile(), manifest, Collections.emptyList(),
+					IndexBuilder::isTextEntry, null, Collections.singletonMap(IndexSharding.SHARDS_ENTRY, shardsFile),
+					compression, 1).blockingAwait();
+		});
+	}
+
+	/**
+	 * @return the latest index jar that a new full index jar can be compared with, or null if there is none
+	 */
+	@Nullable File getLatestJar() {
+		if (sharding != null) {
+			return previousShards != null ? previousShards.getIndexArtifact().getFile() : null;
+		}
+		return deltaBaseVersion == null && !previousJars.isEmpty() ? previousJars.get(0) : null;
+	}
+
+	/**
+	 * Check whether the new index jar has the same bytes as the latest previous full index, in which case deploying it
+	 * would only add a redundant version.
+	 *
+	 * @return true if the new index jar is identical to the latest index jar
+	 * @throws IOException if a jar can't be read
+	 */
+	boolean isIdenticalToLatest() throws IOException {
+		final File latestJar = getLatestJar();
+		return latestJar != null && FileUtils.contentEquals(latestJar, indexBuilderArtifact.getFile());
 	}
 
 	Completable finishAndUpload(@NotNull final Stats stats, final boolean noUpload) {
-		return JarUtils.createJarFile(indexBuilderArtifact.getFile(), indexDir)
+		return Completable.fromAction(this::flushEntries)
+				.andThen(writeJar())
 				.andThen(Completable.create(emitter -> {
-					if (stats.isDirty() && !noUpload) {
+					if (stats.isDirty() && !noUpload && isIdenticalToLatest()) {
+						context.getLog().info("index jar is identical to " + getLatestJar().getName() + ", skipping deploy");
+					} else if (stats.isDirty() && !noUpload) {
+						if (deltaBaseVersion != null) {
+							context.getLog().info(String.format("deploying delta index of %d entries over version %s",
+									changedEntries.size(), deltaBaseVersion));
+						} else if (sharding != null) {
+							context.getLog().info(String.format("deploying %d changed index shards", shardArtifacts.size()));
+						}
 						context.deploy(this.indexGav, this.getArtifacts());
+						deployed = true;
 					}
 					if (stats.getFailures() > 0) {
 						final String failureMessage = String.format("encountered %d artifact sync failures", stats.getFailures());
@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolverException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+
+/**
+ * A persistent cache of resolved index jars, keyed by the resolved version. Index versions are never redeployed, so a
+ * cached jar never needs to be revalidated once the latest version has been resolved from the repository metadata.
+ * <p>
+ * The cache layout is {@code groupId/artifactId/version/artifactId-version[-classifier].jar}, with the groupId as a single
+ * directory name.
+ */
+final class IndexCache {
+	private final Path cacheDir;
+
+	private final Log log;
+
+	IndexCache(@NotNull final Path cacheDir, @NotNull final Log log) {
+		this.cacheDir = cacheDir;
+		this.log = log;
+	}
+
+	Path getCacheDir() {
+		return cacheDir;
+	}
+
+	Path getArtifactDir(@NotNull final Artifact artifact) {
+		return cacheDir.resolve(artifact.getGroupId()).resolve(artifact.getArtifactId());
+	}
+
+	Path getCachedFile(@NotNull final Artifact artifact) {
+		final String classifier = artifact.hasClassifier() ? "-" + artifact.getClassifier() : "";
+		return getArtifactDir(artifact).resolve(artifact.getVersion())
+				.resolve(artifact.getArtifactId() + "-" + artifact.getVersion() + classifier + ".jar");
+	}
+
+	/**
+	 * Resolve an index jar with a specific version, from the cache if it is present, and otherwise from the repository,
+	 * adding the resolved file to the cache.
+	 *
+	 * @param context  the execution context
+	 * @param artifact the index jar artifact with a specific version
+	 * @return the resolved artifact
+	 * @throws ArtifactResolverException if the artifact can't be resolved from the repository
+	 * @throws IOException               if the resolved file can't be added to the cache
+	 */
+	Artifact resolve(@NotNull final Context context, @NotNull final Artifact artifact)
+			throws ArtifactResolverException, IOException {
+		final Path cachedFile = getCachedFile(artifact);
+		if (Files.isRegularFile(cachedFile)) {
+			log.debug("using cached index file " + cachedFile);
+			artifact.setFile(cachedFile.toFile());
+			return artifact;
+		}
+		final Artifact resolved = context.resolve(artifact);
+		put(resolved.getFile(), cachedFile);
+		resolved.setFile(cachedFile.toFile());
+		return resolved;
+	}
+
+	/**
+	 * Copy a file into the cache through a temporary file in the same directory, so that concurrent executions on the same
+	 * agent never read a partially written cache file.
+	 *
+	 * @param file       the resolved file
+	 * @param cachedFile the cache file
+	 * @throws IOException if the file can't be copied
+	 */
+	static void put(@NotNull final File file, @NotNull final Path cachedFile) throws IOException {
+		Files.createDirectories(cachedFile.getParent());
+		final Path tempFile = Files.createTempFile(cachedFile.getParent(), cachedFile.getFileName().toString(), ".tmp");
+		try {
+			Files.copy(file.toPath(), tempFile, StandardCopyOption.REPLACE_EXISTING);
+			Files.move(tempFile, cachedFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	/**
+	 * Delete the cached versions of an index that are neither in the current delta chain nor the version of a current shard.
+	 *
+	 * @param latest   the latest index artifact
+	 * @param versions the versions to keep
+	 */
+	void retain(@NotNull final Artifact latest, @NotNull final Collection<String> versions) {
+		final Path artifactDir = getArtifactDir(latest);
+		if (!Files.isDirectory(artifactDir)) {
+			return;
+		}
+		try (DirectoryStream<Path> children = Files.newDirectoryStream(artifactDir)) {
+			for (Path child : children) {
+				if (!versions.contains(child.getFileName().toString())) {
+					deleteVersionDir(child);
+				}
+			}
+		} catch (IOException e) {
+			log.debug("failed to clean index cache " + artifactDir, e);
+		}
+	}
+
+	private void deleteVersionDir(@NotNull final Path versionDir) throws IOException {
+		if (Files.isDirectory(versionDir)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(versionDir)) {
+				for (Path file : files) {
+					Files.deleteIfExists(file);
+				}
+			}
+		}
+		Files.deleteIfExists(versionDir);
+		log.debug("evicted cached index " + versionDir);
+	}
+}
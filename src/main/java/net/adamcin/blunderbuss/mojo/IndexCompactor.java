@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Single;
+import io.reactivex.rxjava3.functions.Predicate;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Computes the union of several indexes and writes the entries that are still valid to a single new index.
+ * <p>
+ * An entry is dropped when its key is not a release version directory, when it has no filenames, or when the optional
+ * existence check reports that the indexed pom is no longer present in the deployment repository. Entries that were
+ * superseded by a later delta, or that are duplicated across indexes, collapse into one entry in the union.
+ */
+final class IndexCompactor {
+	private final Log log;
+
+	private final @Nullable Predicate<Gav> pomExists;
+
+	private final int parallelism;
+
+	private final AtomicInteger invalid = new AtomicInteger();
+
+	private final AtomicInteger missing = new AtomicInteger();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param log         the logger
+	 * @param pomExists   the existence check for the pom of an indexed gav, or null to skip the check
+	 * @param parallelism the maximum number of concurrent existence checks
+	 */
+	IndexCompactor(@NotNull final Log log, @Nullable final Predicate<Gav> pomExists, final int parallelism) {
+		this.log = log;
+		this.pomExists = pomExists;
+		this.parallelism = Math.max(1, parallelism);
+	}
+
+	/**
+	 * Collect the entries of a lookup in key order. Entries that are visited more than once, as with a union of several
+	 * indexes, are merged.
+	 *
+	 * @param lookup the lookup
+	 * @return the sorted entries
+	 */
+	static Map<String, String[]> collectEntries(@NotNull final IndexLookup lookup) {
+		final Map<String, String[]> entries = new TreeMap<>();
+		lookup.forEach((key, filenames) -> entries.merge(key, filenames, UnionIndexLookup::union));
+		return entries;
+	}
+
+	/**
+	 * Parse the gav of an index entry that should be retained regardless of the existence check.
+	 *
+	 * @param key       the entry key
+	 * @param filenames the indexed filenames
+	 * @return the gav, or null if the entry is not valid
+	 */
+	static @Nullable Gav validGav(@NotNull final String key, @NotNull final String[] filenames) {
+		if (filenames.length == 0) {
+			return null;
+		}
+		final Path layoutPrefix = Paths.get(key);
+		if (layoutPrefix.getNameCount() < 3) {
+			return null;
+		}
+		final Gav gav = Gav.fromLayoutPrefix(layoutPrefix);
+		return gav.isSnapshot() ? null : gav;
+	}
+
+	static String pomFilename(@NotNull final Gav gav) {
+		return gav.getArtifactId() + "-" + gav.getVersion() + ".pom";
+	}
+
+	boolean isRetained(@NotNull final Map.Entry<String, String[]> entry) throws Throwable {
+		final Gav gav = validGav(entry.getKey(), entry.getValue());
+		if (gav == null) {
+			invalid.incrementAndGet();
+			return false;
+		}
+		// only an indexed pom is checked, since the pom is the one file that every deployed gav is expected to have
+		if (pomExists != null && IndexRecord.indexOf(entry.getValue(), pomFilename(gav)) >= 0 && !pomExists.test(gav)) {
+			missing.incrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Write the retained entries of the merged indexes to the builder.
+	 *
+	 * @param mergedIndex the indexes to compact
+	 * @param builder     the builder of the consolidated index
+	 * @return the builder stats
+	 */
+	Single<IndexBuilder.Stats> compact(@NotNull final MergedIndex mergedIndex, @NotNull final IndexBuilder builder) {
+		return Flowable.using(mergedIndex::loadLookup,
+				lookup -> {
+					final Map<String, String[]> entries = collectEntries(lookup);
+					log.info(String.format("merged %d indexes into %d entries", mergedIndex.getIndexes().size(), entries.size()));
+					return Flowable.fromIterable(entries.entrySet());
+				},
+				UnionIndexLookup::close)
+				.parallel(parallelism)
+				.runOn(Schedulers.io())
+				.filter(this::isRetained)
+				.map(entry -> builder.saveEntry(Paths.get(entry.getKey() + EntryIndexLookup.ENTRY_SUFFIX),
+						Arrays.asList(entry.getValue())))
+				.sequential()
+				.reduce(builder.getNoopStats(), IndexBuilder.Stats::combine)
+				.doOnSuccess(stats -> log.info(String.format("dropped %d invalid entries and %d missing entries",
+						invalid.get(), missing.get())));
+	}
+}
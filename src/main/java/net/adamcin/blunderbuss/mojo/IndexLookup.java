@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.function.BiConsumer;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+
+/**
+ * Read-only view of the indexed filenames of an index artifact, which is safe to call concurrently.
+ */
+public interface IndexLookup extends Closeable {
+
+	/**
+	 * Get the indexed filenames for a layout prefix.
+	 *
+	 * @param layoutPrefix the relative version directory path
+	 * @return the sorted indexed filenames, or null if the layout prefix is not indexed
+	 */
+	@Nullable String[] getFilenames(@NotNull Path layoutPrefix);
+
+	/**
+	 * @return the number of indexed layout prefixes
+	 */
+	int size();
+
+	/**
+	 * Visit every indexed layout prefix key with its sorted filenames.
+	 *
+	 * @param consumer the entry consumer
+	 */
+	void forEach(@NotNull BiConsumer<String, String[]> consumer);
+
+	@Override
+	default void close() throws IOException {
+		// nothing to release by default
+	}
+
+	/**
+	 * Build the lookup key for a layout prefix, which matches the text entry name without the {@code .txt} suffix.
+	 *
+	 * @param layoutPrefix the relative version directory path
+	 * @return the lookup key
+	 */
+	static String keyFor(@NotNull final Path layoutPrefix) {
+		final int count = layoutPrefix.getNameCount();
+		if (count == 1) {
+			return layoutPrefix.toString();
+		}
+		final StringBuilder key = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			if (i > 0) {
+				key.append('/');
+			}
+			key.append(layoutPrefix.getName(i).toString());
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Load the lookup for an index jar file, using the memory-mapped binary index entry whenever the jar contains one, and
+	 * otherwise reading the text entries. A jar written in the {@code BOTH} format has the same records in both forms, so
+	 * the binary entry is the faster way to read it.
+	 *
+	 * @param jarFile the index jar file
+	 * @return the lookup
+	 * @throws IOException if the jar file can't be read
+	 */
+	static IndexLookup load(@NotNull final File jarFile) throws IOException {
+		try (JarFile jar = new JarFile(jarFile)) {
+			if (jar.getJarEntry(BinaryIndex.ENTRY_NAME) != null) {
+				return BinaryIndex.extractAndMap(jar);
+			}
+		}
+		return EntryIndexLookup.load(jarFile);
+	}
+
+	static boolean hasTextEntries(@NotNull final JarFile jar) {
+		for (Enumeration<JarEntry> entries = jar.entries(); entries.hasMoreElements(); ) {
+			if (IndexBuilder.isTextEntry(entries.nextElement().getName())) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * One line of an index entry. A line is either a plain filename, as written by every version of the plugin, or a
+ * filename followed by the size and the SHA-1 of the file content that was synced, separated by tabs, like
+ * {@code widget-1.jar\t1024\t<sha1>}.
+ * <p>
+ * The tab sorts below every character that is valid in a filename, so an array of lines sorted as strings is also sorted
+ * by filename.
+ */
+final class IndexRecord {
+	static final char SEPARATOR = '\t';
+
+	static final String SHA1_SUFFIX = ".sha1";
+
+	private static final Pattern SHA1_PATTERN = Pattern.compile("[0-9a-f]{40}");
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final String filename;
+
+	private final long size;
+
+	private final @Nullable String sha1;
+
+	IndexRecord(@NotNull final String filename, final long size, @Nullable final String sha1) {
+		this.filename = filename;
+		this.size = size;
+		this.sha1 = sha1;
+	}
+
+	String getFilename() {
+		return filename;
+	}
+
+	/**
+	 * @return the recorded size, or -1 for a plain filename
+	 */
+	long getSize() {
+		return size;
+	}
+
+	/**
+	 * @return the recorded lowercase hex SHA-1, or null for a plain filename
+	 */
+	@Nullable String getSha1() {
+		return sha1;
+	}
+
+	boolean hasChecksum() {
+		return sha1 != null;
+	}
+
+	String toLine() {
+		return sha1 == null ? filename : filename + SEPARATOR + size + SEPARATOR + sha1;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		final IndexRecord that = (IndexRecord) o;
+		return size == that.size && filename.equals(that.filename) && Objects.equals(sha1, that.sha1);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(filename, size, sha1);
+	}
+
+	@Override
+	public String toString() {
+		return toLine();
+	}
+
+	/**
+	 * Parse an index entry line. A line with fields that can't be parsed is read as a plain filename up to the first
+	 * separator, so that a damaged checksum never causes a file to be treated as unknown.
+	 *
+	 * @param line the index entry line
+	 * @return the record
+	 */
+	static IndexRecord parse(@NotNull final String line) {
+		final int first = line.indexOf(SEPARATOR);
+		if (first < 0) {
+			return new IndexRecord(line, -1L, null);
+		}
+		final String filename = line.substring(0, first);
+		final int second = line.indexOf(SEPARATOR, first + 1);
+		if (second > 0) {
+			final String sha1 = line.substring(second + 1);
+			try {
+				final long size = Long.parseLong(line.substring(first + 1, second));
+				if (size >= 0 && SHA1_PATTERN.matcher(sha1).matches()) {
+					return new IndexRecord(filename, size, sha1);
+				}
+			} catch (NumberFormatException e) {
+				// fall through to a plain filename
+			}
+		}
+		return new IndexRecord(filename, -1L, null);
+	}
+
+	/**
+	 * Get the filename of an index entry line without parsing the other fields.
+	 *
+	 * @param line the index entry line
+	 * @return the filename
+	 */
+	static String filenameOf(@NotNull final String line) {
+		final int first = line.indexOf(SEPARATOR);
+		return first < 0 ? line : line.substring(0, first);
+	}
+
+	/**
+	 * Find the line for a filename in an array of index entry lines that is sorted as strings.
+	 *
+	 * @param lines    the sorted lines
+	 * @param filename the filename
+	 * @return the index of the line, or a negative value if the filename is not present
+	 */
+	static int indexOf(@NotNull final String[] lines, @NotNull final String filename) {
+		int low = 0;
+		int high = lines.length - 1;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			final int cmp = filenameOf(lines[mid]).compareTo(filename);
+			if (cmp < 0) {
+				low = mid + 1;
+			} else if (cmp > 0) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Build the record of a synced file. The SHA-1 is read from the {@code .sha1} file that maven writes next to a
+	 * downloaded artifact when it is present and well-formed, and otherwise it is computed from the file content.
+	 *
+	 * @param file the synced file
+	 * @return the record
+	 * @throws IOException if the file can't be read
+	 */
+	static IndexRecord of(@NotNull final File file) throws IOException {
+		final long size = Files.size(file.toPath());
+		final String recorded = readSha1File(new File(file.getParentFile(), file.getName() + SHA1_SUFFIX));
+		return new IndexRecord(file.getName(), size, recorded != null ? recorded : sha1(file));
+	}
+
+	static @Nullable String readSha1File(@NotNull final File sha1File) {
+		if (!sha1File.isFile() || sha1File.length() > 1024L) {
+			return null;
+		}
+		try {
+			final String contents = new String(Files.readAllBytes(sha1File.toPath()), StandardCharsets.US_ASCII).trim();
+			// some tools append the filename after the checksum
+			final String sha1 = contents.length() > 40 ? contents.substring(0, 40) : contents;
+			final String lower = sha1.toLowerCase();
+			return SHA1_PATTERN.matcher(lower).matches() ? lower : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	static String sha1(@NotNull final File file) throws IOException {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("SHA-1 is a required algorithm", e);
+		}
+		final byte[] buffer = new byte[8192];
+		try (InputStream input = Files.newInputStream(file.toPath())) {
+			for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+				digest.update(buffer, 0, read);
+			}
+		}
+		final byte[] bytes = digest.digest();
+		final char[] hex = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			hex[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+			hex[i * 2 + 1] = HEX[bytes[i] & 0xF];
+		}
+		return new String(hex);
+	}
+
+	/**
+	 * Check whether a local file has the recorded content. A plain filename matches any file. Otherwise the size is compared
+	 * first, so that the file is only hashed when the sizes are equal.
+	 *
+	 * @param file the local file
+	 * @return true if the file has the recorded size and SHA-1
+	 * @throws IOException if the file can't be read
+	 */
+	boolean matches(@NotNull final File file) throws IOException {
+		if (sha1 == null) {
+			return true;
+		}
+		return Files.size(file.toPath()) == size && sha1.equals(sha1(file));
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.commons.io.IOUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+
+/**
+ * Splits the entries of an index into shards that are deployed as classifiers of the index artifact, so that an execution
+ * only resolves the shards of the groupIds it actually touches, and only deploys the shards that changed.
+ * <p>
+ * A sharded index jar has no entries of its own. Its manifest specifies how keys are assigned to shards, and its
+ * {@link #SHARDS_ENTRY} lists the version of the index artifact that each shard was last deployed with, as
+ * {@code shard\tversion} lines. Each shard is a full index jar with the {@code shard-<shard>} classifier.
+ */
+public final class IndexSharding {
+	/**
+	 * The manifest attribute of a sharded index jar that specifies the sharding.
+	 */
+	public static final String SHARDING_ATTRIBUTE = "Blunderbuss-Index-Sharding";
+
+	/**
+	 * The entry of a sharded index jar that lists the deployed version of each shard.
+	 */
+	public static final String SHARDS_ENTRY = "META-INF/blunderbuss/shards.txt";
+
+	static final String CLASSIFIER_PREFIX = "shard-";
+
+	static final String SEGMENT = "segment";
+
+	static final String HASH_PREFIX = "hash:";
+
+	private final int buckets;
+
+	private IndexSharding(final int buckets) {
+		this.buckets = buckets;
+	}
+
+	/**
+	 * Parse a sharding specification, which is either {@code segment} to shard by the first segment of the groupId, or
+	 * {@code hash:<buckets>} to shard by a hash of the whole groupId into a fixed number of buckets.
+	 *
+	 * @param spec the sharding specification
+	 * @return the sharding, or null if the specification is blank
+	 * @throws IllegalArgumentException if the specification is not valid
+	 */
+	static @Nullable IndexSharding parse(@Nullable final String spec) {
+		if (spec == null || spec.trim().isEmpty()) {
+			return null;
+		}
+		final String trimmed = spec.trim();
+		if (SEGMENT.equals(trimmed)) {
+			return new IndexSharding(0);
+		}
+		if (trimmed.startsWith(HASH_PREFIX)) {
+			try {
+				final int buckets = Integer.parseInt(trimmed.substring(HASH_PREFIX.length()));
+				if (buckets > 0) {
+					return new IndexSharding(buckets);
+				}
+			} catch (NumberFormatException e) {
+				// fall through to the error
+			}
+		}
+		throw new IllegalArgumentException("invalid index sharding: " + spec + ". Use segment or hash:<buckets>.");
+	}
+
+	/**
+	 * Get the shard of an index entry. Every entry of the same groupId is assigned to the same shard.
+	 *
+	 * @param key the entry key, like {@code com/example/widget/1.0}
+	 * @return the shard, which is safe to use in a classifier
+	 */
+	String shardOf(@NotNull final String key) {
+		final int versionSlash = key.lastIndexOf('/');
+		final int artifactSlash = versionSlash > 0 ? key.lastIndexOf('/', versionSlash - 1) : -1;
+		final String groupPath = artifactSlash > 0 ? key.substring(0, artifactSlash) : key;
+		if (buckets > 0) {
+			final int width = Integer.toHexString(buckets - 1).length();
+			return String.format("%0" + width + "x", Math.floorMod(groupPath.hashCode(), buckets));
+		}
+		final int slash = groupPath.indexOf('/');
+		final String segment = slash > 0 ? groupPath.substring(0, slash) : groupPath;
+		return segment.replaceAll("[^A-Za-z0-9_]", "_");
+	}
+
+	static String classifierOf(@NotNull final String shard) {
+		return CLASSIFIER_PREFIX + shard;
+	}
+
+	/**
+	 * Read the sharding of an index jar.
+	 *
+	 * @param jarFile the index jar file
+	 * @return the sharding, or null if the index is not sharded
+	 * @throws IOException if the jar can't be read
+	 */
+	static @Nullable IndexSharding read(@NotNull final File jarFile) throws IOException {
+		try (JarFile jar = new JarFile(jarFile)) {
+			final Manifest manifest = jar.getManifest();
+			if (manifest == null) {
+				return null;
+			}
+			return parse(manifest.getMainAttributes().getValue(SHARDING_ATTRIBUTE));
+		}
+	}
+
+	/**
+	 * Read the deployed version of each shard of a sharded index jar.
+	 *
+	 * @param jarFile the index jar file
+	 * @return the shard versions, keyed by shard, which is empty if the index is not sharded
+	 * @throws IOException if the jar can't be read
+	 */
+	static Map<String, String> readVersions(@NotNull final File jarFile) throws IOException {
+		final Map<String, String> versions = new TreeMap<>();
+		try (JarFile jar = new JarFile(jarFile)) {
+			final JarEntry entry = jar.getJarEntry(SHARDS_ENTRY);
+			if (entry != null) {
+				try (InputStream input = jar.getInputStream(entry)) {
+					for (String line : IOUtils.readLines(input, StandardCharsets.UTF_8)) {
+						final int tab = line.indexOf('\t');
+						if (tab > 0) {
+							versions.put(line.substring(0, tab), line.substring(tab + 1).trim());
+						}
+					}
+				}
+			}
+		}
+		return versions;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		return o instanceof IndexSharding && ((IndexSharding) o).buckets == buckets;
+	}
+
+	@Override
+	public int hashCode() {
+		return buckets;
+	}
+
+	@Override
+	public String toString() {
+		return buckets > 0 ? HASH_PREFIX + buckets : SEGMENT;
+	}
+}
@@ -17,27 +17,46 @@
 package net.adamcin.blunderbuss.mojo;
 
 import io.reactivex.rxjava3.core.Completable;
-import io.reactivex.rxjava3.functions.Supplier;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.archivers.zip.ZipFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Predicate;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
-import java.util.jar.JarOutputStream;
 import java.util.jar.Manifest;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
 
 public final class JarUtils {
 	private JarUtils() {
@@ -82,55 +101,230 @@ public final class JarUtils {
 		}
 	};
 
-	static void buildJarOutputStreamFromDir(final @NotNull File srcDir,
-			final @NotNull JarOutputStream jos) throws IOException {
-		final String absPath = srcDir.getAbsolutePath();
-		for (File file : FileUtils.listFilesAndDirs(srcDir, includedEntry, TrueFileFilter.INSTANCE)) {
-			final String filePath = file.getAbsolutePath();
-			final String entryName = filePath.substring(absPath.length())
-					.replaceFirst("^" + Pattern.quote(File.separator) + "?", "")
-					.replace(File.separator, "/");
-			if (entryName.isEmpty()) {
-				continue;
-			}
-			if (file.isDirectory()) {
-				JarEntry entry = new JarEntry(entryName + "/");
-				entry.setTime(file.lastModified());
-				jos.putNextEntry(entry);
-			} else {
-				JarEntry entry = new JarEntry(entryName);
-				entry.setTime(file.lastModified());
-				jos.putNextEntry(entry);
-				try (FileInputStream fileInput = new FileInputStream(file)) {
-					IOUtils.copy(fileInput, jos);
+	/**
+	 * The compression method of the entries written by {@link #writeJarFile}.
+	 */
+	public enum Compression {
+		/**
+		 * Deflate every entry.
+		 */
+		DEFLATED(ZipEntry.DEFLATED),
+		/**
+		 * Store every entry uncompressed, for the fastest random access to single entries at the cost of a larger jar.
+		 */
+		STORED(ZipEntry.STORED);
+
+		private final int method;
+
+		Compression(final int method) {
+			this.method = method;
+		}
+
+		int getMethod() {
+			return method;
+		}
+	}
+
+	/**
+	 * The modification time of every entry written by {@link #writeJarFile}. Zip entry times are local date-times, so the
+	 * local date-time is fixed rather than the instant, which keeps the jar bytes independent of the time zone.
+	 */
+	static final long ENTRY_TIME = LocalDateTime.of(2000, 1, 1, 0, 0).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+
+	/**
+	 * The header fields and the compressed bytes of an entry, ready to be written with
+	 * {@link ZipArchiveOutputStream#addRawArchiveEntry}.
+	 */
+	static final class EncodedEntry {
+		private final ZipArchiveEntry entry;
+
+		private final byte[] data;
+
+		EncodedEntry(@NotNull final ZipArchiveEntry entry, @NotNull final byte[] data) {
+			this.entry = entry;
+			this.data = data;
+		}
+
+		ZipArchiveEntry getEntry() {
+			return entry;
+		}
+
+		byte[] getData() {
+			return data;
+		}
+	}
+
+	static ZipArchiveEntry newRawEntry(@NotNull final String name, final int method, final long crc, final long size,
+			final long compressedSize) {
+		final ZipArchiveEntry entry = new ZipArchiveEntry(name);
+		entry.setMethod(method);
+		entry.setCrc(crc);
+		entry.setSize(size);
+		entry.setCompressedSize(compressedSize);
+		entry.setTime(ENTRY_TIME);
+		return entry;
+	}
+
+	/**
+	 * Compress the content of an entry. This is the expensive part of writing a jar, and is safe to call concurrently.
+	 *
+	 * @param name        the entry name
+	 * @param content     the uncompressed content
+	 * @param compression the compression method
+	 * @return the encoded entry
+	 * @throws IOException if the content can't be compressed
+	 */
+	static EncodedEntry encode(@NotNull final String name, @NotNull final byte[] content,
+			@NotNull final Compression compression) throws IOException {
+		final CRC32 crc = new CRC32();
+		crc.update(content);
+		final byte[] data;
+		if (compression == Compression.DEFLATED) {
+			final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+			try {
+				final ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+				try (DeflaterOutputStream output = new DeflaterOutputStream(buffer, deflater)) {
+					output.write(content);
 				}
+				data = buffer.toByteArray();
+			} finally {
+				deflater.end();
 			}
-			jos.closeEntry();
+		} else {
+			data = content;
 		}
+		return new EncodedEntry(newRawEntry(name, compression.getMethod(), crc.getValue(), content.length, data.length),
+				data);
 	}
 
-	static Completable createJarFile(@NotNull final File targetJar, @NotNull final Path pathIsRoot) {
-		return Completable.create(emitter -> {
+	static String relativeEntryName(@NotNull final File root, @NotNull final File file) {
+		return file.getAbsolutePath().substring(root.getAbsolutePath().length())
+				.replaceFirst("^" + Pattern.quote(File.separator) + "?", "")
+				.replace(File.separator, "/");
+	}
+
+	/**
+	 * Write a reproducible jar from the entries of previous jars, a directory of changed entries, and extra files. The
+	 * manifest is written first, and every other entry follows in name order, with parent directory entries generated
+	 * from the entry names and a fixed modification time, so that the same entries always produce the same bytes.
+	 * <p>
+	 * Changed entries and extra entries are compressed in parallel, and are then written by a single thread. Entries of
+	 * the previous jars that were written with the requested compression method are copied with their compressed bytes
+	 * unchanged. When several previous jars contain the same entry, the first jar in the list wins, and changed entries
+	 * and extra entries always replace entries of the previous jars. Manifest and directory entries of the previous jars
+	 * are never copied.
+	 *
+	 * @param targetJar    the jar file to write
+	 * @param manifest     the manifest of the new jar
+	 * @param previousJars the previous jars, in order of precedence
+	 * @param entryFilter  selects the entries of the previous jars to copy by name
+	 * @param changedDir   the directory of changed entries, which may be null
+	 * @param extraEntries additional files to add, keyed by entry name
+	 * @param compression  the compression method of the new jar
+	 * @param parallelism  the maximum number of entries compressed concurrently
+	 * @return the completable
+	 */
+	static Completable writeJarFile(@NotNull final File targetJar,
+			@NotNull final Manifest manifest,
+			@NotNull final List<File> previousJars,
+			@NotNull final Predicate<String> entryFilter,
+			@Nullable final Path changedDir,
+			@NotNull final Map<String, Path> extraEntries,
+			@NotNull final Compression compression,
+			final int parallelism) {
+		return Completable.defer(() -> {
 			final File targetDir = targetJar.getParentFile();
 			if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
 				throw new IOException("failed to create parent target directory: " + targetDir.getAbsolutePath());
 			}
-			final File manifestFile = pathIsRoot.resolve(JarFile.MANIFEST_NAME).toFile();
-			final Supplier<JarOutputStream> jarOut = () -> {
-				if (manifestFile.exists()) {
-					try (InputStream manIn = new FileInputStream(manifestFile)) {
-						final Manifest man = new Manifest(manIn);
-						return new JarOutputStream(new FileOutputStream(targetJar), man);
+			final Map<String, File> files = new TreeMap<>();
+			if (changedDir != null && changedDir.toFile().isDirectory()) {
+				for (File file : FileUtils.listFiles(changedDir.toFile(), includedEntry, TrueFileFilter.INSTANCE)) {
+					files.put(relativeEntryName(changedDir.toFile(), file), file);
+				}
+			}
+			extraEntries.forEach((name, path) -> files.put(name, path.toFile()));
+			files.remove(JarFile.MANIFEST_NAME);
+			final List<ZipFile> zipFiles = new ArrayList<>();
+			try {
+				// the source of each copied entry, and the content of copied entries that must be recompressed
+				final Map<String, ZipArchiveEntry> copied = new TreeMap<>();
+				final Map<String, ZipFile> copiedFrom = new HashMap<>();
+				final Map<String, byte[]> recompressed = new TreeMap<>();
+				for (File previousJar : previousJars) {
+					final ZipFile zipFile = new ZipFile(previousJar);
+					zipFiles.add(zipFile);
+					for (Enumeration<ZipArchiveEntry> entries = zipFile.getEntries(); entries.hasMoreElements(); ) {
+						final ZipArchiveEntry entry = entries.nextElement();
+						final String name = entry.getName();
+						if (entry.isDirectory() || JarFile.MANIFEST_NAME.equals(name) || files.containsKey(name)
+								|| copied.containsKey(name) || recompressed.containsKey(name) || !entryFilter.test(name)) {
+							continue;
+						}
+						if (entry.getMethod() == compression.getMethod() && zipFile.canReadEntryData(entry)) {
+							copied.put(name, entry);
+							copiedFrom.put(name, zipFile);
+						} else {
+							try (InputStream input = zipFile.getInputStream(entry)) {
+								recompressed.put(name, IOUtils.toByteArray(input));
+							}
+						}
+					}
+				}
+
+				final ByteArrayOutputStream manifestBytes = new ByteArrayOutputStream();
+				manifest.write(manifestBytes);
+				final Map<String, EncodedEntry> encoded = Flowable.fromIterable(files.keySet())
+						.concatWith(Flowable.fromIterable(recompressed.keySet()))
+						.parallel(Math.max(1, parallelism))
+						.runOn(Schedulers.computation())
+						.map(name -> encode(name, files.containsKey(name)
+								? Files.readAllBytes(files.get(name).toPath())
+								: recompressed.get(name), compression))
+						.sequential()
+						.toMap(encodedEntry -> encodedEntry.getEntry().getName(), encodedEntry -> encodedEntry,
+								TreeMap::new)
+						.blockingGet();
+
+				final Set<String> names = new TreeSet<>(encoded.keySet());
+				names.addAll(copied.keySet());
+				for (String name : new ArrayList<>(names)) {
+					for (int slash = name.indexOf('/'); slash >= 0; slash = name.indexOf('/', slash + 1)) {
+						names.add(name.substring(0, slash + 1));
 					}
-				} else {
-					return new JarOutputStream(new FileOutputStream(targetJar));
 				}
-			};
-			try (JarOutputStream jos = jarOut.get()) {
-				buildJarOutputStreamFromDir(pathIsRoot.toFile(), jos);
+				names.remove("META-INF/");
+
+				try (ZipArchiveOutputStream zos = new ZipArchiveOutputStream(targetJar)) {
+					// the manifest must be the first file entry for JarInputStream to find it
+					writeRawEntry(zos, new EncodedEntry(newRawEntry("META-INF/", ZipEntry.STORED, 0L, 0L, 0L), new byte[0]));
+					writeRawEntry(zos, encode(JarFile.MANIFEST_NAME, manifestBytes.toByteArray(), compression));
+					for (String name : names) {
+						if (encoded.containsKey(name)) {
+							writeRawEntry(zos, encoded.get(name));
+						} else if (copied.containsKey(name)) {
+							final ZipArchiveEntry entry = copied.get(name);
+							try (InputStream raw = copiedFrom.get(name).getRawInputStream(entry)) {
+								zos.addRawArchiveEntry(newRawEntry(name, entry.getMethod(), entry.getCrc(), entry.getSize(),
+										entry.getCompressedSize()), raw);
+							}
+						} else {
+							writeRawEntry(zos, new EncodedEntry(newRawEntry(name, ZipEntry.STORED, 0L, 0L, 0L), new byte[0]));
+						}
+					}
+				}
+			} finally {
+				for (ZipFile zipFile : zipFiles) {
+					ZipFile.closeQuietly(zipFile);
+				}
 			}
-			emitter.onComplete();
+			return Completable.complete();
 		});
 	}
 
+	private static void writeRawEntry(@NotNull final ZipArchiveOutputStream zos, @NotNull final EncodedEntry encoded)
+			throws IOException {
+		zos.addRawArchiveEntry(encoded.getEntry(), new ByteArrayInputStream(encoded.getData()));
+	}
+
 }
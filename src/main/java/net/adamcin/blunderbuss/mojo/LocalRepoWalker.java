@@ -0,0 +1,327 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Emitter;
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Scheduler;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
+import org.apache.maven.artifact.repository.metadata.ArtifactRepositoryMetadata;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Discovers artifact groups in the local repository. The local repository is walked depth-first one directory listing
+ * at a time, and only as fast as downstream subscribers request artifact groups, so that the heap does not fill up with
+ * discovered artifact groups when uploads are slow.
+ */
+public final class LocalRepoWalker {
+	static final String POM_TYPE = "pom";
+
+	static final String POM_EXT = "." + POM_TYPE;
+
+	/**
+	 * The shallowest valid pom path is {@code groupId/artifactId/version/artifactId-version.pom}, so a version directory is
+	 * never found at a depth of less than 3.
+	 */
+	private static final int MIN_VERSION_DIR_DEPTH = 3;
+
+	/**
+	 * Directories at a depth of less than 3 can never be version directories, so it is safe to fork subtree walks at depth 2.
+	 */
+	private static final int FORK_DEPTH = 2;
+
+	private final ArtifactHandler pomArtifactHandler;
+
+	private final Path localRepoPath;
+
+	private final @Nullable WalkWatermark watermark;
+
+	private final Gav.Interner interner;
+
+	private final Deque<Path> pending = new ArrayDeque<>();
+
+	private @Nullable Path lastGroupDir;
+
+	private @Nullable String lastGroupId;
+
+	private @Nullable Path lastArtifactDir;
+
+	private @Nullable String lastArtifactId;
+
+	private LocalRepoWalker(@NotNull final ArtifactHandler pomArtifactHandler,
+			@NotNull final Path localRepoPath,
+			@NotNull final Path startDir,
+			@Nullable final WalkWatermark watermark,
+			@NotNull final Gav.Interner interner) {
+		this.pomArtifactHandler = pomArtifactHandler;
+		this.localRepoPath = localRepoPath;
+		this.watermark = watermark;
+		this.interner = interner;
+		this.pending.push(startDir);
+	}
+
+	/**
+	 * Emit the next artifact group, or complete when there are no more directories to walk.
+	 *
+	 * @param emitter the generator emitter
+	 * @throws IOException if a directory can't be listed
+	 */
+	void next(@NotNull final Emitter<ArtifactGroup> emitter) throws IOException {
+		while (!pending.isEmpty()) {
+			final ArtifactGroup artifactGroup = visitDirectory(pending.pop());
+			if (artifactGroup != null) {
+				emitter.onNext(artifactGroup);
+				return;
+			}
+		}
+		emitter.onComplete();
+	}
+
+	@Nullable ArtifactGroup visitDirectory(@NotNull final Path dir) throws IOException {
+		final int depth = dir.equals(localRepoPath) ? 0 : localRepoPath.relativize(dir).getNameCount();
+		if (watermark != null) {
+			final String key = WalkWatermark.keyFor(localRepoPath, dir);
+			final BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+			if (watermark.skipUnchangedVersionDirectory(key, dir, attrs)) {
+				return null;
+			}
+			watermark.recordDirectory(key, attrs);
+		}
+		final List<Path> childDirs = new ArrayList<>();
+		if (depth >= MIN_VERSION_DIR_DEPTH) {
+			// capture every entry with its attributes in the same pass, so that the artifact group never has to list the
+			// version directory again to find its deployables
+			final String artifactId = dir.getParent().getFileName().toString();
+			final String version = dir.getFileName().toString();
+			final Map<Path, BasicFileAttributes> snapshot = readEntries(dir);
+			Path pomFile = null;
+			for (Map.Entry<Path, BasicFileAttributes> entry : snapshot.entrySet()) {
+				if (entry.getValue().isDirectory()) {
+					childDirs.add(dir.resolve(entry.getKey()));
+				} else if (entry.getValue().isRegularFile()
+						&& isPomFilename(entry.getKey().toString(), artifactId, version)) {
+					pomFile = dir.resolve(entry.getKey());
+				}
+			}
+			if (pomFile != null) {
+				return newArtifactGroup(pomFile, snapshot);
+			}
+		} else {
+			try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, Files::isDirectory)) {
+				entries.forEach(childDirs::add);
+			}
+		}
+		// push in reverse order so that siblings are walked in sorted order
+		childDirs.sort(Collections.reverseOrder());
+		childDirs.forEach(pending::push);
+		return null;
+	}
+
+	/**
+	 * Check whether a filename is exactly {@code artifactId-version.pom} without concatenating a new string.
+	 *
+	 * @param filename   the filename
+	 * @param artifactId the name of the artifactId directory
+	 * @param version    the name of the version directory
+	 * @return true if the filename is the pom filename for the artifactId and version
+	 */
+	static boolean isPomFilename(@NotNull final String filename,
+			@NotNull final String artifactId,
+			@NotNull final String version) {
+		final int versionStart = artifactId.length() + 1;
+		return filename.length() == versionStart + version.length() + POM_EXT.length()
+				&& filename.startsWith(artifactId)
+				&& filename.charAt(artifactId.length()) == '-'
+				&& filename.startsWith(version, versionStart)
+				&& filename.endsWith(POM_EXT);
+	}
+
+	static ArtifactGroup newArtifactGroup(@NotNull final ArtifactHandler pomArtifactHandler,
+			@NotNull final Path layoutPrefix,
+			@NotNull final Path pomFile,
+			@NotNull final Gav gav) {
+		final DefaultArtifact artifact = new DefaultArtifact(gav.getGroupId(), gav.getArtifactId(), gav.getVersion(),
+				"import", POM_TYPE, null, pomArtifactHandler);
+		artifact.setFile(pomFile.toFile());
+		artifact.addMetadata(new ArtifactRepositoryMetadata(artifact));
+		return new ArtifactGroup(layoutPrefix, artifact, gav);
+	}
+
+	/**
+	 * Read every entry of a directory with its attributes in a single pass.
+	 *
+	 * @param dir the directory
+	 * @return the directory entries keyed by filename
+	 * @throws IOException if the directory can't be listed
+	 */
+	static Map<Path, BasicFileAttributes> readEntries(@NotNull final Path dir) throws IOException {
+		final Map<Path, BasicFileAttributes> snapshot = new LinkedHashMap<>();
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry : entries) {
+				try {
+					snapshot.put(entry.getFileName(), Files.readAttributes(entry, BasicFileAttributes.class));
+				} catch (NoSuchFileException e) {
+					// deleted since it was listed
+				}
+			}
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Build the artifact group for a known gav without walking the local repository.
+	 *
+	 * @param pomArtifactHandler the pom artifact handler
+	 * @param localRepoPath      the local repository path
+	 * @param gav                the gav
+	 * @return the artifact group, or null if the gav has no pom in the local repository
+	 * @throws IOException if the version directory can't be listed
+	 */
+	static @Nullable ArtifactGroup forGav(@NotNull final ArtifactHandler pomArtifactHandler,
+			@NotNull final Path localRepoPath,
+			@NotNull final Gav gav) throws IOException {
+		final Path layoutPrefix = localRepoPath.getFileSystem().getPath(gav.getGroupId().replace('.', '/'),
+				gav.getArtifactId(), gav.getVersion());
+		final Path versionDir = localRepoPath.resolve(layoutPrefix);
+		final Path pomFile = versionDir.resolve(gav.getArtifactId() + "-" + gav.getVersion() + POM_EXT);
+		if (!Files.isRegularFile(pomFile)) {
+			return null;
+		}
+		return newArtifactGroup(pomArtifactHandler, layoutPrefix, pomFile, gav)
+				.withEntries(readEntries(versionDir));
+	}
+
+	ArtifactGroup newArtifactGroup(@NotNull final Path pomFile,
+			@NotNull final Map<Path, BasicFileAttributes> snapshot) {
+		final Path versionDir = pomFile.getParent();
+		final Path artifactDir = versionDir.getParent();
+		// the walk is depth-first, so all versions of an artifact are visited consecutively and can share the same strings
+		if (!artifactDir.equals(lastArtifactDir)) {
+			final Path groupDir = artifactDir.getParent();
+			if (!groupDir.equals(lastGroupDir)) {
+				lastGroupId = interner.groupIdOf(localRepoPath.relativize(groupDir));
+				lastGroupDir = groupDir;
+			}
+			lastArtifactId = interner.name(artifactDir.getFileName().toString());
+			lastArtifactDir = artifactDir;
+		}
+		if (watermark != null) {
+			watermark.recordVersionDirectory(WalkWatermark.keyFor(localRepoPath, versionDir), versionDir, snapshot.size());
+		}
+		final Gav gav = interner.of(lastGroupId, lastArtifactId, versionDir.getFileName().toString());
+		return newArtifactGroup(pomArtifactHandler, localRepoPath.relativize(versionDir), pomFile, gav)
+				.withEntries(snapshot);
+	}
+
+	static Flowable<ArtifactGroup> walkSubtree(@NotNull final ArtifactHandler pomArtifactHandler,
+			@NotNull final Path localRepoPath,
+			@NotNull final Path startDir,
+			@Nullable final WalkWatermark watermark,
+			@NotNull final Gav.Interner interner) {
+		return Flowable.generate(
+				() -> new LocalRepoWalker(pomArtifactHandler, localRepoPath, startDir, watermark, interner),
+				LocalRepoWalker::next);
+	}
+
+	/**
+	 * Walk the local repository on the subscribing thread, emitting one artifact group per downstream request.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param localRepoPath          the local repository path
+	 * @param watermark              the optional walk watermark
+	 * @return a backpressured flowable of artifact groups
+	 */
+	public static Flowable<ArtifactGroup> walkLocalRepo(
+			@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Path localRepoPath,
+			@Nullable final WalkWatermark watermark) {
+		return Flowable.defer(() -> walkSubtree(artifactHandlerManager.getArtifactHandler(POM_TYPE),
+				localRepoPath, localRepoPath, watermark, new Gav.Interner()));
+	}
+
+	/**
+	 * Walk the local repository using a fork/join pool, splitting the walk into separate subtrees for each directory at a
+	 * depth of 2, which is the shallowest possible artifactId directory. Each subtree walk remains pull-driven, and at most
+	 * {@code maxInFlight} discovered artifact groups are buffered across all subtree walks.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param localRepoPath          the local repository path
+	 * @param watermark              the optional walk watermark
+	 * @param parallelism            the fork/join pool parallelism
+	 * @param maxInFlight            the maximum number of buffered artifact groups
+	 * @return a backpressured flowable of artifact groups
+	 */
+	public static Flowable<ArtifactGroup> walkLocalRepoParallel(
+			@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Path localRepoPath,
+			@Nullable final WalkWatermark watermark,
+			final int parallelism,
+			final int maxInFlight) {
+		final ArtifactHandler pomArtifactHandler = artifactHandlerManager.getArtifactHandler(POM_TYPE);
+		final int workers = Math.max(1, parallelism);
+		final int prefetch = Math.max(1, maxInFlight / workers);
+		return Flowable.using(() -> new ForkJoinPool(workers),
+				pool -> {
+					final Scheduler scheduler = Schedulers.from(pool);
+					final Gav.Interner interner = new Gav.Interner();
+					return Flowable.fromIterable(listForkDirs(localRepoPath, watermark))
+							.flatMap(forkDir -> walkSubtree(pomArtifactHandler, localRepoPath, forkDir, watermark,
+									interner)
+									.subscribeOn(scheduler), false, workers, prefetch);
+				},
+				ForkJoinPool::shutdown);
+	}
+
+	static List<Path> listForkDirs(@NotNull final Path localRepoPath,
+			@Nullable final WalkWatermark watermark) throws IOException {
+		List<Path> level = Collections.singletonList(localRepoPath);
+		for (int depth = 0; depth < FORK_DEPTH; depth++) {
+			final List<Path> nextLevel = new ArrayList<>();
+			for (Path dir : level) {
+				if (watermark != null) {
+					watermark.recordDirectory(WalkWatermark.keyFor(localRepoPath, dir),
+							Files.readAttributes(dir, BasicFileAttributes.class));
+				}
+				try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir, Files::isDirectory)) {
+					entries.forEach(nextLevel::add);
+				}
+			}
+			Collections.sort(nextLevel);
+			level = nextLevel;
+		}
+		return level;
+	}
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Discovers artifact groups from a manifest of resolved artifacts instead of walking the whole local repository. Each line
+ * of the manifest may be either a coordinate string, as printed by {@code mvn dependency:list}, or a path to a file or
+ * version directory, either absolute or relative to the local repository. Blank lines, comments starting with {@code #}, and
+ * lines that match neither form are ignored.
+ */
+public final class ManifestDiscovery {
+	private static final Pattern LOG_PREFIX = Pattern.compile("^\\[[A-Z]+]\\s*");
+
+	private static final Pattern TIMESTAMP_VERSION = Pattern.compile("^(.*)-\\d{8}\\.\\d{6}-\\d+$");
+
+	private ManifestDiscovery() {
+		// no construction
+	}
+
+	/**
+	 * Parse a manifest line as a coordinate string. Supported forms are {@code groupId:artifactId:version},
+	 * {@code groupId:artifactId:type:version}, {@code groupId:artifactId:type:version:scope}, and
+	 * {@code groupId:artifactId:type:classifier:version:scope}. Timestamped snapshot versions are mapped to the
+	 * {@code -SNAPSHOT} base version, which names the version directory.
+	 *
+	 * @param line the trimmed manifest line
+	 * @return the gav or null if the line is not a coordinate string
+	 */
+	static @Nullable Gav parseCoordinates(@NotNull final String line) {
+		final String token = line.split("\\s+", 2)[0];
+		if (token.contains("/") || token.contains("\\")) {
+			return null;
+		}
+		final String[] parts = token.split(":");
+		final String version;
+		switch (parts.length) {
+			case 3:
+				version = parts[2];
+				break;
+			case 4:
+			case 5:
+				version = parts[3];
+				break;
+			case 6:
+				version = parts[4];
+				break;
+			default:
+				return null;
+		}
+		if (parts[0].isEmpty() || parts[1].isEmpty() || version.isEmpty()) {
+			return null;
+		}
+		final Matcher timestamped = TIMESTAMP_VERSION.matcher(version);
+		return Gav.of(parts[0], parts[1], timestamped.matches() ? timestamped.group(1) + "-SNAPSHOT" : version);
+	}
+
+	/**
+	 * Parse a manifest line as a path to a file or version directory in the local repository.
+	 *
+	 * @param localRepoPath the local repository path
+	 * @param line          the trimmed manifest line
+	 * @return the gav or null if the line is not a path inside the local repository
+	 */
+	static @Nullable Gav parsePath(@NotNull final Path localRepoPath, @NotNull final String line) {
+		final Path path;
+		try {
+			path = localRepoPath.resolve(line).normalize();
+		} catch (InvalidPathException e) {
+			return null;
+		}
+		if (!path.startsWith(localRepoPath)) {
+			return null;
+		}
+		final Path versionDir = Files.isDirectory(path) ? path : path.getParent();
+		if (versionDir == null || !versionDir.startsWith(localRepoPath)) {
+			return null;
+		}
+		final Path layoutPrefix = localRepoPath.relativize(versionDir);
+		if (layoutPrefix.getNameCount() < 3) {
+			return null;
+		}
+		return Gav.fromLayoutPrefix(layoutPrefix);
+	}
+
+	static @Nullable Gav parseLine(@NotNull final Path localRepoPath, @NotNull final String rawLine) {
+		final String line = LOG_PREFIX.matcher(rawLine.trim()).replaceFirst("").trim();
+		if (line.isEmpty() || line.startsWith("#")) {
+			return null;
+		}
+		final Gav coordinates = parseCoordinates(line);
+		if (coordinates != null) {
+			return coordinates;
+		}
+		return parsePath(localRepoPath, line);
+	}
+
+	/**
+	 * Read the manifest lazily and emit one artifact group per distinct gav that has a pom in the local repository.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param localRepoPath          the local repository path
+	 * @param manifestFile           the manifest file
+	 * @return a backpressured flowable of artifact groups
+	 */
+	public static Flowable<ArtifactGroup> readManifest(
+			@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Path localRepoPath,
+			@NotNull final Path manifestFile) {
+		final ArtifactHandler pomArtifactHandler = artifactHandlerManager.getArtifactHandler(LocalRepoWalker.POM_TYPE);
+		return Flowable.using(() -> Files.newBufferedReader(manifestFile, StandardCharsets.UTF_8),
+				(BufferedReader reader) -> Flowable.fromStream(reader.lines()),
+				BufferedReader::close)
+				.concatMapMaybe(line -> Maybe.fromCallable(() -> parseLine(localRepoPath, line)))
+				.distinct()
+				.concatMapMaybe(gav -> Maybe.fromCallable(() -> LocalRepoWalker.forGav(pomArtifactHandler, localRepoPath, gav)));
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.functions.Predicate;
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Applies the primary index and all alternative indexes in a single filter stage, which is equivalent to chaining the
+ * {@link Index#attachPipe(Flowable)} stage of each index, but which loads all of the index artifacts up front into one
+ * {@link UnionIndexLookup}, so that each artifact group is filtered with a single lookup.
+ */
+public final class MergedIndex implements ArtifactPipe {
+	private final Log log;
+
+	private final List<Index> indexes;
+
+	private final boolean verifyContent;
+
+	public MergedIndex(@NotNull final Log log, @NotNull final List<Index> indexes) {
+		this(log, indexes, false);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param log           the logger
+	 * @param indexes       the indexes to apply
+	 * @param verifyContent true to keep deployable files whose content differs from the size and SHA-1 of their index
+	 *                      records
+	 */
+	public MergedIndex(@NotNull final Log log, @NotNull final List<Index> indexes, final boolean verifyContent) {
+		this.log = log;
+		this.indexes = Collections.unmodifiableList(new ArrayList<>(indexes));
+		this.verifyContent = verifyContent;
+	}
+
+	public List<Index> getIndexes() {
+		return indexes;
+	}
+
+	Predicate<ArtifactGroup> getNotAnyIndexPredicate() {
+		final List<Predicate<ArtifactGroup>> predicates = new ArrayList<>();
+		for (Index index : indexes) {
+			predicates.add(index.getNotMyselfPredicate());
+		}
+		return artifactGroup -> {
+			for (Predicate<ArtifactGroup> predicate : predicates) {
+				if (!predicate.test(artifactGroup)) {
+					return false;
+				}
+			}
+			return true;
+		};
+	}
+
+	UnionIndexLookup loadLookup() throws IOException {
+		final List<IndexLookup> lookups = new ArrayList<>();
+		try {
+			for (Index index : indexes) {
+				if (index.isResolved()) {
+					lookups.add(index.loadLookup());
+				}
+			}
+		} catch (IOException e) {
+			for (IndexLookup lookup : lookups) {
+				lookup.close();
+			}
+			throw e;
+		}
+		final UnionIndexLookup union = UnionIndexLookup.of(lookups);
+		log.debug("loaded " + lookups.size() + " indexes with " + union.size() + " entries");
+		return union;
+	}
+
+	@Override
+	@NotNull
+	public Flowable<ArtifactGroup> attachPipe(@NotNull final Flowable<ArtifactGroup> artifactGroups) {
+		return Flowable.using(this::loadLookup,
+				lookup -> artifactGroups
+						.filter(getNotAnyIndexPredicate())
+						.concatMapMaybe(Index.applyLookup(lookup, verifyContent)),
+				UnionIndexLookup::close);
+	}
+}
@@ -0,0 +1,508 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.repository.Proxy;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipEntry;
+
+/**
+ * Reads an index jar over HTTP with range requests, so that only the central directory and the entries of the artifact
+ * groups that are actually looked up are transferred. This is useful when an execution only discovers a small slice of a
+ * large index, as with a discovery manifest or the reactor closure.
+ * <p>
+ * The central directory is read with a single suffix range request for the end of the jar. Each text entry is then read
+ * with one range request the first time its layout prefix is looked up, and the result is kept for the rest of the
+ * execution. An entry that fails to be read is treated as not indexed, which only causes the artifact group to be synced
+ * again.
+ */
+final class RangeIndexLookup implements IndexLookup {
+	/**
+	 * The size of the first suffix range request, which covers the end of central directory record with the longest
+	 * possible comment, and the central directory of a typical index.
+	 */
+	static final int TAIL_SIZE = 256 * 1024;
+
+	static final int EOCD_SIGNATURE = 0x06054b50;
+
+	static final int CEN_SIGNATURE = 0x02014b50;
+
+	static final int LOC_SIGNATURE = 0x04034b50;
+
+	static final int LOC_HEADER_SIZE = 30;
+
+	private static final Pattern CONTENT_RANGE = Pattern.compile("bytes\\s+(\\d+)-(\\d+)/(\\d+|\\*)");
+
+	private static final int TIMEOUT_MILLIS = 30000;
+
+	/**
+	 * The location of an entry in the remote jar.
+	 */
+	static final class RemoteEntry {
+		private final int method;
+
+		private final long compressedSize;
+
+		private final long size;
+
+		private final long localHeaderOffset;
+
+		RemoteEntry(final int method, final long compressedSize, final long size, final long localHeaderOffset) {
+			this.method = method;
+			this.compressedSize = compressedSize;
+			this.size = size;
+			this.localHeaderOffset = localHeaderOffset;
+		}
+	}
+
+	private final URL url;
+
+	private final @Nullable String authorization;
+
+	private final @Nullable Proxy proxy;
+
+	private final Log log;
+
+	private final Map<String, RemoteEntry> entries;
+
+	private final ConcurrentMap<String, Optional<String[]>> loaded = new ConcurrentHashMap<>();
+
+	RangeIndexLookup(@NotNull final URL url, @Nullable final String authorization, @Nullable final Proxy proxy,
+			@NotNull final Log log, @NotNull final Map<String, RemoteEntry> entries) {
+		this.url = url;
+		this.authorization = authorization;
+		this.proxy = proxy;
+		this.log = log;
+		this.entries = Collections.unmodifiableMap(entries);
+	}
+
+	static @Nullable String basicAuthorization(@Nullable final String username, @Nullable final String password) {
+		if (username == null) {
+			return null;
+		}
+		final String credentials = username + ":" + (password != null ? password : "");
+		return "Basic " + Base64.getEncoder().encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * The body of a range response.
+	 */
+	static final class RangeResponse {
+		private final byte[] body;
+
+		private final long start;
+
+		private final long total;
+
+		RangeResponse(@NotNull final byte[] body, final long start, final long total) {
+			this.body = body;
+			this.start = start;
+			this.total = total;
+		}
+	}
+
+	/**
+	 * Check whether requests for a url are sent through a proxy.
+	 *
+	 * @param url   the url
+	 * @param proxy the proxy of the repository
+	 * @return true if the proxy applies to the host of the url
+	 */
+	static boolean isProxied(@NotNull final URL url, @Nullable final Proxy proxy) {
+		return proxy != null && proxy.getHost() != null && !proxy.getHost().isEmpty()
+				&& !isNonProxyHost(url.getHost(), proxy.getNonProxyHosts());
+	}
+
+	/**
+	 * Check whether the proxy of a repository can be honored by a plain {@link HttpURLConnection}. Proxy credentials can
+	 * only be sent as a Proxy-Authorization header, which an http proxy receives for plain http requests, but not for the
+	 * tunnel of an https request, and which a socks proxy never receives.
+	 *
+	 * @param url   the url
+	 * @param proxy the proxy of the repository
+	 * @return true if the url is not proxied, or if the proxy can be used with its credentials
+	 */
+	static boolean isProxySupported(@NotNull final URL url, @Nullable final Proxy proxy) {
+		return !isProxied(url, proxy) || proxy.getUserName() == null
+				|| !isSocks(proxy) && "http".equals(url.getProtocol());
+	}
+
+	static boolean isSocks(@NotNull final Proxy proxy) {
+		return proxy.getProtocol() != null && proxy.getProtocol().toUpperCase().startsWith("SOCKS");
+	}
+
+	/**
+	 * Match a host against the {@code nonProxyHosts} of a proxy, which are separated by {@code |} and may contain
+	 * {@code *} wildcards.
+	 *
+	 * @param host          the host
+	 * @param nonProxyHosts the hosts that bypass the proxy
+	 * @return true if the host bypasses the proxy
+	 */
+	static boolean isNonProxyHost(@NotNull final String host, @Nullable final String nonProxyHosts) {
+		if (nonProxyHosts == null) {
+			return false;
+		}
+		for (String nonProxyHost : nonProxyHosts.split("[|,]")) {
+			final String trimmed = nonProxyHost.trim();
+			if (!trimmed.isEmpty()
+					&& host.matches("(?i)" + Pattern.quote(trimmed).replace("*", "\\E.*\\Q"))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Open a connection to a url through the proxy of the repository, like the wagon that resolves and deploys the
+	 * artifacts of the same repository.
+	 *
+	 * @param url   the url
+	 * @param proxy the proxy of the repository
+	 * @return the connection
+	 * @throws IOException if the connection can't be opened, or the proxy is not supported
+	 */
+	static HttpURLConnection openConnection(@NotNull final URL url, @Nullable final Proxy proxy) throws IOException {
+		if (!isProxied(url, proxy)) {
+			return (HttpURLConnection) url.openConnection();
+		}
+		if (!isProxySupported(url, proxy)) {
+			throw new IOException("proxy " + proxy.getHost() + " can't be used with credentials for " + url);
+		}
+		final HttpURLConnection connection = (HttpURLConnection) url.openConnection(new java.net.Proxy(
+				isSocks(proxy) ? java.net.Proxy.Type.SOCKS : java.net.Proxy.Type.HTTP,
+				new InetSocketAddress(proxy.getHost(), proxy.getPort())));
+		final String proxyAuthorization = basicAuthorization(proxy.getUserName(), proxy.getPassword());
+		if (proxyAuthorization != null) {
+			connection.setRequestProperty("Proxy-Authorization", proxyAuthorization);
+		}
+		return connection;
+	}
+
+	static HttpURLConnection openConnection(@NotNull final URL url, @Nullable final String authorization,
+			@Nullable final Proxy proxy, @NotNull final String range) throws IOException {
+		final HttpURLConnection connection = openConnection(url, proxy);
+		connection.setConnectTimeout(TIMEOUT_MILLIS);
+		connection.setReadTimeout(TIMEOUT_MILLIS);
+		connection.setRequestProperty("Range", "bytes=" + range);
+		// a compressed response would not be addressable by byte ranges
+		connection.setRequestProperty("Accept-Encoding", "identity");
+		if (authorization != null) {
+			connection.setRequestProperty("Authorization", authorization);
+		}
+		return connection;
+	}
+
+	/**
+	 * Request a range of the remote jar.
+	 *
+	 * @param range the range, like {@code 0-99} or {@code -100}
+	 * @return the partial content
+	 * @throws IOException if the request fails or the server does not return the requested range
+	 */
+	RangeResponse fetch(@NotNull final String range) throws IOException {
+		final HttpURLConnection connection = openConnection(url, authorization, proxy, range);
+		try {
+			if (connection.getResponseCode() != HttpURLConnection.HTTP_PARTIAL) {
+				throw new IOException("expected partial content for range " + range + " of " + url + " but got "
+						+ connection.getResponseCode());
+			}
+			return readPartial(connection);
+		} finally {
+			connection.disconnect();
+		}
+	}
+
+	static RangeResponse readPartial(@NotNull final HttpURLConnection connection) throws IOException {
+		final String contentRange = connection.getHeaderField("Content-Range");
+		final Matcher matcher = contentRange != null ? CONTENT_RANGE.matcher(contentRange.trim()) : null;
+		if (matcher == null || !matcher.matches() || "*".equals(matcher.group(3))) {
+			throw new IOException("missing or invalid Content-Range: " + contentRange);
+		}
+		try (InputStream input = connection.getInputStream()) {
+			return new RangeResponse(IOUtils.toByteArray(input), Long.parseLong(matcher.group(1)),
+					Long.parseLong(matcher.group(3)));
+		}
+	}
+
+	/**
+	 * Open a remote index jar by reading its central directory. If the server ignores the range request and responds with
+	 * the whole jar, the jar is saved to the fallback file instead, so that it can be read like a resolved index.
+	 *
+	 * @param url           the url of the index jar
+	 * @param authorization the optional value of the Authorization header
+	 * @param proxy         the optional proxy of the repository
+	 * @param fallbackFile  the file to save the whole jar to if the server does not support range requests
+	 * @param log           the logger
+	 * @return the lookup, or null if the whole jar was saved to the fallback file
+	 * @throws IOException if the jar can't be requested or its central directory can't be read
+	 */
+	static @Nullable RangeIndexLookup open(@NotNull final URL url, @Nullable final String authorization,
+			@Nullable final Proxy proxy, @NotNull final Path fallbackFile, @NotNull final Log log) throws IOException {
+		final HttpURLConnection connection = openConnection(url, authorization, proxy, "-" + TAIL_SIZE);
+		final RangeResponse tail;
+		try {
+			final int status = connection.getResponseCode();
+			if (status == HttpURLConnection.HTTP_OK) {
+				log.info("server ignored range request, downloading whole index jar from " + url);
+				Files.createDirectories(fallbackFile.getParent());
+				try (InputStream input = connection.getInputStream();
+					 OutputStream output = Files.newOutputStream(fallbackFile)) {
+					IOUtils.copy(input, output);
+				}
+				return null;
+			} else if (status != HttpURLConnection.HTTP_PARTIAL) {
+				throw new IOException("failed to request " + url + ": " + status);
+			}
+			tail = readPartial(connection);
+		} finally {
+			connection.disconnect();
+		}
+		// the central directory is usually inside the tail, and otherwise it is requested with the same connection settings
+		final RangeIndexLookup lookup = new RangeIndexLookup(url, authorization, proxy, log, Collections.emptyMap());
+		final ByteBuffer eocd = findEndOfCentralDirectory(tail.body);
+		final long cdSize = eocd.getInt(eocd.position() + 12) & 0xFFFFFFFFL;
+		final long cdOffset = eocd.getInt(eocd.position() + 16) & 0xFFFFFFFFL;
+		if (cdSize == 0xFFFFFFFFL || cdOffset == 0xFFFFFFFFL) {
+			throw new IOException("zip64 index jars are not supported by range reads: " + url);
+		}
+		final byte[] centralDirectory;
+		if (cdOffset >= tail.start) {
+			final int from = (int) (cdOffset - tail.start);
+			centralDirectory = Arrays.copyOfRange(tail.body, from, from + (int) cdSize);
+		} else {
+			centralDirectory = lookup.fetch(cdOffset + "-" + (cdOffset + cdSize - 1)).body;
+		}
+		final Map<String, RemoteEntry> entries = readCentralDirectory(centralDirectory);
+		log.debug(String.format("read central directory of %d entries from %s (%d bytes)", entries.size(), url,
+				tail.total));
+		return new RangeIndexLookup(url, authorization, proxy, log, entries);
+	}
+
+	static ByteBuffer findEndOfCentralDirectory(@NotNull final byte[] tail) throws IOException {
+		final ByteBuffer buffer = ByteBuffer.wrap(tail).order(ByteOrder.LITTLE_ENDIAN);
+		for (int position = tail.length - 22; position >= 0; position--) {
+			if (buffer.getInt(position) == EOCD_SIGNATURE
+					&& position + 22 + (buffer.getShort(position + 20) & 0xFFFF) == tail.length) {
+				buffer.position(position);
+				return buffer;
+			}
+		}
+		throw new IOException("end of central directory not found");
+	}
+
+	static Map<String, RemoteEntry> readCentralDirectory(@NotNull final byte[] centralDirectory) throws IOException {
+		final Map<String, RemoteEntry> entries = new TreeMap<>();
+		final ByteBuffer buffer = ByteBuffer.wrap(centralDirectory).order(ByteOrder.LITTLE_ENDIAN);
+		int position = 0;
+		while (position + 46 <= centralDirectory.length) {
+			if (buffer.getInt(position) != CEN_SIGNATURE) {
+				throw new IOException("invalid central directory header at " + position);
+			}
+			final int method = buffer.getShort(position + 10) & 0xFFFF;
+			final long compressedSize = buffer.getInt(position + 20) & 0xFFFFFFFFL;
+			final long size = buffer.getInt(position + 24) & 0xFFFFFFFFL;
+			final int nameLength = buffer.getShort(position + 28) & 0xFFFF;
+			final int extraLength = buffer.getShort(position + 30) & 0xFFFF;
+			final int commentLength = buffer.getShort(position + 32) & 0xFFFF;
+			final long localHeaderOffset = buffer.getInt(position + 42) & 0xFFFFFFFFL;
+			final String name = new String(centralDirectory, position + 46, nameLength, StandardCharsets.UTF_8);
+			entries.put(name, new RemoteEntry(method, compressedSize, size, localHeaderOffset));
+			position += 46 + nameLength + extraLength + commentLength;
+		}
+		return entries;
+	}
+
+	/**
+	 * Read the uncompressed content of a remote entry.
+	 *
+	 * @param name the entry name
+	 * @return the content, or null if the jar has no such entry
+	 * @throws IOException if the entry can't be read
+	 */
+	@Nullable byte[] readEntry(@NotNull final String name) throws IOException {
+		final RemoteEntry entry = entries.get(name);
+		if (entry == null) {
+			return null;
+		}
+		// the local extra field is usually the same length as the central one, so one request is usually enough
+		final long guess = LOC_HEADER_SIZE + name.getBytes(StandardCharsets.UTF_8).length + 256 + entry.compressedSize;
+		RangeResponse response = fetch(entry.localHeaderOffset + "-" + (entry.localHeaderOffset + guess - 1));
+		ByteBuffer buffer = ByteBuffer.wrap(response.body).order(ByteOrder.LITTLE_ENDIAN);
+		if (response.body.length < LOC_HEADER_SIZE || buffer.getInt(0) != LOC_SIGNATURE) {
+			throw new IOException("invalid local header for " + name);
+		}
+		final int dataOffset = LOC_HEADER_SIZE + (buffer.getShort(26) & 0xFFFF) + (buffer.getShort(28) & 0xFFFF);
+		if (dataOffset + entry.compressedSize > response.body.length) {
+			final long dataStart = entry.localHeaderOffset + dataOffset;
+			response = fetch(dataStart + "-" + (dataStart + entry.compressedSize - 1));
+			return decode(entry, response.body, 0);
+		}
+		return decode(entry, response.body, dataOffset);
+	}
+
+	static byte[] decode(@NotNull final RemoteEntry entry, @NotNull final byte[] data, final int offset)
+			throws IOException {
+		if (entry.method == ZipEntry.STORED) {
+			return Arrays.copyOfRange(data, offset, offset + (int) entry.size);
+		} else if (entry.method != ZipEntry.DEFLATED) {
+			throw new IOException("unsupported compression method " + entry.method);
+		}
+		final Inflater inflater = new Inflater(true);
+		try {
+			inflater.setInput(data, offset, (int) entry.compressedSize);
+			final byte[] content = new byte[(int) entry.size];
+			int length = 0;
+			while (length < content.length && !inflater.finished()) {
+				final int inflated = inflater.inflate(content, length, content.length - length);
+				if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length += inflated;
+			}
+			if (length != content.length) {
+				throw new IOException("truncated entry data");
+			}
+			return content;
+		} catch (DataFormatException e) {
+			throw new IOException("invalid entry data", e);
+		} finally {
+			inflater.end();
+		}
+	}
+
+	/**
+	 * @return the manifest of the remote jar, or null if it has none
+	 * @throws IOException if the manifest can't be read
+	 */
+	@Nullable Manifest readManifest() throws IOException {
+		final byte[] content = readEntry(JarFile.MANIFEST_NAME);
+		return content != null ? new Manifest(new ByteArrayInputStream(content)) : null;
+	}
+
+	/**
+	 * @return true if the remote jar only has the binary index entry, which range reads do not support
+	 */
+	boolean isBinaryOnly() {
+		return entries.containsKey(BinaryIndex.ENTRY_NAME) && entries.keySet().stream().noneMatch(IndexBuilder::isTextEntry);
+	}
+
+	static String[] parseLines(@NotNull final byte[] content) {
+		final List<String> lines = new ArrayList<>();
+		for (String line : new String(content, StandardCharsets.UTF_8).split("\r?\n")) {
+			if (!line.isEmpty()) {
+				lines.add(line);
+			}
+		}
+		final String[] packed = lines.toArray(new String[0]);
+		Arrays.sort(packed);
+		return packed;
+	}
+
+	@Nullable String[] getFilenames(@NotNull final String key) {
+		return loaded.computeIfAbsent(key, entryKey -> {
+			final String name = entryKey + EntryIndexLookup.ENTRY_SUFFIX;
+			if (!entries.containsKey(name)) {
+				return Optional.empty();
+			}
+			try {
+				return Optional.ofNullable(readEntry(name)).map(RangeIndexLookup::parseLines);
+			} catch (IOException e) {
+				log.debug("failed to read index entry " + name + " from " + url, e);
+				return Optional.empty();
+			}
+		}).orElse(null);
+	}
+
+	@Override
+	public @Nullable String[] getFilenames(@NotNull final Path layoutPrefix) {
+		return getFilenames(IndexLookup.keyFor(layoutPrefix));
+	}
+
+	@Override
+	public int size() {
+		return (int) entries.keySet().stream().filter(IndexBuilder::isTextEntry).count();
+	}
+
+	/**
+	 * Visit every entry, which reads every entry of the remote jar.
+	 *
+	 * @param consumer the entry consumer
+	 */
+	@Override
+	public void forEach(@NotNull final BiConsumer<String, String[]> consumer) {
+		for (String name : entries.keySet()) {
+			if (IndexBuilder.isTextEntry(name)) {
+				final String key = name.substring(0, name.length() - EntryIndexLookup.ENTRY_SUFFIX.length());
+				final String[] filenames = getFilenames(key);
+				if (filenames != null) {
+					consumer.accept(key, filenames);
+				}
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return url.toString();
+	}
+
+	/**
+	 * Build the url of an artifact file in a remote repository.
+	 *
+	 * @param repositoryUrl the repository url
+	 * @param path          the repository path of the artifact
+	 * @return the artifact url
+	 * @throws IOException if the url is not valid
+	 */
+	static URL artifactUrl(@NotNull final String repositoryUrl, @NotNull final String path) throws IOException {
+		return new URL(repositoryUrl.endsWith("/") ? repositoryUrl + path : repositoryUrl + "/" + path);
+	}
+}
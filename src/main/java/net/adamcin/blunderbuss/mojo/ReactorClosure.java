@@ -0,0 +1,350 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.core.Maybe;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.handler.ArtifactHandler;
+import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.DependencyManagement;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Parent;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.io.xpp3.MavenXpp3Reader;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResult;
+import org.apache.maven.shared.transfer.dependencies.DefaultDependableCoordinate;
+import org.apache.maven.shared.transfer.dependencies.resolve.DependencyResolver;
+import org.apache.maven.shared.transfer.dependencies.resolve.DependencyResolverException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Discovers artifact groups from the dependency and plugin graph of the reactor projects instead of walking the whole local
+ * repository. The transitive dependencies of each project, its build plugins, and their dependencies are resolved with the
+ * maven dependency resolver, and the parent and imported BOM poms of every resolved artifact are then followed through the
+ * local repository, because the resolver does not report them.
+ */
+public final class ReactorClosure {
+	private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)}");
+
+	private static final String IMPORT_SCOPE = "import";
+
+	private final DependencyResolver dependencyResolver;
+
+	private final ProjectBuildingRequest buildingRequest;
+
+	private final Log log;
+
+	public ReactorClosure(@NotNull final DependencyResolver dependencyResolver,
+			@NotNull final ProjectBuildingRequest buildingRequest,
+			@NotNull final Log log) {
+		this.dependencyResolver = dependencyResolver;
+		this.buildingRequest = buildingRequest;
+		this.log = log;
+	}
+
+	static Gav gavOf(@NotNull final Artifact artifact) {
+		return Gav.of(artifact.getGroupId(), artifact.getArtifactId(), artifact.getBaseVersion());
+	}
+
+	/**
+	 * Replace every {@code ${expression}} in the value using the lookup function.
+	 *
+	 * @param value  the raw value
+	 * @param lookup the expression lookup function
+	 * @return the interpolated value, or null if the value is null or any expression can't be resolved
+	 */
+	static @Nullable String interpolate(@Nullable final String value, @NotNull final Function<String, String> lookup) {
+		if (value == null) {
+			return null;
+		}
+		final Matcher matcher = EXPRESSION.matcher(value);
+		final StringBuffer interpolated = new StringBuffer();
+		while (matcher.find()) {
+			final String replacement = lookup.apply(matcher.group(1));
+			if (replacement == null || replacement.contains("${")) {
+				return null;
+			}
+			matcher.appendReplacement(interpolated, Matcher.quoteReplacement(replacement));
+		}
+		matcher.appendTail(interpolated);
+		return interpolated.toString();
+	}
+
+	/**
+	 * Collect the gavs of the imported BOMs declared in the raw dependency management of a model.
+	 *
+	 * @param model  the raw model
+	 * @param lookup the expression lookup function
+	 * @return the imported BOM gavs whose coordinates could be interpolated
+	 */
+	static List<Gav> importedBoms(@NotNull final Model model, @NotNull final Function<String, String> lookup) {
+		final List<Gav> boms = new ArrayList<>();
+		final DependencyManagement depMgmt = model.getDependencyManagement();
+		if (depMgmt != null) {
+			for (Dependency dependency : depMgmt.getDependencies()) {
+				if (IMPORT_SCOPE.equals(interpolate(dependency.getScope(), lookup))) {
+					final String groupId = interpolate(dependency.getGroupId(), lookup);
+					final String artifactId = interpolate(dependency.getArtifactId(), lookup);
+					final String version = interpolate(dependency.getVersion(), lookup);
+					if (groupId != null && artifactId != null && version != null) {
+						boms.add(Gav.of(groupId, artifactId, version));
+					}
+				}
+			}
+		}
+		return boms;
+	}
+
+	/**
+	 * Resolve the seed gavs for the reactor: the projects themselves, their parents and imported BOMs, and the transitive
+	 * closure of their dependencies, build plugins, and plugin dependencies. Resolution failures are logged and skipped, so
+	 * that one unresolvable plugin does not hide the rest of the closure.
+	 *
+	 * @param projects the reactor projects
+	 * @return the seed gavs in discovery order
+	 */
+	Set<Gav> resolveSeeds(@NotNull final List<MavenProject> projects) {
+		final Set<Gav> seeds = new LinkedHashSet<>();
+		for (MavenProject project : projects) {
+			seeds.add(Gav.fromProject(project));
+			for (MavenProject parent = project.getParent(); parent != null; parent = parent.getParent()) {
+				seeds.add(Gav.fromProject(parent));
+				seeds.addAll(importedBoms(parent.getOriginalModel(), projectLookup(parent)));
+			}
+			seeds.addAll(importedBoms(project.getOriginalModel(), projectLookup(project)));
+
+			final ProjectBuildingRequest depRequest = new DefaultProjectBuildingRequest(buildingRequest)
+					.setRemoteRepositories(project.getRemoteArtifactRepositories());
+			try {
+				addResults(seeds, dependencyResolver.resolveDependencies(depRequest, project.getModel(), null));
+			} catch (DependencyResolverException e) {
+				log.warn("failed to resolve dependencies of " + project.getId() + ": " + e.getMessage());
+			}
+
+			final ProjectBuildingRequest pluginRequest = new DefaultProjectBuildingRequest(buildingRequest)
+					.setRemoteRepositories(project.getPluginArtifactRepositories());
+			for (Plugin plugin : project.getBuildPlugins()) {
+				if (plugin.getVersion() == null) {
+					continue;
+				}
+				final DefaultDependableCoordinate coordinate = new DefaultDependableCoordinate();
+				coordinate.setGroupId(plugin.getGroupId());
+				coordinate.setArtifactId(plugin.getArtifactId());
+				coordinate.setVersion(plugin.getVersion());
+				try {
+					addResults(seeds, dependencyResolver.resolveDependencies(pluginRequest, coordinate, null));
+					if (!plugin.getDependencies().isEmpty()) {
+						addResults(seeds, dependencyResolver.resolveDependencies(pluginRequest,
+								plugin.getDependencies(), Collections.emptyList(), null));
+					}
+				} catch (DependencyResolverException e) {
+					log.warn("failed to resolve plugin " + plugin.getId() + ": " + e.getMessage());
+				}
+			}
+		}
+		return seeds;
+	}
+
+	private static void addResults(@NotNull final Set<Gav> seeds, @NotNull final Iterable<ArtifactResult> results) {
+		for (ArtifactResult result : results) {
+			if (result.getArtifact() != null) {
+				seeds.add(gavOf(result.getArtifact()));
+			}
+		}
+	}
+
+	static Function<String, String> projectLookup(@NotNull final MavenProject project) {
+		return expression -> {
+			switch (expression) {
+				case "project.groupId":
+				case "pom.groupId":
+					return project.getGroupId();
+				case "project.artifactId":
+				case "pom.artifactId":
+					return project.getArtifactId();
+				case "project.version":
+				case "pom.version":
+				case "version":
+					return project.getVersion();
+				case "project.parent.version":
+				case "parent.version":
+					return project.getParent() != null ? project.getParent().getVersion() : null;
+				default:
+					return project.getProperties().getProperty(expression);
+			}
+		};
+	}
+
+	/**
+	 * Reads raw poms from the local repository to follow parent and imported BOM references, inheriting properties along
+	 * the parent chain so that the common {@code ${some.version}} style of BOM import can be interpolated.
+	 */
+	static final class PomFollower {
+		private final Path localRepoPath;
+
+		private final Map<Gav, Properties> inherited = new HashMap<>();
+
+		PomFollower(@NotNull final Path localRepoPath) {
+			this.localRepoPath = localRepoPath;
+		}
+
+		@Nullable Model readModel(@NotNull final Gav gav) {
+			final Path pomFile = localRepoPath.resolve(gav.getGroupId().replace('.', '/'))
+					.resolve(gav.getArtifactId())
+					.resolve(gav.getVersion())
+					.resolve(gav.getArtifactId() + "-" + gav.getVersion() + LocalRepoWalker.POM_EXT);
+			if (!Files.isRegularFile(pomFile)) {
+				return null;
+			}
+			try (InputStream input = Files.newInputStream(pomFile)) {
+				return new MavenXpp3Reader().read(input, false);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+
+		/**
+		 * Get the properties of the pom for the gav, merged over the properties of its parents.
+		 *
+		 * @param gav   the gav
+		 * @param model the raw model for the gav
+		 * @return the inherited properties
+		 */
+		Properties getInheritedProperties(@NotNull final Gav gav, @NotNull final Model model) {
+			final Properties cached = inherited.get(gav);
+			if (cached != null) {
+				return cached;
+			}
+			// guard against parent cycles before recursing
+			inherited.put(gav, new Properties());
+			final Properties properties = new Properties();
+			final Gav parentGav = parentOf(model);
+			if (parentGav != null) {
+				final Model parentModel = readModel(parentGav);
+				if (parentModel != null) {
+					properties.putAll(getInheritedProperties(parentGav, parentModel));
+				}
+			}
+			properties.putAll(model.getProperties());
+			properties.setProperty("project.groupId", gav.getGroupId());
+			properties.setProperty("project.artifactId", gav.getArtifactId());
+			properties.setProperty("project.version", gav.getVersion());
+			if (parentGav != null) {
+				properties.setProperty("project.parent.groupId", parentGav.getGroupId());
+				properties.setProperty("project.parent.version", parentGav.getVersion());
+			}
+			inherited.put(gav, properties);
+			return properties;
+		}
+
+		static @Nullable Gav parentOf(@NotNull final Model model) {
+			final Parent parent = model.getParent();
+			if (parent == null || parent.getGroupId() == null || parent.getArtifactId() == null
+					|| parent.getVersion() == null) {
+				return null;
+			}
+			return Gav.of(parent.getGroupId(), parent.getArtifactId(), parent.getVersion());
+		}
+
+		/**
+		 * Get the parent and imported BOM gavs referenced by the pom for the gav.
+		 *
+		 * @param gav the gav
+		 * @return the referenced gavs, empty if the pom is not in the local repository
+		 */
+		List<Gav> referencesOf(@NotNull final Gav gav) {
+			final Model model = readModel(gav);
+			if (model == null) {
+				return Collections.emptyList();
+			}
+			final List<Gav> references = new ArrayList<>();
+			final Gav parentGav = parentOf(model);
+			if (parentGav != null) {
+				references.add(parentGav);
+			}
+			final Properties properties = getInheritedProperties(gav, model);
+			references.addAll(importedBoms(model, expression -> {
+				final String key = expression.startsWith("pom.") ? "project." + expression.substring(4) : expression;
+				return properties.getProperty(key);
+			}));
+			return references;
+		}
+
+		/**
+		 * Expand the seed gavs with all transitively referenced parent and imported BOM gavs.
+		 *
+		 * @param seeds the seed gavs
+		 * @return the closure in discovery order
+		 */
+		Set<Gav> expand(@NotNull final Iterable<Gav> seeds) {
+			final Set<Gav> closure = new LinkedHashSet<>();
+			final Deque<Gav> pending = new ArrayDeque<>();
+			seeds.forEach(pending::add);
+			while (!pending.isEmpty()) {
+				final Gav gav = pending.pop();
+				if (closure.add(gav)) {
+					referencesOf(gav).stream().filter(ref -> !closure.contains(ref)).forEachOrdered(pending::add);
+				}
+			}
+			return closure;
+		}
+	}
+
+	/**
+	 * Resolve the closure of the reactor projects and emit one artifact group per gav that has a pom in the local repository.
+	 *
+	 * @param artifactHandlerManager the artifact handler manager
+	 * @param localRepoPath          the local repository path
+	 * @param projects               the reactor projects
+	 * @return a backpressured flowable of artifact groups
+	 */
+	public Flowable<ArtifactGroup> discover(@NotNull final ArtifactHandlerManager artifactHandlerManager,
+			@NotNull final Path localRepoPath,
+			@NotNull final List<MavenProject> projects) {
+		final ArtifactHandler pomArtifactHandler = artifactHandlerManager.getArtifactHandler(LocalRepoWalker.POM_TYPE);
+		return Flowable.defer(() -> {
+			final Set<Gav> closure = new PomFollower(localRepoPath).expand(resolveSeeds(projects));
+			log.info("resolved reactor closure of " + closure.size() + " artifacts");
+			return Flowable.fromIterable(closure);
+		}).concatMapMaybe(gav -> Maybe.fromCallable(() -> LocalRepoWalker.forGav(pomArtifactHandler, localRepoPath, gav)));
+	}
+}
@@ -0,0 +1,337 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Guards the requests sent to a single deployment repository. Requests are paced by a token bucket. Requests that fail
+ * with a transient error are retried after a jittered exponential backoff, or after the delay requested with
+ * {@code Retry-After}. A circuit breaker opens after too many consecutive transient failures, and then pauses every
+ * request to the repository, across all rails, until a single trial request succeeds again.
+ */
+final class RepositoryGuard {
+	private static final Pattern RETRY_AFTER = Pattern.compile("(?i)retry-after[:=\\s]+(\\d+)");
+
+	/**
+	 * The settings of a repository guard.
+	 */
+	static final class Settings {
+		/**
+		 * No rate limit, no retries, and no circuit breaker.
+		 */
+		static final Settings NONE = new Settings(0.0, 0, 0L, 0L, 0, 0L);
+
+		private final double requestsPerSecond;
+
+		private final int maxRetries;
+
+		private final long baseBackoffMillis;
+
+		private final long maxBackoffMillis;
+
+		private final int breakerThreshold;
+
+		private final long breakerOpenMillis;
+
+		/**
+		 * Constructor.
+		 *
+		 * @param requestsPerSecond the sustained request rate, or 0 for no rate limit
+		 * @param maxRetries        the number of retries of a request that fails with a transient error
+		 * @param baseBackoffMillis the backoff before the first retry, which doubles for each following retry
+		 * @param maxBackoffMillis  the maximum backoff before a retry
+		 * @param breakerThreshold  the number of consecutive transient failures that open the circuit breaker, or 0 to
+		 *                          never open it
+		 * @param breakerOpenMillis the initial time that the circuit breaker stays open, which doubles each time a trial
+		 *                          request fails
+		 */
+		Settings(final double requestsPerSecond, final int maxRetries, final long baseBackoffMillis,
+				final long maxBackoffMillis, final int breakerThreshold, final long breakerOpenMillis) {
+			this.requestsPerSecond = Math.max(0.0, requestsPerSecond);
+			this.maxRetries = Math.max(0, maxRetries);
+			this.baseBackoffMillis = Math.max(0L, baseBackoffMillis);
+			this.maxBackoffMillis = Math.max(this.baseBackoffMillis, maxBackoffMillis);
+			this.breakerThreshold = Math.max(0, breakerThreshold);
+			this.breakerOpenMillis = Math.max(0L, breakerOpenMillis);
+		}
+	}
+
+	/**
+	 * A request that may fail with a checked exception.
+	 *
+	 * @param <E> the exception type
+	 */
+	@FunctionalInterface
+	interface Request<E extends Exception> {
+		void send() throws E;
+	}
+
+	private final @NotNull String repositoryId;
+
+	private final @NotNull Settings settings;
+
+	private final @NotNull Log log;
+
+	private double tokens;
+
+	private long refilledAt = System.nanoTime();
+
+	private int consecutiveFailures;
+
+	private long openUntil;
+
+	private long openMillis;
+
+	private boolean trialInFlight;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param repositoryId the id of the guarded repository
+	 * @param settings     the settings
+	 * @param log          the log
+	 */
+	RepositoryGuard(@NotNull final String repositoryId, @NotNull final Settings settings, @NotNull final Log log) {
+		this.repositoryId = repositoryId;
+		this.settings = settings;
+		this.log = log;
+		this.tokens = Math.max(1.0, settings.requestsPerSecond);
+		this.openMillis = settings.breakerOpenMillis;
+	}
+
+	/**
+	 * Send a request, retrying it while it fails with a transient error.
+	 *
+	 * @param request the request
+	 * @param <E>     the exception type
+	 * @throws E the last failure if the request doesn't succeed
+	 */
+	<E extends Exception> void send(@NotNull final Request<E> request) throws E {
+		for (int attempt = 0; ; attempt++) {
+			final boolean trial = acquire();
+			try {
+				request.send();
+				recordSuccess(trial);
+				return;
+			} catch (Exception e) {
+				final DeployFailure failure = DeployFailure.classify(e);
+				if (!failure.isTransient()) {
+					recordSuccess(trial);
+					throw e;
+				}
+				final long retryAfterMillis = retryAfterOf(e);
+				recordFailure(trial, retryAfterMillis);
+				if (attempt >= settings.maxRetries) {
+					throw e;
+				}
+				final long delay = retryAfterMillis > 0 ? retryAfterMillis : backoffMillis(attempt);
+				log.debug(String.format("retrying request to %s in %d ms after %s: %s", repositoryId, delay, failure,
+						e.getMessage()));
+				if (!sleep(TimeUnit.MILLISECONDS.toNanos(delay))) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait until a request may be sent, first for the circuit breaker to allow it, then for a token.
+	 *
+	 * @return true if the request is the trial request of a half open circuit breaker
+	 */
+	boolean acquire() {
+		final boolean trial = awaitBreaker();
+		if (settings.requestsPerSecond > 0.0) {
+			sleep(reserveToken());
+		}
+		return trial;
+	}
+
+	/**
+	 * Record the outcome of a request that was not sent with {@link #send(Request)}.
+	 *
+	 * @param trial            the result of {@link #acquire()}
+	 * @param retryAfterMillis the delay requested by the repository, or 0
+	 * @param transientFailure true if the request failed with a transient error
+	 */
+	void record(final boolean trial, final long retryAfterMillis, final boolean transientFailure) {
+		if (transientFailure) {
+			recordFailure(trial, retryAfterMillis);
+		} else {
+			recordSuccess(trial);
+		}
+	}
+
+	synchronized boolean awaitBreaker() {
+		try {
+			while (true) {
+				final long remaining = openUntil - System.nanoTime();
+				if (openUntil != 0L && remaining > 0L) {
+					TimeUnit.NANOSECONDS.timedWait(this, remaining);
+				} else if (openUntil != 0L && trialInFlight) {
+					wait();
+				} else if (openUntil != 0L) {
+					trialInFlight = true;
+					log.info("circuit breaker for " + repositoryId + " is half open, sending a trial request");
+					return true;
+				} else {
+					return false;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	synchronized void recordSuccess(final boolean trial) {
+		consecutiveFailures = 0;
+		if (trial || openUntil != 0L) {
+			if (openUntil != 0L) {
+				log.info("circuit breaker for " + repositoryId + " is closed");
+			}
+			openUntil = 0L;
+			openMillis = settings.breakerOpenMillis;
+			trialInFlight = false;
+			notifyAll();
+		}
+	}
+
+	synchronized void recordFailure(final boolean trial, final long retryAfterMillis) {
+		consecutiveFailures++;
+		if (settings.breakerThreshold == 0) {
+			return;
+		}
+		if (trial) {
+			openMillis = Math.min(openMillis * 2, TimeUnit.MINUTES.toMillis(10L));
+			open(Math.max(openMillis, retryAfterMillis));
+		} else if (openUntil == 0L && consecutiveFailures >= settings.breakerThreshold) {
+			open(Math.max(openMillis, retryAfterMillis));
+		}
+	}
+
+	void open(final long millis) {
+		openUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+		if (openUntil == 0L) {
+			openUntil = 1L;
+		}
+		trialInFlight = false;
+		log.warn(String.format("circuit breaker for %s is open after %d consecutive transient failures, "
+				+ "pausing requests for %d ms", repositoryId, consecutiveFailures, millis));
+		notifyAll();
+	}
+
+	synchronized boolean isOpen() {
+		return openUntil != 0L;
+	}
+
+	/**
+	 * Take a token from the bucket, going into debt if it is empty, so that concurrent callers are spaced out evenly.
+	 *
+	 * @return the nanoseconds to wait before sending the request
+	 */
+	synchronized long reserveToken() {
+		final long now = System.nanoTime();
+		final double burst = Math.max(1.0, settings.requestsPerSecond);
+		tokens = Math.min(burst, tokens + (now - refilledAt) * settings.requestsPerSecond / TimeUnit.SECONDS.toNanos(1L));
+		refilledAt = now;
+		tokens -= 1.0;
+		return tokens >= 0.0 ? 0L : (long) (-tokens * TimeUnit.SECONDS.toNanos(1L) / settings.requestsPerSecond);
+	}
+
+	/**
+	 * Compute the jittered exponential backoff before a retry, which is between half and all of the exponential backoff.
+	 *
+	 * @param attempt the zero-based number of the failed attempt
+	 * @return the backoff in milliseconds
+	 */
+	long backoffMillis(final int attempt) {
+		final long exponential = Math.min(settings.maxBackoffMillis,
+				settings.baseBackoffMillis << Math.min(attempt, 30));
+		return exponential / 2 + (exponential > 1L ? ThreadLocalRandom.current().nextLong(exponential / 2 + 1) : 0L);
+	}
+
+	static boolean sleep(final long nanos) {
+		if (nanos <= 0L) {
+			return true;
+		}
+		try {
+			TimeUnit.NANOSECONDS.sleep(nanos);
+			return true;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
+
+	/**
+	 * Parse the value of a {@code Retry-After} header, which is either a number of seconds or an HTTP date.
+	 *
+	 * @param value the header value
+	 * @return the delay in milliseconds, or 0 if the value is missing or invalid
+	 */
+	static long parseRetryAfter(@Nullable final String value) {
+		if (value == null || value.trim().isEmpty()) {
+			return 0L;
+		}
+		final String trimmed = value.trim();
+		try {
+			return TimeUnit.SECONDS.toMillis(Math.max(0L, Long.parseLong(trimmed)));
+		} catch (NumberFormatException e) {
+			try {
+				final ZonedDateTime date = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME);
+				return Math.max(0L, Duration.between(ZonedDateTime.now(date.getZone()), date).toMillis());
+			} catch (DateTimeParseException e2) {
+				return 0L;
+			}
+		}
+	}
+
+	/**
+	 * Find a {@code Retry-After} delay in the messages of a failure, for transports that include response headers in
+	 * their messages.
+	 *
+	 * @param error the failure
+	 * @return the delay in milliseconds, or 0 if none is found
+	 */
+	static long retryAfterOf(@Nullable final Throwable error) {
+		final Set<Throwable> visited = new HashSet<>();
+		for (Throwable cause = error; cause != null && visited.add(cause); cause = cause.getCause()) {
+			if (cause.getMessage() != null) {
+				final Matcher matcher = RETRY_AFTER.matcher(cause.getMessage());
+				if (matcher.find()) {
+					return parseRetryAfter(matcher.group(1));
+				}
+			}
+		}
+		return 0L;
+	}
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Lookup over a sharded index, which loads the lookup of each shard the first time a key of that shard is requested.
+ */
+final class ShardedIndexLookup implements IndexLookup {
+	private final IndexSharding sharding;
+
+	private final Set<String> shards;
+
+	private final Function<String, File> shardFiles;
+
+	private final ConcurrentMap<String, Optional<IndexLookup>> loaded = new ConcurrentHashMap<>();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param sharding   the sharding of the index
+	 * @param shards     the deployed shards
+	 * @param shardFiles resolves the file of a shard, returning null if it can't be resolved
+	 */
+	ShardedIndexLookup(@NotNull final IndexSharding sharding, @NotNull final Collection<String> shards,
+			@NotNull final Function<String, File> shardFiles) {
+		this.sharding = sharding;
+		this.shards = Collections.unmodifiableSet(new HashSet<>(shards));
+		this.shardFiles = shardFiles;
+	}
+
+	Optional<IndexLookup> getShard(@NotNull final String shard) {
+		if (!shards.contains(shard)) {
+			return Optional.empty();
+		}
+		return loaded.computeIfAbsent(shard, key -> {
+			final File file = shardFiles.apply(key);
+			if (file == null) {
+				return Optional.empty();
+			}
+			try {
+				return Optional.of(IndexLookup.load(file));
+			} catch (IOException e) {
+				throw new UncheckedIOException("failed to load index shard " + file, e);
+			}
+		});
+	}
+
+	@Override
+	public @Nullable String[] getFilenames(@NotNull final Path layoutPrefix) {
+		return getShard(sharding.shardOf(IndexLookup.keyFor(layoutPrefix)))
+				.map(lookup -> lookup.getFilenames(layoutPrefix))
+				.orElse(null);
+	}
+
+	/**
+	 * @return the number of indexed layout prefixes in the shards that were loaded so far
+	 */
+	@Override
+	public int size() {
+		return loaded.values().stream().mapToInt(lookup -> lookup.map(IndexLookup::size).orElse(0)).sum();
+	}
+
+	/**
+	 * Visit the entries of every shard, which loads all the shards.
+	 *
+	 * @param consumer the entry consumer
+	 */
+	@Override
+	public void forEach(@NotNull final BiConsumer<String, String[]> consumer) {
+		for (String shard : shards) {
+			getShard(shard).ifPresent(lookup -> lookup.forEach(consumer));
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (Optional<IndexLookup> lookup : loaded.values()) {
+			if (lookup.isPresent()) {
+				lookup.get().close();
+			}
+		}
+	}
+}
@@ -16,55 +16,31 @@
 
 package net.adamcin.blunderbuss.mojo;
 
-import io.reactivex.rxjava3.core.BackpressureStrategy;
 import io.reactivex.rxjava3.core.Completable;
 import io.reactivex.rxjava3.core.Flowable;
 import io.reactivex.rxjava3.core.Maybe;
-import io.reactivex.rxjava3.core.Observable;
 import io.reactivex.rxjava3.core.Single;
 import io.reactivex.rxjava3.internal.functions.Functions;
-import org.apache.maven.artifact.Artifact;
-import org.apache.maven.artifact.DefaultArtifact;
-import org.apache.maven.artifact.InvalidRepositoryException;
-import org.apache.maven.artifact.handler.manager.ArtifactHandlerManager;
-import org.apache.maven.artifact.repository.ArtifactRepository;
-import org.apache.maven.artifact.repository.ArtifactRepositoryPolicy;
-import org.apache.maven.artifact.repository.layout.ArtifactRepositoryLayout;
-import org.apache.maven.artifact.repository.metadata.ArtifactRepositoryMetadata;
-import org.apache.maven.execution.MavenSession;
-import org.apache.maven.model.Build;
-import org.apache.maven.model.DeploymentRepository;
-import org.apache.maven.model.DistributionManagement;
-import org.apache.maven.model.Repository;
-import org.apache.maven.model.RepositoryPolicy;
-import org.apache.maven.plugin.AbstractMojo;
-import org.apache.maven.plugin.MojoExecutionException;
-import org.apache.maven.plugin.MojoFailureException;
+import io.reactivex.rxjava3.schedulers.Schedulers;
 import org.apache.maven.plugins.annotations.Component;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
-import org.apache.maven.project.DefaultProjectBuildingRequest;
-import org.apache.maven.project.MavenProject;
-import org.apache.maven.project.ProjectBuildingRequest;
-import org.apache.maven.repository.RepositorySystem;
-import org.apache.maven.settings.Settings;
-import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
-import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.apache.maven.shared.transfer.dependencies.resolve.DependencyResolver;
 import org.codehaus.plexus.util.StringUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * Upload the local repository cache to a specific deployment repository. Unlike the standard maven deploy goals, this goal is tolerant of
@@ -80,61 +56,7 @@ import java.util.stream.Stream;
  * elements in {@code altIndex} so that they cross reference each other while avoiding duplication of index entries.
  */
 @Mojo(name = "sync", requiresProject = false, inheritByDefault = false, aggregator = true, requiresOnline = true)
-public class SyncMojo extends AbstractMojo {
-	private static final Pattern ALT_REPO_SYNTAX_PATTERN = Pattern.compile("(.+)::(.+)");
-
-	@Parameter(defaultValue = "${settings}", readonly = true)
-	private Settings settings;
-
-	@Parameter(defaultValue = "${session}", readonly = true)
-	private MavenSession session;
-
-	@Parameter(defaultValue = "${project}", readonly = true)
-	private MavenProject project;
-
-	/**
-	 * Specifies an alternative repository to which the project artifacts should be deployed (other than those specified
-	 * in &lt;distributionManagement&gt;). <br/>
-	 * Format: <code>id::url</code>
-	 * <dl>
-	 * <dt>id</dt>
-	 * <dd>The id can be used to pick up the correct credentials from the settings.xml</dd>
-	 * <dt>url</dt>
-	 * <dd>The location of the repository</dd>
-	 * </dl>
-	 * <b>Note:</b> In maven-deploy-plugin version 2.x, the format was <code>id::<i>layout</i>::url</code> where <code><i>layout</i></code>
-	 * could be <code>default</code> (ie. Maven 2) or <code>legacy</code> (ie. Maven 1), but since 3.0.0 the layout part
-	 * has been removed because Maven 3 only supports Maven 2 repository layout.
-	 */
-	@Parameter(property = "altDeploymentRepository")
-	private String altDeploymentRepository;
-
-	/**
-	 * The alternative repository to use when the project has a final version.
-	 *
-	 * <b>Note:</b> In maven-deploy-plugin version 2.x, the format was <code>id::<i>layout</i>::url</code> where <code><i>layout</i></code>
-	 * could be <code>default</code> (ie. Maven 2) or <code>legacy</code> (ie. Maven 1), but since 3.0.0 the layout part
-	 * has been removed because Maven 3 only supports Maven 2 repository layout.
-	 *
-	 * @see SyncMojo#altDeploymentRepository
-	 * @since 2.8
-	 */
-	@Parameter(property = "altReleaseDeploymentRepository")
-	private String altReleaseDeploymentRepository;
-
-	/**
-	 * The alternative repository to use when the project has a snapshot version.
-	 *
-	 * <b>Note:</b> In maven-deploy-plugin version 2.x, the format was <code>id::<i>layout</i>::url</code> where <code><i>layout</i></code>
-	 * could be <code>default</code> (ie. Maven 2) or <code>legacy</code> (ie. Maven 1), but since 3.0.0 the layout part
-	 * has been removed because Maven 3 only supports Maven 2 repository layout.
-	 *
-	 * @see SyncMojo#altDeploymentRepository
-	 * @since 2.8
-	 */
-	@Parameter(property = "altSnapshotDeploymentRepository")
-	private String altSnapshotDeploymentRepository;
-
+public class SyncMojo extends AbstractIndexMojo {
 	/**
 	 * Set to true to skip resolution of the latest index, which effectively forces the index to be rebuilt
 	 * from scratch. This does not prevent the index artifacts specified with {@code altIndex} from being resolved.
@@ -142,12 +64,6 @@ public class SyncMojo extends AbstractMojo {
 	@Parameter(name = "skipResolveIndex", property = "skipResolveIndex")
 	private boolean skipResolveIndex;
 
-	/**
-	 * Set to true to skip upload of the new index.
-	 */
-	@Parameter(name = "skipDeployIndex", property = "skipDeployIndex")
-	private boolean skipDeployIndex;
-
 	/**
 	 * By default, the plugin will tolerate any failures to deploy or resolve non-reactor artifacts and simply not update their coordinates in the
 	 * index, and these sync failures will not prevent the plugin from attempting to upload the new index artifact at the end of the exeuction.
@@ -181,181 +97,202 @@ public class SyncMojo extends AbstractMojo {
 	private boolean reactorDeploySnapshots;
 
 	/**
-	 * Specify the groupId of the index that is resolved and deployed by this execution. This also serves as the
-	 * default for {@code altIndex} elements that omit the groupId part.
+	 * This can be used for testing configurations against a throwaway deployment repository to avoid having
+	 * to wait for all artifacts to be uploaded for every iteration.
 	 */
-	@Parameter(name = "indexGroupId", property = "indexGroupId", required = true)
-	private String indexGroupId;
+	@Parameter(property = "blunderbuss.limitArtifactCount")
+	private long limitArtifactCount;
 
 	/**
-	 * Specify the artifactId of the index that is resolved and deployed by this execution.
+	 * Set to an integer greater than 1 to walk the local repository using a fork/join pool with the specified parallelism,
+	 * which splits the walk by groupId directories. This can significantly reduce the time spent discovering artifacts in
+	 * very large local repositories.
 	 */
-	@Parameter(name = "indexArtifactId", property = "indexArtifactId", required = true)
-	private String indexArtifactId;
+	@Parameter(name = "walkParallelism", property = "blunderbuss.walkParallelism", defaultValue = "1")
+	private int walkParallelism;
 
 	/**
-	 * Comma separated list of groupId:artifactId coordinates for other indexes managed in the same
-	 * deployment repository that will be used as additional filters after the index specified with
-	 * {@code indexGroupId} and {@code indexArtifactId}. Each coordinate will be trimmed to nil so
-	 * that newlines are tolerated in the configuration element in the pom. You may omit the groupId
-	 * portion, leaving only a colon prefix, in which case the {@code indexGroupId}
-	 * parameter will be assumed.
+	 * The local repository is walked only as fast as artifact groups are consumed by the upload stage. This sets the
+	 * approximate maximum number of discovered artifact groups that may be buffered ahead of the uploads at any time.
 	 */
-	@Parameter(name = "altIndex", property = "altIndex")
-	private String altIndex;
+	@Parameter(name = "maxInFlightGroups", property = "blunderbuss.maxInFlightGroups", defaultValue = "128")
+	private int maxInFlightGroups;
 
 	/**
-	 * Specify a directory parent path for temporary files. If not specified, the plugin will use
-	 * {@code project.build.directory} if executed in a maven module directory, or otherwise it
-	 * will use {@code java.io.tmpdir}.
+	 * The lower bound of the number of artifact groups that are uploaded concurrently. The number starts at the number
+	 * of available processors and is adjusted at runtime, growing while uploads complete normally and shrinking when the
+	 * deployment repository throttles or fails uploads, or when upload latency rises sharply. The limit is logged when the
+	 * sync starts and ends, and whenever it is lowered.
 	 */
-	@Parameter(name = "tempDirectory", property = "blunderbuss.tempDirectory")
-	private File tempDirectory;
+	@Parameter(name = "minConcurrentUploads", property = "blunderbuss.minConcurrentUploads", defaultValue = "1")
+	private int minConcurrentUploads;
 
 	/**
-	 * This can be used for testing configurations against a throwaway deployment repository to avoid having
-	 * to wait for all artifacts to be uploaded for every iteration.
+	 * The upper bound of the number of artifact groups that are uploaded concurrently. Set it equal to
+	 * {@code minConcurrentUploads} for a fixed number of concurrent uploads.
 	 */
-	@Parameter(property = "blunderbuss.limitArtifactCount")
-	private long limitArtifactCount;
+	@Parameter(name = "maxConcurrentUploads", property = "blunderbuss.maxConcurrentUploads", defaultValue = "32")
+	private int maxConcurrentUploads;
 
-	@Component
-	private RepositorySystem repositorySystem;
+	/**
+	 * The maximum sustained number of requests per second sent to each deployment repository, including existence probes,
+	 * with bursts of up to one second's worth of requests. Set to 0 for no rate limit.
+	 */
+	@Parameter(name = "requestsPerSecond", property = "blunderbuss.requestsPerSecond", defaultValue = "0")
+	private double requestsPerSecond;
 
-	@Component(role = ArtifactRepositoryLayout.class)
-	private Map<String, ArtifactRepositoryLayout> repositoryLayouts;
+	/**
+	 * The number of times a deployment that fails with a throttling (429) or server (5xx) error is retried, after a
+	 * jittered exponential backoff starting at {@code retryBackoffMillis}, or after the delay requested by a
+	 * {@code Retry-After} header when the transport reports one. Artifact groups that still fail are synced once more at
+	 * the end of the run before they are counted as failed.
+	 */
+	@Parameter(name = "maxRetries", property = "blunderbuss.maxRetries", defaultValue = "3")
+	private int maxRetries;
 
-	@Component
-	private ArtifactDeployer artifactDeployer;
+	/**
+	 * The backoff before the first retry of a deployment, which doubles for each following retry, up to one minute.
+	 */
+	@Parameter(name = "retryBackoffMillis", property = "blunderbuss.retryBackoffMillis", defaultValue = "500")
+	private long retryBackoffMillis;
 
-	@Component
-	private ArtifactResolver artifactResolver;
+	/**
+	 * The number of consecutive throttling or server errors from a deployment repository that open its circuit breaker,
+	 * which pauses all requests to the repository for {@code circuitBreakerMillis} and then sends a single trial request,
+	 * instead of spending the failure budget while the repository is unhealthy. The pause doubles each time the trial
+	 * request fails. Set to 0 to disable the circuit breaker.
+	 */
+	@Parameter(name = "circuitBreakerThreshold", property = "blunderbuss.circuitBreakerThreshold", defaultValue = "5")
+	private int circuitBreakerThreshold;
 
-	private final ArtifactHandlerManager artifactHandlerManager = new DefaultArtifactHandlers();
+	/**
+	 * The initial pause of requests to a deployment repository when its circuit breaker opens.
+	 */
+	@Parameter(name = "circuitBreakerMillis", property = "blunderbuss.circuitBreakerMillis", defaultValue = "30000")
+	private long circuitBreakerMillis;
 
-	RepositoryPolicy getDefaultRepositoryPolicy(boolean enabled) {
-		RepositoryPolicy policy = new RepositoryPolicy();
-		policy.setEnabled(enabled);
-		policy.setUpdatePolicy(ArtifactRepositoryPolicy.UPDATE_POLICY_ALWAYS);
-		policy.setChecksumPolicy(ArtifactRepositoryPolicy.CHECKSUM_POLICY_IGNORE);
-		return policy;
-	}
+	/**
+	 * Specify a manifest file listing the artifacts resolved by an earlier build step to sync only those GAVs instead of
+	 * walking the whole local repository. Each line may be either a coordinate string as printed by
+	 * {@code mvn dependency:list -DoutputFile=...}, such as {@code groupId:artifactId:type:version:scope}, or a path to an
+	 * artifact file or version directory, either absolute or relative to the local repository. The
+	 * {@code watermarkFile} is neither read nor updated when a manifest is used.
+	 */
+	@Parameter(name = "discoveryManifest", property = "blunderbuss.discoveryManifest")
+	private File discoveryManifest;
 
-	Maybe<ArtifactRepository> getAltReleaseDeploymentRepository() {
-		return getAltDeploymentRepository(false);
-	}
+	/**
+	 * Set to true to sync only the closure of the reactor projects instead of walking the whole local repository. The
+	 * closure includes the reactor projects, their transitive dependencies, build plugins and plugin dependencies, and the
+	 * parent and imported BOM poms of all of them. This bounds the execution time by the size of the project rather than
+	 * the size of the local repository on long-lived build agents. This parameter has no effect when executed in a directory
+	 * without a pom, and it is ignored when {@code discoveryManifest} is specified. The {@code watermarkFile} is neither read
+	 * nor updated when the reactor closure is used.
+	 */
+	@Parameter(name = "reactorClosure", property = "blunderbuss.reactorClosure")
+	private boolean reactorClosure;
 
-	Maybe<ArtifactRepository> getAltSnapshotDeploymentRepository() {
-		return getAltDeploymentRepository(true);
-	}
+	/**
+	 * Specify a file to enable incremental discovery on persistent build agents. After every execution that completes without
+	 * sync failures, the last modified time and entry count of each visited version directory in the local repository is
+	 * saved to this file along with the index version, so that the next execution can skip version directories that have
+	 * not changed. If no directory has changed and the latest index version is still the one that was recorded, the execution
+	 * ends immediately after resolving the index.
+	 */
+	@Parameter(name = "watermarkFile", property = "blunderbuss.watermarkFile")
+	private File watermarkFile;
 
-	Maybe<ArtifactRepository> getAltDeploymentRepository(final boolean forSnapshots) {
-		return Maybe.<Repository>create(emitter -> {
-			final String specificKey = forSnapshots
-					? altSnapshotDeploymentRepository
-					: altReleaseDeploymentRepository;
-			final Optional<String> altRepo = Stream.of(specificKey, altDeploymentRepository)
-					.filter(org.apache.maven.shared.utils.StringUtils::isNotBlank)
-					.findFirst();
-			if (altRepo.isPresent()) {
-				final String altDeploymentRepo = altRepo.get();
-				getLog().info("Using alternate deployment repository " + altDeploymentRepo);
-				Matcher matcher = ALT_REPO_SYNTAX_PATTERN.matcher(altDeploymentRepo);
-				if (!matcher.matches()) {
-					throw new MojoFailureException(altDeploymentRepo, "Invalid syntax for repository.",
-							"Invalid syntax for alternative repository. Use \"id::url\".");
-				} else {
-					final String id = matcher.group(1).trim();
-					final String url = matcher.group(2).trim();
-					Repository repo = new Repository();
-					repo.setReleases(getDefaultRepositoryPolicy(!forSnapshots));
-					repo.setSnapshots(getDefaultRepositoryPolicy(forSnapshots));
-					repo.setId(id);
-					repo.setUrl(url);
-					emitter.onSuccess(repo);
-				}
-			}
-			emitter.onComplete();
-		}).flatMap(repo -> Optional.ofNullable(repo).map(this::buildArtifactRepository).map(Single::toMaybe).orElseGet(Maybe::empty));
-	}
+	/**
+	 * Comma separated list of repository ids, in addition to the ids of the release and snapshot deployment repositories, for
+	 * which locally cached files that were originally downloaded from a repository with a matching id are assumed to be
+	 * present in the deployment repository already. The origins of cached files are read from the
+	 * {@code _remote.repositories} file that maven writes to each version directory, and matching files are added to the
+	 * index without being deployed.
+	 */
+	@Parameter(name = "skipOriginRepositoryIds", property = "skipOriginRepositoryIds")
+	private String skipOriginRepositoryIds;
 
-	Single<ArtifactRepository> buildArtifactRepository(@NotNull final Repository repository) {
-		return Single.create(emitter -> {
-			if (StringUtils.isEmpty(repository.getId()) || StringUtils.isEmpty(repository.getUrl())) {
-				throw new InvalidRepositoryException("repository id and url must not be empty", repository.getId());
-			} else {
-				ArtifactRepository repo = repositorySystem.buildArtifactRepository(repository);
-				repositorySystem.injectProxy(session.getRepositorySession(), Collections.singletonList(repo));
-				repositorySystem.injectAuthentication(session.getRepositorySession(), Collections.singletonList(repo));
-				emitter.onSuccess(repo);
-			}
-		});
-	}
+	/**
+	 * Set to a positive integer to deploy only the index entries that changed in this execution, as a delta index artifact
+	 * whose manifest references the index version it was built on, instead of the complete index. The resolved index is
+	 * the overlay of the latest delta on its chain of base versions. Once a new delta would make the chain longer than the
+	 * specified number of deltas, or if any base version fails to resolve, a complete index is deployed instead, which
+	 * starts a new chain. The default value of 0 always deploys the complete index.
+	 */
+	@Parameter(name = "indexDeltaThreshold", property = "blunderbuss.indexDeltaThreshold", defaultValue = "0")
+	private int indexDeltaThreshold;
 
-	Single<DistributionManagement> getProjectDistMgmtAsSingle() {
-		return Single.<MavenProject>create(emitter -> {
-			if (project == null) {
-				throw new IllegalStateException("No maven project available.");
-			} else {
-				emitter.onSuccess(project);
-			}
-		}).flatMap(mavenProject -> Single.create(emitter -> {
-			if (mavenProject.getDistributionManagement() == null) {
-				throw new IllegalStateException("Maven project does not contain a distributionManagement section");
-			} else {
-				emitter.onSuccess(mavenProject.getDistributionManagement());
-			}
-		}));
-	}
+	/**
+	 * Set to true to record the size and SHA-1 of every synced file in the index entries deployed by this execution, in
+	 * addition to the filename. The SHA-1 is read from the {@code .sha1} file that maven keeps next to a downloaded file
+	 * when it is present, and otherwise it is computed from the file. Entries with checksums are readable by this and later
+	 * versions of the plugin only, and entries with only filenames remain readable.
+	 */
+	@Parameter(name = "indexChecksums", property = "blunderbuss.indexChecksums")
+	private boolean indexChecksums;
 
-	Single<ArtifactRepository> getProjectReleaseDeploymentRepository() {
-		return getProjectDistMgmtAsSingle().flatMap(distMgmt -> Single.<DeploymentRepository>create(emitter -> {
-			if (distMgmt.getRepository() == null) {
-				throw new IllegalStateException("Maven project distributionManagement does not specify a release repository");
-			} else {
-				emitter.onSuccess(distMgmt.getRepository());
-			}
-		})).flatMap(repository ->
-				buildArtifactRepository(repository).onErrorResumeNext(e ->
-						Single.error(new IllegalStateException("Failed to create release distribution repository for " + project.getId(), e))));
-	}
+	/**
+	 * Set to true to compare every locally cached file that is already indexed with a recorded size and SHA-1 before
+	 * skipping it, so that a file whose content differs from the content that was synced earlier is synced again. Files are
+	 * only hashed when their size matches the recorded size. Index entries without checksums are not verified.
+	 */
+	@Parameter(name = "verifyIndexedContent", property = "blunderbuss.verifyIndexedContent")
+	private boolean verifyIndexedContent;
 
-	Single<ArtifactRepository> getReleaseDeploymentRepository() {
-		return getAltReleaseDeploymentRepository().switchIfEmpty(getProjectReleaseDeploymentRepository());
-	}
+	/**
+	 * Set to true to read the indexes with HTTP range requests instead of downloading the index jars, when the execution
+	 * only syncs a small slice of the local repository because {@code discoveryManifest} or {@code reactorClosure} is used.
+	 * Only the central directory of each index jar and the entries of the discovered artifact groups are transferred. The
+	 * primary index is only read this way when {@code indexDeltaThreshold} allows deploying a delta over it and
+	 * {@code indexSharding} is not set, since a full or resharded index needs the previous index jar anyway. Index jars that are cached, sharded or binary only, and servers that
+	 * reject range requests, fall back to resolving the index jars as usual.
+	 */
+	@Parameter(name = "rangeReadIndex", property = "blunderbuss.rangeReadIndex")
+	private boolean rangeReadIndex;
 
-	Maybe<ArtifactRepository> getProjectSnapshotDeploymentRepository() {
-		return getProjectDistMgmtAsSingle().flatMapMaybe(distMgmt -> Maybe.<DeploymentRepository>create(emitter -> {
-			if (distMgmt.getSnapshotRepository() != null) {
-				emitter.onSuccess(distMgmt.getSnapshotRepository());
-			} else {
-				emitter.onComplete();
-			}
-		})).flatMap(repository -> buildArtifactRepository(repository)
-				.onErrorResumeNext(e ->
-						Single.error(new IllegalStateException("Failed to create snapshot distribution repository for " + project.getId(), e))
-				).toMaybe());
-	}
+	/**
+	 * The maximum number of concurrent existence probes per artifact group. Before the files of a release artifact group
+	 * are deployed, each file is checked with a HEAD request against the deployment repository, and files that already
+	 * exist are indexed without being uploaded or downloaded. The requests are sent through the proxy of the repository,
+	 * and probing is skipped when the proxy requires credentials that can't be sent with them. The default of 0 deploys
+	 * every file that is not indexed yet, and only checks the files of an artifact group after its deployment fails.
+	 */
+	@Parameter(name = "probeParallelism", property = "blunderbuss.probeParallelism", defaultValue = "0")
+	private int probeParallelism;
 
-	Maybe<ArtifactRepository> getSnapshotDeploymentRepository() {
-		return getAltSnapshotDeploymentRepository().switchIfEmpty(getProjectSnapshotDeploymentRepository());
-	}
+	@Component
+	private DependencyResolver dependencyResolver;
 
 	/**
-	 * @return an observable of artifact groups
+	 * @param watermark the optional walk watermark
+	 * @return a backpressured flowable of artifact groups
 	 */
-	Observable<ArtifactGroup> getArtifactGroups() {
-		Observable<ArtifactGroup> observable = Observable.create(emitter -> {
-			final Path localRepoPath = session.getRequest().getLocalRepositoryPath().toPath().toAbsolutePath();
-			CachedArtifactVisitor.walkLocalRepo(artifactHandlerManager, localRepoPath, emitter).onComplete();
-		});
+	Flowable<ArtifactGroup> getArtifactGroups(@Nullable final WalkWatermark watermark) {
+		final Flowable<ArtifactGroup> flowable = Flowable.defer(() -> {
+			final Path localRepoPath = getLocalRepoPath();
+			if (discoveryManifest != null) {
+				return ManifestDiscovery.readManifest(artifactHandlerManager, localRepoPath, discoveryManifest.toPath());
+			} else if (isReactorClosure()) {
+				return new ReactorClosure(dependencyResolver, session.getProjectBuildingRequest(), getLog())
+						.discover(artifactHandlerManager, localRepoPath, session.getAllProjects());
+			} else if (walkParallelism > 1) {
+				return LocalRepoWalker.walkLocalRepoParallel(artifactHandlerManager, localRepoPath, watermark,
+						walkParallelism, maxInFlightGroups);
+			} else {
+				return LocalRepoWalker.walkLocalRepo(artifactHandlerManager, localRepoPath, watermark);
+			}
+		}).subscribeOn(Schedulers.io());
 		if (limitArtifactCount > 0L) {
-			return observable.take(limitArtifactCount);
+			return flowable.take(limitArtifactCount);
 		} else {
-			return observable;
+			return flowable;
 		}
 	}
 
+	boolean isReactorClosure() {
+		return reactorClosure && project != null && project.getFile() != null && session.getAllProjects() != null;
+	}
+
 	Single<ReactorFilter> getReactorFilter(@NotNull final Context context) {
 		return Single.create(emitter -> {
 			if (!this.reactorAware || this.session.getAllProjects() == null) {
@@ -372,128 +309,138 @@ public class SyncMojo extends AbstractMojo {
 	/**
 	 * Stream deployable artifacts grouped into lists where all elements share the same GAV coordinates.
 	 *
+	 * @param index     the primary index
+	 * @param context   the execution context
+	 * @param watermark the optional walk watermark
 	 * @return stream of GAV-grouped artifacts
 	 */
-	Flowable<ArtifactGroup> getDeployableArtifacts(@NotNull final Index index, @NotNull final Context context) {
+	Flowable<ArtifactGroup> getDeployableArtifacts(@NotNull final Index index, @NotNull final Context context,
+			@Nullable final WalkWatermark watermark) {
+		final Set<String> skipOriginIds = getSkipOriginRepositoryIds(context);
 		return getReactorFilter(context)
-				.flatMap(reactorFilter -> getAltIndexes(context)
-						.flatMap(altIndexes -> Observable.concat(
-								Observable.just(reactorFilter),
-								Observable.just(index),
-								Observable.fromIterable(altIndexes))
-								.reduce(getArtifactGroups().toFlowable(BackpressureStrategy.BUFFER),
-										(flow, idx) -> idx.attachPipe(flow))))
+				.flatMap(reactorFilter -> getAltIndexes(context, isRangeReadIndex() ? Integer.MAX_VALUE : -1)
+						.map(altIndexes -> {
+							final List<Index> indexes = new ArrayList<>();
+							indexes.add(index);
+							indexes.addAll(altIndexes);
+							// a single filter stage for all indexes, rather than one stage per index
+							return new MergedIndex(getLog(), indexes, verifyIndexedContent)
+									.attachPipe(reactorFilter.attachPipe(getArtifactGroups(watermark)));
+						}))
 				.toFlowable()
 				.flatMap(Functions.identity())
-				.map(group -> group.findDeployables(artifactHandlerManager));
+				.map(group -> group.findDeployables(artifactHandlerManager, skipOriginIds));
 	}
 
-	Single<ProjectBuildingRequest> getWrappedProjectBuildingRequest(
-			@NotNull final ArtifactRepository releaseRepo) {
-		DefaultProjectBuildingRequest wrapper = new DefaultProjectBuildingRequest(session.getProjectBuildingRequest());
-		wrapper.setRemoteRepositories(Collections.singletonList(releaseRepo));
-		return Single.just(wrapper);
+	Set<String> getSkipOriginRepositoryIds(@NotNull final Context context) {
+		final Set<String> repositoryIds = new HashSet<>();
+		repositoryIds.add(context.getReleaseRepo().getId());
+		if (context.getSnapshotRepo() != null) {
+			repositoryIds.add(context.getSnapshotRepo().getId());
+		}
+		if (StringUtils.isNotBlank(skipOriginRepositoryIds)) {
+			Arrays.stream(skipOriginRepositoryIds.split(","))
+					.map(String::trim)
+					.filter(StringUtils::isNotEmpty)
+					.forEachOrdered(repositoryIds::add);
+		}
+		return repositoryIds;
 	}
 
-	Single<Context> getContext() {
-		return getSnapshotDeploymentRepository().map(Optional::of).defaultIfEmpty(Optional.empty())
-				.flatMap(snapshotRepo -> getReleaseDeploymentRepository()
-						.flatMap(releaseRepo -> getWrappedProjectBuildingRequest(releaseRepo)
-								.flatMap(buildRequest -> getTempDirectory()
-										.map(tempDir -> new Context(artifactResolver, artifactDeployer, releaseRepo,
-												snapshotRepo.orElse(null), buildRequest, tempDir.toAbsolutePath(), getLog())))));
+	@Override
+	@Nullable RepositoryGuard.Settings getGuardSettings() {
+		return new RepositoryGuard.Settings(requestsPerSecond, maxRetries, retryBackoffMillis,
+				TimeUnit.MINUTES.toMillis(1L), circuitBreakerThreshold, circuitBreakerMillis);
 	}
 
-	Single<Path> getTempDirectory() {
-		return Single.create(emitter -> {
-			if (tempDirectory != null) {
-				emitter.onSuccess(Files.createTempDirectory(tempDirectory.toPath(), "blunderbuss_"));
-			} else if (project != null) {
-				final Path projectTempDir = project.getBasedir().toPath().resolve(
-						Optional.ofNullable(project.getBuild()).map(Build::getDirectory).orElse("target"))
-						.resolve("blunderbussTmp");
-				emitter.onSuccess(Files.createDirectories(projectTempDir));
-			} else {
-				emitter.onSuccess(Files.createTempDirectory("blunderbuss_"));
-			}
-		});
+	@Override
+	@Nullable ExistenceProbe getExistenceProbe() {
+		return new ExistenceProbe(probeParallelism, getLog());
+	}
+
+	boolean isRangeReadIndex() {
+		return rangeReadIndex && (discoveryManifest != null || isReactorClosure());
 	}
 
 	Single<Index> getIndex(@NotNull final Context context) {
-		return internalGetIndex(artifactHandlerManager, context, indexGroupId, indexArtifactId, !skipResolveIndex);
+		return getIndex(context, indexGroupId, indexArtifactId, !skipResolveIndex,
+				isRangeReadIndex() && indexDeltaThreshold > 0 && getIndexSharding() == null ? indexDeltaThreshold - 1 : -1);
 	}
 
-	static Single<Index> internalGetIndex(
-			@NotNull final ArtifactHandlerManager artifactHandlerManager,
-			@NotNull final Context context,
-			@NotNull final String groupId,
-			@NotNull final String artifactId,
-			final boolean doResolve) {
-		return Single.create(emitter -> {
-			Artifact indexArtifact = new DefaultArtifact(groupId, artifactId, Artifact.LATEST_VERSION,
-					"test", "jar", "", artifactHandlerManager.getArtifactHandler("jar"));
-			Artifact indexMetadataArtifact = new DefaultArtifact(groupId, artifactId, Artifact.LATEST_VERSION,
-					"import", "pom", "", artifactHandlerManager.getArtifactHandler("pom"));
-
-			if (doResolve) {
-				try {
-					indexMetadataArtifact = context.resolve(indexMetadataArtifact);
-					ArtifactRepositoryMetadata metaMeta = new ArtifactRepositoryMetadata(indexMetadataArtifact);
-					indexMetadataArtifact.addMetadata(metaMeta);
-					indexArtifact.addMetadata(metaMeta);
-					indexArtifact = context.resolve(indexArtifact);
-					context.getLog().info("resolved index file to " + indexArtifact.getFile());
-				} catch (Exception e) {
-					context.getLog().warn("failed to resolve latest index: " + indexArtifact.toString());
-					context.getLog().debug("failed to resolve latest index: " + indexArtifact.toString(), e);
-				}
-			}
+	Maybe<WalkWatermark> getWatermark() {
+		return Maybe.fromCallable(() -> watermarkFile != null && discoveryManifest == null && !isReactorClosure()
+				? WalkWatermark.load(watermarkFile.toPath())
+				: null);
+	}
 
-			emitter.onSuccess(new Index(context.getLog(), indexArtifact, indexMetadataArtifact));
-		});
+	/**
+	 * The previous fingerprints of a watermark may only be used to skip version directories when the index that their
+	 * entries were saved to is the resolved index of this execution. Otherwise the index built by this execution would
+	 * be missing the entries of every skipped directory.
+	 *
+	 * @param index     the primary index
+	 * @param watermark the walk watermark
+	 * @return true if unchanged version directories can be skipped
+	 */
+	boolean isWatermarkValid(@NotNull final Index index, @NotNull final WalkWatermark watermark) {
+		return !skipResolveIndex && index.isResolved() && index.isChainComplete()
+				&& index.getIndexArtifact().getVersion().equals(watermark.getPreviousIndexVersion());
 	}
 
-	Single<List<Index>> getAltIndexes(@NotNull final Context context) {
-		if (StringUtils.isBlank(altIndex)) {
-			return Single.just(Collections.emptyList());
-		} else {
-			return Observable.fromStream(Arrays.stream(altIndex.split(",")))
-					.filter(part -> part.contains(":"))
-					.map(String::trim)
-					.flatMap(coords -> {
-						final String[] elements = coords.split(":");
-						final String groupId = StringUtils.isNotEmpty(elements[0]) ? elements[0] : indexGroupId;
-						final String artifactId = elements[1];
-						if (groupId.equals(indexGroupId) && artifactId.equals(indexArtifactId)) {
-							return Observable.empty();
-						} else {
-							return internalGetIndex(artifactHandlerManager, context, groupId, artifactId, true)
-									.toObservable();
-						}
-					})
-					.collect(Collectors.toList());
+	boolean isUpToDate(@NotNull final Index index, @NotNull final WalkWatermark watermark) {
+		return isWatermarkValid(index, watermark) && watermark.isRepositoryUnchanged(getLocalRepoPath());
+	}
+
+	@Nullable WalkWatermark getWalkWatermark(@NotNull final Index index, @NotNull final Optional<WalkWatermark> watermark) {
+		if (!watermark.isPresent() || isWatermarkValid(index, watermark.get())) {
+			return watermark.orElse(null);
 		}
+		getLog().info("walk watermark does not match the resolved index, walking the whole local repository.");
+		return watermark.get().withoutPrevious();
 	}
 
-	Completable doExecute() {
-		return getContext()
-				.flatMap(context -> getIndex(context)
-						.flatMap(index -> IndexBuilder.fromIndex(index, context, new IndexBuilder.Config(ignoreFailures, terminateAtFailureCount))
-								.flatMap(indexBuilder -> indexBuilder.buildIndexFrom(getDeployableArtifacts(index, context)))))
-				.flatMapCompletable(stats -> stats.getBuilder().finishAndUpload(stats, skipDeployIndex));
+	Completable saveWatermark(@NotNull final Index index,
+			@NotNull final IndexBuilder.Stats stats,
+			@Nullable final WalkWatermark watermark) {
+		return Completable.fromAction(() -> {
+			// a partial or failed walk must not advance the watermark
+			if (watermark != null && stats.getFailures() == 0 && limitArtifactCount <= 0L) {
+				// an index jar identical to the latest one is not deployed, so the latest version is still current
+				final String indexVersion = stats.getBuilder().isDeployed()
+						? stats.getBuilder().getIndexGav().getVersion()
+						: index.getIndexArtifact().getVersion();
+				watermark.save(watermarkFile.toPath(), indexVersion);
+			}
+		});
 	}
 
 	@Override
-	public void execute() throws MojoExecutionException, MojoFailureException {
-		Completable execution = doExecute();
-		try {
-			execution.blockingAwait();
-		} catch (Exception e) {
-			if (e.getCause() instanceof MojoFailureException) {
-				throw (MojoFailureException) e.getCause();
-			}
-			throw new MojoExecutionException(e.getMessage(), e.getCause());
-		}
+	Completable doExecute() {
+		return getWatermark().map(Optional::of).defaultIfEmpty(Optional.empty())
+				.flatMapCompletable(watermark -> getContext()
+						.flatMapCompletable(context -> getIndex(context)
+								.flatMapCompletable(index -> {
+									if (watermark.isPresent() && isUpToDate(index, watermark.get())) {
+										getLog().info("local repository and index are unchanged since the last sync.");
+										return Completable.complete();
+									}
+									final WalkWatermark walkWatermark = getWalkWatermark(index, watermark);
+									final IndexBuilder.Config config = new IndexBuilder.Config(ignoreFailures,
+											terminateAtFailureCount)
+											.withMaxInFlight(maxInFlightGroups)
+											.withFormat(indexFormat)
+											.withDeltaThreshold(indexDeltaThreshold)
+											.withRecordChecksums(indexChecksums)
+											.withCompression(indexCompression)
+											.withSharding(getIndexSharding())
+											.withUploads(minConcurrentUploads, maxConcurrentUploads);
+									return IndexBuilder.fromIndex(index, context, config)
+											.flatMap(indexBuilder -> indexBuilder.buildIndexFrom(
+													getDeployableArtifacts(index, context, walkWatermark)))
+											.flatMapCompletable(stats -> stats.getBuilder().finishAndUpload(stats, skipDeployIndex)
+													.andThen(saveWatermark(index, stats, walkWatermark)));
+								})));
 	}
 
+
 }
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BiConsumer;
+
+/**
+ * The union of several index lookups. The entries of all in-memory text lookups are merged into a single map up front, so
+ * that a lookup costs one hash probe no matter how many text indexes were loaded, while memory-mapped binary lookups are
+ * searched in place.
+ */
+final class UnionIndexLookup implements IndexLookup {
+	private final Map<String, String[]> merged;
+
+	private final List<IndexLookup> searched;
+
+	private final List<IndexLookup> members;
+
+	private UnionIndexLookup(@NotNull final Map<String, String[]> merged,
+			@NotNull final List<IndexLookup> searched,
+			@NotNull final List<IndexLookup> members) {
+		this.merged = merged;
+		this.searched = searched;
+		this.members = members;
+	}
+
+	static UnionIndexLookup of(@NotNull final List<IndexLookup> members) {
+		final Map<String, String[]> merged = new HashMap<>();
+		final List<IndexLookup> searched = new ArrayList<>();
+		for (IndexLookup member : flatten(members)) {
+			if (member instanceof EntryIndexLookup) {
+				((EntryIndexLookup) member).getEntries().forEach((key, filenames) ->
+						merged.merge(key, filenames, UnionIndexLookup::union));
+			} else {
+				searched.add(member);
+			}
+		}
+		return new UnionIndexLookup(merged, searched, Collections.unmodifiableList(new ArrayList<>(members)));
+	}
+
+	private static List<IndexLookup> flatten(@NotNull final List<IndexLookup> members) {
+		final List<IndexLookup> flattened = new ArrayList<>();
+		for (IndexLookup member : members) {
+			if (member instanceof UnionIndexLookup) {
+				flattened.addAll(flatten(((UnionIndexLookup) member).members));
+			} else {
+				flattened.add(member);
+			}
+		}
+		return flattened;
+	}
+
+	/**
+	 * Merge two sorted arrays of index entry lines, keeping one line per filename. When both arrays have a line for the same
+	 * filename, the right line is kept if it carries a checksum, since the right array belongs to the later index.
+	 *
+	 * @param left  sorted index entry lines
+	 * @param right sorted index entry lines
+	 * @return the sorted union
+	 */
+	static String[] union(@NotNull final String[] left, @NotNull final String[] right) {
+		if (left.length == 0) {
+			return right;
+		} else if (right.length == 0) {
+			return left;
+		}
+		final String[] union = new String[left.length + right.length];
+		int l = 0;
+		int r = 0;
+		int u = 0;
+		while (l < left.length || r < right.length) {
+			final int cmp = l == left.length ? 1 : r == right.length ? -1
+					: IndexRecord.filenameOf(left[l]).compareTo(IndexRecord.filenameOf(right[r]));
+			if (cmp < 0) {
+				union[u++] = left[l++];
+			} else if (cmp > 0) {
+				union[u++] = right[r++];
+			} else {
+				union[u++] = right[r].indexOf(IndexRecord.SEPARATOR) >= 0 ? right[r] : left[l];
+				l++;
+				r++;
+			}
+		}
+		if (u == union.length) {
+			return union;
+		}
+		final String[] trimmed = new String[u];
+		System.arraycopy(union, 0, trimmed, 0, u);
+		return trimmed;
+	}
+
+	@Override
+	public @Nullable String[] getFilenames(@NotNull final Path layoutPrefix) {
+		String[] filenames = merged.isEmpty() ? null : merged.get(IndexLookup.keyFor(layoutPrefix));
+		for (IndexLookup lookup : searched) {
+			final String[] found = lookup.getFilenames(layoutPrefix);
+			if (found != null) {
+				filenames = filenames == null ? found : union(filenames, found);
+			}
+		}
+		return filenames;
+	}
+
+	@Override
+	public int size() {
+		return merged.size() + searched.stream().mapToInt(IndexLookup::size).sum();
+	}
+
+	/**
+	 * Visit the entries of each member in turn, so the same key may be visited more than once.
+	 *
+	 * @param consumer the entry consumer
+	 */
+	@Override
+	public void forEach(@NotNull final BiConsumer<String, String[]> consumer) {
+		merged.forEach(consumer);
+		searched.forEach(lookup -> lookup.forEach(consumer));
+	}
+
+	@Override
+	public void close() throws IOException {
+		IOException error = null;
+		for (IndexLookup member : members) {
+			try {
+				member.close();
+			} catch (IOException e) {
+				error = e;
+			}
+		}
+		if (error != null) {
+			throw error;
+		}
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Mark Adamcin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package net.adamcin.blunderbuss.mojo;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persisted fingerprints of the local repository directories visited by the last successful sync, used to skip version
+ * directories that have not changed since then. Version directory fingerprints consist of the last modified time and the
+ * number of directory entries. Other directories only record the last modified time, which is enough to detect the
+ * creation or deletion of child directories. Since files can be overwritten in place without touching their directory,
+ * as when a SNAPSHOT is installed again, SNAPSHOT version directories are never skipped, and their fingerprints use the
+ * newest last modified time of the directory and its entries.
+ */
+public final class WalkWatermark {
+	private static final String INDEX_VERSION_KEY = "indexVersion";
+
+	private static final int NO_ENTRY_COUNT = -1;
+
+	private final Map<String, Fingerprint> previous;
+
+	private final @Nullable String previousIndexVersion;
+
+	private final Map<String, Fingerprint> current = new ConcurrentHashMap<>();
+
+	WalkWatermark(@NotNull final Map<String, Fingerprint> previous, @Nullable final String previousIndexVersion) {
+		this.previous = Collections.unmodifiableMap(previous);
+		this.previousIndexVersion = previousIndexVersion;
+	}
+
+	public @Nullable String getPreviousIndexVersion() {
+		return previousIndexVersion;
+	}
+
+	/**
+	 * Return a watermark that records the fingerprints of the current walk without skipping any directory, for an
+	 * execution whose index doesn't contain the entries of the directories that the previous fingerprints would skip.
+	 *
+	 * @return a watermark without previous fingerprints
+	 */
+	public WalkWatermark withoutPrevious() {
+		return new WalkWatermark(Collections.emptyMap(), null);
+	}
+
+	static final class Fingerprint {
+		private final long lastModified;
+
+		private final int entryCount;
+
+		Fingerprint(final long lastModified, final int entryCount) {
+			this.lastModified = lastModified;
+			this.entryCount = entryCount;
+		}
+
+		long getLastModified() {
+			return lastModified;
+		}
+
+		int getEntryCount() {
+			return entryCount;
+		}
+
+		boolean isVersionDir() {
+			return entryCount != NO_ENTRY_COUNT;
+		}
+	}
+
+	static String keyFor(@NotNull final Path localRepoPath, @NotNull final Path dir) {
+		return localRepoPath.relativize(dir).toString().replace(File.separatorChar, '/');
+	}
+
+	static boolean isSnapshotDirectory(@NotNull final Path dir) {
+		return dir.getFileName() != null && dir.getFileName().toString().endsWith("-SNAPSHOT");
+	}
+
+	/**
+	 * Get the newest last modified time of a directory and its entries.
+	 *
+	 * @param dir          the directory path
+	 * @param lastModified the last modified time of the directory
+	 * @return the newest last modified time
+	 * @throws IOException if the directory entries can't be read
+	 */
+	static long newestLastModified(@NotNull final Path dir, final long lastModified) throws IOException {
+		long newest = lastModified;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path entry : entries) {
+				newest = Math.max(newest, Files.getLastModifiedTime(entry).toMillis());
+			}
+		}
+		return newest;
+	}
+
+	static int countEntries(@NotNull final Path dir) throws IOException {
+		int count = 0;
+		try (DirectoryStream<Path> entries = Files.newDirectoryStream(dir)) {
+			for (Path ignored : entries) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Record the fingerprint of a directory that is not (yet) known to be a version directory.
+	 *
+	 * @param key   the directory key
+	 * @param attrs the directory attributes
+	 */
+	void recordDirectory(@NotNull final String key, @NotNull final BasicFileAttributes attrs) {
+		current.put(key, new Fingerprint(attrs.lastModifiedTime().toMillis(), NO_ENTRY_COUNT));
+	}
+
+	/**
+	 * Promote the fingerprint of a directory recorded by {@link #recordDirectory(String, BasicFileAttributes)} to a version
+	 * directory fingerprint, keeping the last modified time observed before its entries were visited.
+	 *
+	 * @param key the directory key
+	 * @param dir the directory path
+	 * @throws IOException if the directory entries can't be counted
+	 */
+	void recordVersionDirectory(@NotNull final String key, @NotNull final Path dir) throws IOException {
+		recordVersionDirectory(key, dir, countEntries(dir));
+	}
+
+	/**
+	 * Promote the fingerprint of a directory using an entry count that was already captured during discovery.
+	 *
+	 * @param key        the directory key
+	 * @param dir        the directory path
+	 * @param entryCount the number of directory entries
+	 */
+	void recordVersionDirectory(@NotNull final String key, @NotNull final Path dir, final int entryCount) {
+		final Fingerprint visited = current.get(key);
+		long lastModified;
+		if (visited != null) {
+			lastModified = visited.getLastModified();
+		} else {
+			lastModified = dir.toFile().lastModified();
+		}
+		if (isSnapshotDirectory(dir)) {
+			try {
+				lastModified = newestLastModified(dir, lastModified);
+			} catch (IOException e) {
+				// keep the directory time, which at worst makes the next run walk the repository
+			}
+		}
+		current.put(key, new Fingerprint(lastModified, entryCount));
+	}
+
+	/**
+	 * Check whether a directory was fingerprinted as a version directory in the last successful run and is unchanged since.
+	 * If so, the previous fingerprint is carried over to the current run. SNAPSHOT version directories are never skipped.
+	 *
+	 * @param key   the directory key
+	 * @param dir   the directory path
+	 * @param attrs the directory attributes
+	 * @return true if the directory can be skipped
+	 * @throws IOException if the directory entries can't be counted
+	 */
+	boolean skipUnchangedVersionDirectory(@NotNull final String key,
+			@NotNull final Path dir,
+			@NotNull final BasicFileAttributes attrs) throws IOException {
+		if (isSnapshotDirectory(dir)) {
+			return false;
+		}
+		final Fingerprint fingerprint = previous.get(key);
+		if (fingerprint != null && fingerprint.isVersionDir()
+				&& fingerprint.getLastModified() == attrs.lastModifiedTime().toMillis()
+				&& fingerprint.getEntryCount() == countEntries(dir)) {
+			current.put(key, fingerprint);
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Check every directory recorded in the last successful run without walking the tree. Because entries can't be added to
+	 * or removed from a directory without changing its last modified time, this detects any change to the repository that
+	 * would produce a different set of artifact groups. The entries of SNAPSHOT version directories are also checked, to
+	 * detect files that were overwritten in place.
+	 *
+	 * @param localRepoPath the local repository path
+	 * @return true if there were recorded fingerprints and all of them still match
+	 */
+	boolean isRepositoryUnchanged(@NotNull final Path localRepoPath) {
+		if (previous.isEmpty()) {
+			return false;
+		}
+		for (Map.Entry<String, Fingerprint> entry : previous.entrySet()) {
+			final Path dir = entry.getKey().isEmpty() ? localRepoPath : localRepoPath.resolve(entry.getKey());
+			try {
+				final BasicFileAttributes attrs = Files.readAttributes(dir, BasicFileAttributes.class);
+				if (!attrs.isDirectory()) {
+					return false;
+				}
+				final long lastModified = entry.getValue().isVersionDir() && isSnapshotDirectory(dir)
+						? newestLastModified(dir, attrs.lastModifiedTime().toMillis())
+						: attrs.lastModifiedTime().toMillis();
+				if (lastModified != entry.getValue().getLastModified()) {
+					return false;
+				}
+			} catch (IOException e) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	public static WalkWatermark load(@NotNull final Path watermarkFile) throws IOException {
+		final Map<String, Fingerprint> fingerprints = new HashMap<>();
+		String indexVersion = null;
+		if (Files.isRegularFile(watermarkFile)) {
+			try (BufferedReader reader = Files.newBufferedReader(watermarkFile, StandardCharsets.UTF_8)) {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					final String[] parts = line.split("\t", 3);
+					if (parts.length == 2 && INDEX_VERSION_KEY.equals(parts[0])) {
+						indexVersion = parts[1];
+					} else if (parts.length == 3) {
+						fingerprints.put(parts[2], new Fingerprint(Long.parseLong(parts[0]), Integer.parseInt(parts[1])));
+					}
+				}
+			}
+		}
+		return new WalkWatermark(fingerprints, indexVersion);
+	}
+
+	public void save(@NotNull final Path watermarkFile, @Nullable final String indexVersion) throws IOException {
+		if (watermarkFile.getParent() != null) {
+			Files.createDirectories(watermarkFile.getParent());
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(watermarkFile, StandardCharsets.UTF_8)) {
+			if (indexVersion != null) {
+				writer.write(INDEX_VERSION_KEY + "\t" + indexVersion);
+				writer.newLine();
+			}
+			for (Map.Entry<String, Fingerprint> entry : new TreeMap<>(current).entrySet()) {
+				writer.write(entry.getValue().getLastModified() + "\t" + entry.getValue().getEntryCount() + "\t" + entry.getKey());
+				writer.newLine();
+			}
+		}
+	}
+}
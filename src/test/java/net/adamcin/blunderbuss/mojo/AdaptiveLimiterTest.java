@@ -0,0 +1,114 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveLimiterTest {
+
+	@Test
+	void clampsInitialLimit() {
+		assertEquals(4, new AdaptiveLimiter(1, 4, 16, new SystemStreamLog()).getLimit(), "expect max");
+		assertEquals(2, new AdaptiveLimiter(2, 4, 1, new SystemStreamLog()).getLimit(), "expect min");
+		assertEquals(3, new AdaptiveLimiter(3, 1, 1, new SystemStreamLog()).getMax(), "expect max raised to min");
+	}
+
+	@Test
+	void increasesAdditively() throws Exception {
+		final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 4, 1, new SystemStreamLog());
+		limiter.acquire();
+		limiter.release(1000L, 1000L, false);
+		assertEquals(2, limiter.getLimit(), "expect one more after one full window");
+		limiter.acquire();
+		limiter.release(1000L, 1000L, false);
+		assertEquals(2, limiter.getLimit(), "expect half a step after half a window");
+		for (int i = 0; i < 100; i++) {
+			limiter.acquire();
+			limiter.release(1000L, 1000L, false);
+		}
+		assertEquals(4, limiter.getLimit(), "expect limit capped at max");
+		assertEquals(4, limiter.getPeak(), "expect peak");
+		assertEquals(0, limiter.getInFlight(), "expect nothing in flight");
+	}
+
+	@Test
+	void decreasesOncePerWindow() throws Exception {
+		final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 8, 8, new SystemStreamLog());
+		for (int i = 0; i < 8; i++) {
+			limiter.acquire();
+		}
+		limiter.release(1000L, 1000L, true);
+		assertEquals(4, limiter.getLimit(), "expect limit halved");
+		limiter.release(1000L, 1000L, true);
+		limiter.release(1000L, 1000L, true);
+		assertEquals(4, limiter.getLimit(), "expect same window ignored");
+		for (int i = 0; i < 3; i++) {
+			limiter.release(1000L, 1000L, true);
+		}
+		assertEquals(2, limiter.getLimit(), "expect halved again in the next window");
+		limiter.release(1000L, 1000L, true);
+		limiter.release(1000L, 1000L, true);
+		for (int i = 0; i < 20; i++) {
+			limiter.acquire();
+			limiter.release(1000L, 1000L, true);
+		}
+		assertEquals(1, limiter.getLimit(), "expect limit floored at min");
+	}
+
+	@Test
+	void decreasesOnRisingLatency() throws Exception {
+		final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 4, 4, new SystemStreamLog());
+		for (int i = 0; i < 20; i++) {
+			limiter.acquire();
+			limiter.release(1000L, 1000L, false);
+		}
+		assertEquals(4, limiter.getLimit(), "expect max with steady latency");
+		for (int i = 0; i < 5; i++) {
+			limiter.acquire();
+			limiter.release(10000L, 1000L, false);
+		}
+		assertEquals(3, limiter.getLimit(), "expect limit lowered by latency");
+	}
+
+	@Test
+	void comparesLatencyOfSimilarSizes() throws Exception {
+		final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 4, 4, new SystemStreamLog());
+		for (int i = 0; i < 20; i++) {
+			limiter.acquire();
+			limiter.release(1000L, 1000L, false);
+		}
+		for (int i = 0; i < 20; i++) {
+			limiter.acquire();
+			limiter.release(1000000L, 1000000L, false);
+		}
+		assertEquals(4, limiter.getLimit(), "expect large uploads after small ones to keep the limit");
+		assertEquals(AdaptiveLimiter.sizeClassOf(1000L), AdaptiveLimiter.sizeClassOf(2000L), "expect same size class");
+		assertEquals(AdaptiveLimiter.SIZE_CLASSES - 1, AdaptiveLimiter.sizeClassOf(Long.MAX_VALUE), "expect last class");
+	}
+
+	@Test
+	void blocksAtLimit() throws Exception {
+		final AdaptiveLimiter limiter = new AdaptiveLimiter(1, 1, 1, new SystemStreamLog());
+		limiter.acquire();
+		final CountDownLatch acquired = new CountDownLatch(1);
+		final Thread waiter = new Thread(() -> {
+			try {
+				limiter.acquire();
+				acquired.countDown();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		});
+		waiter.start();
+		assertFalse(acquired.await(100L, TimeUnit.MILLISECONDS), "expect second acquire to wait");
+		limiter.release(1000L, 1000L, false);
+		assertTrue(acquired.await(5L, TimeUnit.SECONDS), "expect second acquire after release");
+		waiter.join();
+	}
+}
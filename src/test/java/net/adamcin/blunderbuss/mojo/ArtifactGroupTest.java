@@ -182,6 +182,24 @@ class ArtifactGroupTest {
 		assertEquals(preGroup.isTerminateOnFailure(), group.isTerminateOnFailure(), "expect equal isTerminateOnFailure");
 	}
 
+	@ParameterizedTest
+	@CsvSource({
+			"com, widget, 1, , 1009",
+			"com, widget, 1, widget-1.pom, 26",
+			"com, widget, v12345, , 1006",
+			"com.ex.ex, widget, 1-SNAPSHOT, widget-1-SNAPSHOT-reversed.txt, 1020"
+	})
+	void sumsDeployableSize(String groupId, String artifactId, String version, String indexedFilename, long expectSize) {
+		final Path layoutPrefix = getLayoutPrefix(groupId, artifactId, version);
+		final Artifact artifact = getMockPomArtifact(groupId, artifactId, version);
+		final Set<Path> indexed = indexedFilename == null
+				? Collections.emptySet()
+				: Collections.singleton(Paths.get(indexedFilename));
+		final ArtifactGroup group = new ArtifactGroup(layoutPrefix, artifact, Collections.emptyMap(), indexed, false)
+				.findDeployables(handlers);
+		assertEquals(expectSize, group.getDeployableSize(), "expect size of deployables not indexed");
+	}
+
 	@ParameterizedTest
 	@CsvSource({
 			"com, widget, 1, widget-1.pom widget-1.txt widget-1-reversed.txt, 0",
@@ -253,4 +271,45 @@ class ArtifactGroupTest {
 		assertEquals(group.getIndexed(), secondGroup.getIndexed(), "expect equal indexed");
 		assertEquals(group.getDeployables(), secondGroup.getDeployables(), "expect equal deployables");
 	}
-}
\ No newline at end of file
+
+	@ParameterizedTest
+	@CsvSource({
+			"my-feed, widget-1.pom widget-1.txt, widget-1-reversed.txt",
+			"central, widget-1.pom widget-1-reversed.txt, widget-1.txt",
+			"central my-feed, widget-1.pom, widget-1.txt widget-1-reversed.txt",
+			"other-feed, widget-1.pom widget-1.txt widget-1-reversed.txt, "
+	})
+	void skipsDeployablesByRemoteOrigin(String skipRepositoryIds, String deployableFilenames, String indexedFilenames) {
+		final Path layoutPrefix = getLayoutPrefix("com", "widget", "1");
+		final Artifact artifact = getMockPomArtifact("com", "widget", "1");
+		final Set<String> skipIds = Stream.of(skipRepositoryIds.split("\\s+")).collect(Collectors.toSet());
+		ArtifactGroup group = new ArtifactGroup(layoutPrefix, artifact).findDeployables(handlers, skipIds);
+		assertEquals(Stream.of(deployableFilenames.split("\\s+")).map(Paths::get).collect(Collectors.toSet()),
+				group.getDeployables().keySet(), "expect same deployables");
+		final Set<Path> expectIndexed = indexedFilenames == null
+				? Collections.emptySet()
+				: Stream.of(indexedFilenames.split("\\s+")).map(Paths::get).collect(Collectors.toSet());
+		assertEquals(expectIndexed, group.getIndexed(), "expect same indexed");
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"'widget-1.txt', false, false",
+			"'widget-1.txt', true, false",
+			"'widget-1.txt\t13\t88110012c137940ac22203085640b7b6e29b0f4a', true, false",
+			"'widget-1.txt\t13\t88110012c137940ac22203085640b7b6e29b0f4b', false, false",
+			"'widget-1.txt\t13\t88110012c137940ac22203085640b7b6e29b0f4b', true, true",
+			"'widget-1.txt\t14\t88110012c137940ac22203085640b7b6e29b0f4a', true, true",
+	})
+	void verifiesIndexedContent(String line, boolean verifyContent, boolean expectDeployable) {
+		final Path layoutPrefix = getLayoutPrefix("com", "widget", "1");
+		final Artifact artifact = getMockPomArtifact("com", "widget", "1");
+		final ArtifactGroup group = new ArtifactGroup(layoutPrefix, artifact).findDeployables(handlers)
+				.filteredByIndex(new String[]{line}, verifyContent);
+		final Path filename = Paths.get("widget-1.txt");
+		assertEquals(expectDeployable, group.getDeployables().containsKey(filename), "expect deployable");
+		assertEquals(!expectDeployable, group.getIndexed().contains(filename), "expect indexed");
+		assertEquals(!expectDeployable && line.contains("\t") ? line : null, group.getIndexRecords().get(filename),
+				"expect index record");
+	}
+}
@@ -0,0 +1,173 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryIndexTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	static Map<String, List<String>> sampleEntries() {
+		final Map<String, List<String>> entries = new LinkedHashMap<>();
+		for (int i = 0; i < 100; i++) {
+			final String version = Integer.toString(i);
+			entries.put("com/example/widget/" + version,
+					Arrays.asList("widget-" + version + ".pom", "widget-" + version + ".jar"));
+		}
+		entries.put("com/example/widget/1-SNAPSHOT", Collections.emptyList());
+		entries.put("net/ex/gadget/1", Collections.singletonList("gadget-1.pom"));
+		return entries;
+	}
+
+	Path writeSample(final String name) throws Exception {
+		final Path binFile = baseDir.resolve(name);
+		try (OutputStream output = Files.newOutputStream(binFile)) {
+			BinaryIndex.write(output, sampleEntries());
+		}
+		return binFile;
+	}
+
+	@Test
+	void findsEveryKey() throws Exception {
+		try (BinaryIndex index = BinaryIndex.map(writeSample("findsEveryKey.bin"))) {
+			assertEquals(102, index.size(), "expect record count");
+			for (Map.Entry<String, List<String>> entry : sampleEntries().entrySet()) {
+				final String[] expected = entry.getValue().stream().sorted().toArray(String[]::new);
+				assertArrayEquals(expected, index.getFilenames(Paths.get(entry.getKey())),
+						"expect filenames for " + entry.getKey());
+			}
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"a/b/c",
+			"com/example/widget",
+			"com/example/widget/",
+			"com/example/widget/100",
+			"com/example/widget/1-",
+			"com/example/widget/10a",
+			"com/example/widget/55/x",
+			"net/ex/gadget/0",
+			"net/ex/gadget/2",
+			"zzz/zzz/zzz"
+	})
+	void missesAbsentKeys(String key) throws Exception {
+		try (BinaryIndex index = BinaryIndex.map(writeSample("missesAbsentKeys.bin"))) {
+			assertEquals(-1, index.find(key.getBytes(StandardCharsets.UTF_8)), "expect no record for " + key);
+		}
+	}
+
+	@Test
+	void visitsRecordsInOrder() throws Exception {
+		final Map<String, List<String>> visited = new TreeMap<>();
+		try (BinaryIndex index = BinaryIndex.map(writeSample("visitsRecordsInOrder.bin"))) {
+			index.forEach((key, filenames) -> visited.put(key, Arrays.asList(filenames)));
+		}
+		final Map<String, List<String>> expected = new TreeMap<>();
+		sampleEntries().forEach((key, filenames) -> expected.put(key,
+				Arrays.asList(filenames.stream().sorted().toArray(String[]::new))));
+		assertEquals(expected, visited, "expect all records");
+	}
+
+	@Test
+	void loadsBinaryEntryFromJar() throws Exception {
+		final Path binFile = writeSample("loadsBinaryEntryFromJar.bin");
+		final File jarFile = baseDir.resolve("loadsBinaryEntryFromJar.jar").toFile();
+		try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile), new Manifest())) {
+			jarOut.putNextEntry(new JarEntry(BinaryIndex.ENTRY_NAME));
+			Files.copy(binFile, jarOut);
+			jarOut.closeEntry();
+		}
+		try (IndexLookup lookup = IndexLookup.load(jarFile)) {
+			assertTrue(lookup instanceof BinaryIndex, "expect binary index");
+			assertArrayEquals(new String[]{"gadget-1.pom"}, lookup.getFilenames(Paths.get("net/ex/gadget/1")),
+					"expect filenames");
+			assertNull(lookup.getFilenames(Paths.get("net/ex/gadget/2")), "expect no entry");
+		}
+	}
+
+	@Test
+	void prefersBinaryEntryWhenPresent() throws Exception {
+		final Path binFile = writeSample("prefersBinaryEntryWhenPresent.bin");
+		final File jarFile = baseDir.resolve("prefersBinaryEntryWhenPresent.jar").toFile();
+		try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile), new Manifest())) {
+			jarOut.putNextEntry(new JarEntry(BinaryIndex.ENTRY_NAME));
+			Files.copy(binFile, jarOut);
+			jarOut.closeEntry();
+			// the same record as a text entry, as written by the BOTH format
+			jarOut.putNextEntry(new JarEntry("net/ex/gadget/1.txt"));
+			jarOut.write("gadget-1.pom\n".getBytes(StandardCharsets.UTF_8));
+			jarOut.closeEntry();
+		}
+		try (IndexLookup lookup = IndexLookup.load(jarFile)) {
+			assertTrue(lookup instanceof BinaryIndex, "expect binary entry");
+			assertArrayEquals(new String[]{"gadget-1.pom"}, lookup.getFilenames(Paths.get("net/ex/gadget/1")),
+					"expect filenames");
+		}
+		assertFalse(IndexBuilder.isBinaryOnly(jarFile), "expect not binary only");
+
+		final Path indexDir = baseDir.resolve("prefersBinaryEntryWhenPresent");
+		FileUtils.deleteDirectory(indexDir.toFile());
+		IndexBuilder.extractChain(Collections.singletonList(jarFile), indexDir);
+		assertEquals(Collections.singletonList("gadget-1.pom"),
+				Files.readAllLines(indexDir.resolve("net/ex/gadget/1.txt"), StandardCharsets.UTF_8),
+				"expect text entry");
+		assertTrue(Files.exists(indexDir.resolve("com/example/widget/1.txt")), "expect expanded binary entry");
+		assertFalse(Files.exists(indexDir.resolve(BinaryIndex.ENTRY_NAME)), "expect binary entry deleted");
+	}
+
+	@Test
+	void roundTripsTextEntries() throws Exception {
+		final Path testOut = baseDir.resolve("roundTripsTextEntries");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Path textDir = testOut.resolve("text");
+		Files.createDirectories(textDir.resolve("com/ex/widget"));
+		Files.write(textDir.resolve("com/ex/widget/1.txt"), Arrays.asList("widget-1.pom", "widget-1.jar"),
+				StandardCharsets.UTF_8);
+		Files.createDirectories(textDir.resolve("META-INF"));
+		Files.write(textDir.resolve("META-INF/ignored.txt"), Collections.singletonList("nope"), StandardCharsets.UTF_8);
+		final Path binFile = testOut.resolve("index.bin");
+		BinaryIndex.writeFromDir(textDir, binFile);
+
+		try (BinaryIndex index = BinaryIndex.map(binFile)) {
+			assertEquals(1, index.size(), "expect one record");
+		}
+
+		final Path expandDir = testOut.resolve("expanded");
+		BinaryIndex.expandToDir(binFile, expandDir);
+		assertEquals(Arrays.asList("widget-1.jar", "widget-1.pom"),
+				Files.readAllLines(expandDir.resolve("com/ex/widget/1.txt"), StandardCharsets.UTF_8),
+				"expect expanded entry");
+	}
+}
@@ -0,0 +1,52 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployerException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeployFailureTest {
+
+	static class StatusException extends IOException {
+		private final int statusCode;
+
+		StatusException(final int statusCode) {
+			super("request failed");
+			this.statusCode = statusCode;
+		}
+
+		public int getStatusCode() {
+			return statusCode;
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"'Failed to transfer file: http://repo/a.jar. Return code is: 409, ReasonPhrase: Conflict.', CONFLICT",
+			"'Transfer failed for https://repo/a.jar 400 Bad Request', CONFLICT",
+			"'Failed to deploy artifacts: status code: 403, reason phrase: Forbidden (403)', FORBIDDEN",
+			"'Authentication failed for http://repo/a.jar 401 Unauthorized', FORBIDDEN",
+			"'status code: 429, reason phrase: Too Many Requests', THROTTLED",
+			"'Return code is: 502, ReasonPhrase: Bad Gateway.', SERVER_ERROR",
+			"'Connection reset', OTHER"
+	})
+	void classifiesMessages(final String message, final DeployFailure expected) {
+		assertEquals(expected, DeployFailure.classify(
+				new ArtifactDeployerException("deploy failed", new IOException(message))), "expect classification");
+	}
+
+	@Test
+	void classifiesReportedStatus() {
+		assertEquals(DeployFailure.THROTTLED, DeployFailure.classify(
+				new ArtifactDeployerException("deploy failed", new StatusException(429))), "expect throttled");
+		assertEquals(DeployFailure.OTHER, DeployFailure.classify(null), "expect other for null");
+		assertTrue(DeployFailure.SERVER_ERROR.isTransient(), "expect server error is transient");
+		assertFalse(DeployFailure.CONFLICT.isTransient(), "expect conflict is not transient");
+	}
+}
@@ -0,0 +1,237 @@
+package net.adamcin.blunderbuss.mojo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployerException;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ExistenceProbeTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	private final Map<String, Long> remoteLengths = new ConcurrentHashMap<>();
+
+	private final AtomicInteger heads = new AtomicInteger();
+
+	private HttpServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::serve);
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+	}
+
+	void serve(final HttpExchange exchange) throws IOException {
+		if ("HEAD".equals(exchange.getRequestMethod())) {
+			heads.incrementAndGet();
+		}
+		final Long length = remoteLengths.get(exchange.getRequestURI().getPath());
+		if (length == null) {
+			exchange.sendResponseHeaders(404, -1);
+		} else {
+			exchange.getResponseHeaders().add("Content-Length", String.valueOf(length));
+			exchange.sendResponseHeaders(200, -1);
+		}
+		exchange.close();
+	}
+
+	ArtifactRepository mockRepository(final String url) {
+		final ArtifactRepository repo = mock(ArtifactRepository.class);
+		when(repo.getId()).thenReturn("test");
+		when(repo.getUrl()).thenReturn(url);
+		when(repo.pathOf(any())).thenAnswer(call -> {
+			final Artifact artifact = call.getArgument(0);
+			return "com/example/widget/1.0/widget-1.0." + artifact.getType();
+		});
+		return repo;
+	}
+
+	Map<Path, Artifact> writeDeployables(final Path dir, final String... types) throws Exception {
+		final Map<Path, Artifact> deployables = new LinkedHashMap<>();
+		for (String type : types) {
+			final Path file = dir.resolve("widget-1.0." + type);
+			Files.createDirectories(dir);
+			Files.write(file, ("content of " + type).getBytes(StandardCharsets.UTF_8));
+			final Artifact artifact = new DefaultArtifact("com.example", "widget", "1.0", "compile", type, "",
+					handlers.getArtifactHandler(type));
+			artifact.setFile(file.toFile());
+			deployables.put(file.getFileName(), artifact);
+		}
+		return deployables;
+	}
+
+	@Test
+	void probesHttpRepository() throws Exception {
+		final Path testOut = baseDir.resolve("probesHttpRepository");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Map<Path, Artifact> deployables = writeDeployables(testOut, "pom", "jar", "zip");
+		remoteLengths.put("/repo/com/example/widget/1.0/widget-1.0.pom",
+				deployables.get(Paths.get("widget-1.0.pom")).getFile().length());
+		remoteLengths.put("/repo/com/example/widget/1.0/widget-1.0.jar", 1L);
+
+		final ArtifactRepository repo = mockRepository("http://127.0.0.1:" + server.getAddress().getPort() + "/repo");
+		assertEquals(Collections.singleton(Paths.get("widget-1.0.pom")),
+				new ExistenceProbe(4, new SystemStreamLog()).probe(repo, deployables),
+				"expect only the file with the same length to exist");
+		assertEquals(3, heads.get(), "expect one HEAD request per file");
+	}
+
+	@Test
+	void recordsFailedTrialProbe() throws Exception {
+		final Path testOut = baseDir.resolve("recordsFailedTrialProbe");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Map<Path, Artifact> deployables = writeDeployables(testOut, "pom");
+		final int closedPort;
+		try (ServerSocket socket = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"))) {
+			closedPort = socket.getLocalPort();
+		}
+		final ArtifactRepository repo = mockRepository("http://127.0.0.1:" + closedPort + "/repo");
+		final RepositoryGuard guard = new RepositoryGuard("test",
+				new RepositoryGuard.Settings(0.0, 0, 0L, 0L, 1, 10L), new SystemStreamLog());
+		guard.record(guard.acquire(), 0L, true);
+		assertTrue(guard.isOpen(), "expect breaker open");
+
+		final ExistenceProbe probe = new ExistenceProbe(1, new SystemStreamLog());
+		assertEquals(ExistenceProbe.Existence.UNKNOWN, probe.check(repo, deployables.values().iterator().next(), guard),
+				"expect unknown after connection failure");
+		assertTrue(guard.isOpen(), "expect breaker reopened by failed trial");
+		final CompletableFuture<Boolean> next = CompletableFuture.supplyAsync(guard::acquire);
+		assertTrue(next.get(5L, TimeUnit.SECONDS), "expect next trial instead of waiting for the failed trial forever");
+	}
+
+	@Test
+	void probesFileRepository() throws Exception {
+		final Path testOut = baseDir.resolve("probesFileRepository");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Map<Path, Artifact> deployables = writeDeployables(testOut.resolve("local"), "pom", "jar");
+		final Path remoteJar = testOut.resolve("remote/com/example/widget/1.0/widget-1.0.jar");
+		Files.createDirectories(remoteJar.getParent());
+		Files.write(remoteJar, new byte[]{1});
+
+		final ArtifactRepository repo = mockRepository(testOut.resolve("remote").toUri().toString());
+		assertEquals(Collections.singleton(Paths.get("widget-1.0.jar")),
+				new ExistenceProbe(2, new SystemStreamLog()).probe(repo, deployables), "expect jar to exist");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void deploysOnlyMissingFiles() throws Exception {
+		final Path testOut = baseDir.resolve("deploysOnlyMissingFiles");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Map<Path, Artifact> deployables = writeDeployables(testOut, "pom", "jar");
+		remoteLengths.put("/repo/com/example/widget/1.0/widget-1.0.pom",
+				deployables.get(Paths.get("widget-1.0.pom")).getFile().length());
+
+		final ArtifactRepository repo = mockRepository("http://127.0.0.1:" + server.getAddress().getPort() + "/repo");
+		final ArtifactResolver resolver = mock(ArtifactResolver.class);
+		final ArtifactDeployer deployer = mock(ArtifactDeployer.class);
+		final ProjectBuildingRequest buildRequest = mock(ProjectBuildingRequest.class);
+		final Context context = new Context(resolver, deployer, repo, null, buildRequest, testOut,
+				new SystemStreamLog(), new ExistenceProbe(2, new SystemStreamLog()));
+
+		context.syncAll(Gav.of("com.example", "widget", "1.0"), deployables);
+		verify(deployer).deploy(eq(buildRequest), eq(repo), argThat((Collection<Artifact> artifacts) ->
+				artifacts.size() == 1 && "jar".equals(artifacts.iterator().next().getType())));
+		verify(resolver, never()).resolveArtifact(any(ProjectBuildingRequest.class), any(Artifact.class));
+
+		remoteLengths.put("/repo/com/example/widget/1.0/widget-1.0.jar",
+				deployables.get(Paths.get("widget-1.0.jar")).getFile().length());
+		context.syncAll(Gav.of("com.example", "widget", "1.0"), deployables);
+		verify(deployer).deploy(any(ProjectBuildingRequest.class), any(ArtifactRepository.class), any(Collection.class));
+		assertTrue(heads.get() >= 4, "expect files probed on each sync");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void checksFilesAfterFailedDeploy() throws Exception {
+		final Path testOut = baseDir.resolve("checksFilesAfterFailedDeploy");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Map<Path, Artifact> deployables = writeDeployables(testOut, "pom", "jar");
+		remoteLengths.put("/repo/com/example/widget/1.0/widget-1.0.pom",
+				deployables.get(Paths.get("widget-1.0.pom")).getFile().length());
+
+		final ArtifactRepository repo = mockRepository("http://127.0.0.1:" + server.getAddress().getPort() + "/repo");
+		final ArtifactResolver resolver = mock(ArtifactResolver.class);
+		final ArtifactDeployer deployer = mock(ArtifactDeployer.class);
+		final ProjectBuildingRequest buildRequest = mock(ProjectBuildingRequest.class);
+		doThrow(new ArtifactDeployerException("deploy failed",
+				new IOException("Return code is: 409, ReasonPhrase: Conflict.")))
+				.when(deployer).deploy(eq(buildRequest), eq(repo), argThat((Collection<Artifact> artifacts) ->
+				artifacts.size() == 2));
+		final Context context = new Context(resolver, deployer, repo, null, buildRequest, testOut,
+				new SystemStreamLog(), new ExistenceProbe(0, new SystemStreamLog()));
+
+		context.syncAll(Gav.of("com.example", "widget", "1.0"), deployables);
+		assertEquals(2, heads.get(), "expect only the fallback to probe each file");
+		verify(deployer).deploy(eq(buildRequest), eq(repo), argThat((Collection<Artifact> artifacts) ->
+				artifacts.size() == 1 && "jar".equals(artifacts.iterator().next().getType())));
+		verify(resolver, never()).resolveArtifact(any(ProjectBuildingRequest.class), any(Artifact.class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void reportsClassifiedFailure() throws Exception {
+		final Path testOut = baseDir.resolve("reportsClassifiedFailure");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Map<Path, Artifact> deployables = writeDeployables(testOut, "jar");
+
+		final ArtifactRepository repo = mockRepository("http://127.0.0.1:" + server.getAddress().getPort() + "/repo");
+		final ArtifactDeployer deployer = mock(ArtifactDeployer.class);
+		doThrow(new ArtifactDeployerException("deploy failed",
+				new IOException("status code: 503, reason phrase: Service Unavailable")))
+				.when(deployer).deploy(any(ProjectBuildingRequest.class), any(ArtifactRepository.class), any(Collection.class));
+		final Context context = new Context(mock(ArtifactResolver.class), deployer, repo, null,
+				mock(ProjectBuildingRequest.class), testOut, new SystemStreamLog(), null);
+
+		final Context.SyncFailure failure = assertThrows(Context.SyncFailure.class,
+				() -> context.syncAll(Gav.of("com.example", "widget", "1.0"), deployables));
+		assertEquals(DeployFailure.SERVER_ERROR, failure.getFailure(), "expect server error");
+	}
+}
@@ -5,9 +5,13 @@ import org.apache.maven.project.MavenProject;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.CsvSource;
 
+import java.nio.file.Paths;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -98,4 +102,37 @@ class GavTest {
 			assertNotEquals(gav.hashCode(), otherGav.hashCode(), "expect hashCode not equals");
 		}
 	}
-}
\ No newline at end of file
+
+	@ParameterizedTest(name = "Gav interned names {0}:{1}:{2}")
+	@CsvSource({
+			"mygroup, myartifact, 1.0"
+	})
+	void internsNames(String groupId, String artifactId, String version) {
+		final Gav.Interner interner = new Gav.Interner();
+		final Gav gav = interner.of(new String(groupId), new String(artifactId), version);
+		final Gav otherGav = interner.of(new String(groupId), new String(artifactId), "2.0");
+		assertSame(gav.getGroupId(), otherGav.getGroupId(), "expect interned groupId");
+		assertSame(gav.getArtifactId(), otherGav.getArtifactId(), "expect interned artifactId");
+		assertEquals(new Gav(groupId, artifactId, version).hashCode(), gav.hashCode(), "expect hashCode equals");
+	}
+
+	@ParameterizedTest(name = "Gav fromLayoutPrefix {0}")
+	@CsvSource({
+			"com/widget/1, com, widget, 1",
+			"com/ex/widget/1-SNAPSHOT, com.ex, widget, 1-SNAPSHOT",
+			"net/ex/ex/widget/v12345, net.ex.ex, widget, v12345"
+	})
+	void parsesLayoutPrefix(String layoutPrefix, String groupId, String artifactId, String version) {
+		final Gav gav = Gav.fromLayoutPrefix(Paths.get(layoutPrefix));
+		assertEquals(Gav.of(groupId, artifactId, version), gav, "expect equal gav");
+	}
+
+	@ParameterizedTest(name = "Gav fromLayoutPrefix {0} fails")
+	@CsvSource({
+			"widget/1",
+			"1"
+	})
+	void parsesLayoutPrefixFails(String layoutPrefix) {
+		assertThrows(IllegalArgumentException.class, () -> Gav.fromLayoutPrefix(Paths.get(layoutPrefix)));
+	}
+}
@@ -0,0 +1,504 @@
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.schedulers.Schedulers;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployerException;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolverException;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+class IndexBuilderTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private final Path repo1Dir = Paths.get("src/test/resources/repo1").toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	Context newContext(final Path tempDir) throws Exception {
+		Files.createDirectories(tempDir);
+		return new Context(mock(ArtifactResolver.class), mock(ArtifactDeployer.class), mock(ArtifactRepository.class), null,
+				mock(ProjectBuildingRequest.class), tempDir, new SystemStreamLog());
+	}
+
+	Artifact writeIndexJar(final Path dir, final String version, @Nullable final String baseVersion,
+			final String entryName, final String contents) throws Exception {
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (baseVersion != null) {
+			manifest.getMainAttributes().putValue(Index.BASE_VERSION_ATTRIBUTE, baseVersion);
+		}
+		Files.createDirectories(dir);
+		final File jarFile = dir.resolve("index-" + version + ".jar").toFile();
+		try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile), manifest)) {
+			jarOut.putNextEntry(new JarEntry(entryName));
+			jarOut.write(contents.getBytes(StandardCharsets.UTF_8));
+			jarOut.closeEntry();
+		}
+		final Artifact artifact = new DefaultArtifact("com.example", "index", version,
+				"test", "jar", "", handlers.getArtifactHandler("jar"));
+		artifact.setFile(jarFile);
+		return artifact;
+	}
+
+	Index newIndex(final Artifact head, final List<Artifact> bases) {
+		final Artifact pom = new DefaultArtifact("com.example", "index", head.getVersion(),
+				"import", "pom", "", handlers.getArtifactHandler("pom"));
+		return new Index(new SystemStreamLog(), head, pom, bases, true, null, Collections.emptyList());
+	}
+
+	ArtifactGroup newGroup(final String layoutPrefix) {
+		return LocalRepoWalker.walkLocalRepo(handlers, repo1Dir, null)
+				.filter(group -> group.getLayoutPrefix().equals(Paths.get(layoutPrefix)))
+				.map(group -> group.findDeployables(handlers))
+				.blockingFirst();
+	}
+
+	@Test
+	void buildsDeltaIndex() throws Throwable {
+		final Path testOut = baseDir.resolve("buildsDeltaIndex");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt", "widget-1.pom");
+		final Index index = newIndex(full, Collections.emptyList());
+		assertEquals(0, index.getDeltaDepth(), "expect full index");
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(index, newContext(testOut.resolve("tmp")),
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1).withDeltaThreshold(2)).blockingGet();
+		assertEquals("1", builder.getDeltaBaseVersion(), "expect delta over version 1");
+
+		final IndexBuilder.Stats stats = builder.getUploadFunction().apply(newGroup("com/ex/widget/1"));
+		assertTrue(stats.isDirty(), "expect dirty");
+		builder.finishAndUpload(stats, true).blockingAwait();
+
+		final File deltaJar = builder.getArtifacts().get(1).getFile();
+		assertEquals(new HashSet<>(Arrays.asList("META-INF/", "META-INF/MANIFEST.MF", "com/", "com/ex/",
+				"com/ex/widget/", "com/ex/widget/1.txt")), JarUtilsTest.getJarEntrySet(deltaJar), "expect only changed entries");
+		try (JarFile jar = new JarFile(deltaJar)) {
+			assertEquals("1", jar.getManifest().getMainAttributes().getValue(Index.BASE_VERSION_ATTRIBUTE),
+					"expect base version");
+			assertEquals("1", jar.getManifest().getMainAttributes().getValue(Index.DEPTH_ATTRIBUTE), "expect depth");
+		}
+		assertEquals("1", Index.readBaseVersion(deltaJar), "expect base version");
+
+		final Artifact delta = builder.getArtifacts().get(1);
+		try (IndexLookup lookup = newIndex(delta, Collections.singletonList(full)).loadLookup()) {
+			assertArrayEquals(new String[]{"widget-1.pom"}, lookup.getFilenames(Paths.get("com/widget/1")),
+					"expect base entry");
+			assertArrayEquals(new String[]{"widget-1-reversed.txt", "widget-1.pom", "widget-1.txt"},
+					lookup.getFilenames(Paths.get("com/ex/widget/1")), "expect delta entry");
+		}
+	}
+
+	@Test
+	void compactsDeltaChain() throws Throwable {
+		final Path testOut = baseDir.resolve("compactsDeltaChain");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Path repo = testOut.resolve("repo");
+		final Artifact full = writeIndexJar(repo, "1", null, "com/widget/1.txt", "widget-1.pom");
+		final Artifact delta2 = writeIndexJar(repo, "2", "1", "net/widget/1.txt", "widget-1.pom");
+		final Artifact delta3 = writeIndexJar(repo, "3", "2", "com/widget/1.txt", "widget-1.pom\nwidget-1.txt");
+		final Index index = newIndex(delta3, Arrays.asList(full, delta2));
+		assertEquals(2, index.getDeltaDepth(), "expect delta depth");
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(index, newContext(testOut.resolve("tmp")),
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1).withDeltaThreshold(2)).blockingGet();
+		assertNull(builder.getDeltaBaseVersion(), "expect full index at threshold");
+		builder.finishAndUpload(builder.getUploadFunction().apply(newGroup("com/ex/widget/1")), true).blockingAwait();
+
+		final File fullJar = builder.getArtifacts().get(1).getFile();
+		assertNull(Index.readBaseVersion(fullJar), "expect no base version");
+		try (IndexLookup lookup = IndexLookup.load(fullJar)) {
+			assertEquals(3, lookup.size(), "expect all entries");
+			assertArrayEquals(new String[]{"widget-1.pom", "widget-1.txt"}, lookup.getFilenames(Paths.get("com/widget/1")),
+					"expect latest delta entry");
+		}
+	}
+
+	@Test
+	void extendsIncompleteDeltaChain() throws Throwable {
+		final Path testOut = baseDir.resolve("extendsIncompleteDeltaChain");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Path repo = testOut.resolve("repo");
+		writeIndexJar(repo, "1", null, "com/widget/1.txt", "widget-1.pom");
+		final Artifact delta2 = writeIndexJar(repo, "2", "1", "net/widget/1.txt", "widget-1.pom");
+		final Context context = newContext(testOut.resolve("tmp"));
+		doThrow(new ArtifactResolverException("not found", new IOException("not found")))
+				.when(context.getArtifactResolver()).resolveArtifact(any(ProjectBuildingRequest.class), any(Artifact.class));
+		final List<Artifact> bases = new ArrayList<>();
+		assertFalse(AbstractIndexMojo.resolveBaseArtifacts(handlers, context, null, delta2, bases),
+				"expect unresolved base version");
+		final Artifact pom = new DefaultArtifact("com.example", "index", "2",
+				"import", "pom", "", handlers.getArtifactHandler("pom"));
+		final Index index = new Index(new SystemStreamLog(), delta2, pom, bases, false, null, Collections.emptyList());
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(index, context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1)).blockingGet();
+		assertEquals("2", builder.getDeltaBaseVersion(), "expect delta over the resolved head despite threshold");
+		builder.finishAndUpload(builder.getUploadFunction().apply(newGroup("com/ex/widget/1")), true).blockingAwait();
+		final File deltaJar = builder.getArtifacts().get(1).getFile();
+		assertEquals("2", Index.readBaseVersion(deltaJar), "expect base version");
+		assertFalse(JarUtilsTest.getJarEntrySet(deltaJar).contains("net/widget/1.txt"), "expect only changed entries");
+
+		final IndexBuilder.Config sharded = new IndexBuilder.Config(false, 0).withMaxInFlight(1)
+				.withSharding(IndexSharding.parse("segment"));
+		assertThrows(MojoFailureException.class, () -> {
+			try {
+				IndexBuilder.fromIndex(index, context, sharded).blockingGet();
+			} catch (RuntimeException e) {
+				throw e.getCause();
+			}
+		}, "expect no rewrite of an incomplete chain");
+	}
+
+	@Test
+	void copiesUnchangedEntries() throws Throwable {
+		final Path testOut = baseDir.resolve("copiesUnchangedEntries");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Path repo = testOut.resolve("repo");
+		final Artifact full = writeIndexJar(repo, "1", null, "com/widget/1.txt", "widget-1.pom");
+		final Artifact delta2 = writeIndexJar(repo, "2", "1", "com/ex/widget/1.txt", "widget-1.pom");
+		final Index index = newIndex(delta2, Collections.singletonList(full));
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(index, newContext(testOut.resolve("tmp")),
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1).withFormat(IndexBuilder.Format.BOTH)).blockingGet();
+		assertNull(builder.getDeltaBaseVersion(), "expect full index");
+		builder.finishAndUpload(builder.getUploadFunction().apply(newGroup("com/ex/widget/1")), true).blockingAwait();
+
+		final File fullJar = builder.getArtifacts().get(1).getFile();
+		try (ZipFile previous = new ZipFile(full.getFile()); ZipFile rebuilt = new ZipFile(fullJar)) {
+			final ZipArchiveEntry previousEntry = previous.getEntry("com/widget/1.txt");
+			final ZipArchiveEntry rebuiltEntry = rebuilt.getEntry("com/widget/1.txt");
+			assertEquals(previousEntry.getCrc(), rebuiltEntry.getCrc(), "expect same crc");
+			assertEquals(previousEntry.getCompressedSize(), rebuiltEntry.getCompressedSize(), "expect same compressed size");
+			assertEquals("META-INF/", rebuilt.getEntries().nextElement().getName(), "expect manifest first");
+		}
+		try (JarFile jar = new JarFile(fullJar)) {
+			assertEquals(1, Collections.list(jar.entries()).stream()
+					.filter(entry -> entry.getName().equals("com/ex/widget/1.txt")).count(), "expect changed entry once");
+		}
+		try (IndexLookup text = EntryIndexLookup.load(fullJar); JarFile jar = new JarFile(fullJar);
+			 IndexLookup binary = BinaryIndex.extractAndMap(jar)) {
+			assertArrayEquals(new String[]{"widget-1-reversed.txt", "widget-1.pom", "widget-1.txt"},
+					text.getFilenames(Paths.get("com/ex/widget/1")), "expect changed text entry");
+			assertArrayEquals(text.getFilenames(Paths.get("com/ex/widget/1")),
+					binary.getFilenames(Paths.get("com/ex/widget/1")), "expect changed binary entry");
+			assertArrayEquals(new String[]{"widget-1.pom"}, binary.getFilenames(Paths.get("com/widget/1")),
+					"expect copied binary entry");
+			assertEquals(2, binary.size(), "expect binary entries");
+		}
+	}
+
+	@Test
+	void recordsChecksums() throws Throwable {
+		final Path testOut = baseDir.resolve("recordsChecksums");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt",
+				"widget-1.pom\t3\t0123456789abcdef0123456789abcdef01234567");
+		final IndexBuilder builder = IndexBuilder.fromIndex(newIndex(full, Collections.emptyList()),
+				newContext(testOut.resolve("tmp")),
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1).withRecordChecksums(true)).blockingGet();
+		final ArtifactGroup group;
+		try (IndexLookup lookup = IndexLookup.load(full.getFile())) {
+			group = Index.applyLookup(lookup).apply(newGroup("com/widget/1")).blockingGet();
+		}
+		builder.finishAndUpload(builder.getUploadFunction().apply(group), true).blockingAwait();
+
+		try (IndexLookup lookup = IndexLookup.load(builder.getArtifacts().get(1).getFile())) {
+			assertArrayEquals(new String[]{
+							"widget-1-reversed.txt\t13\t" + IndexRecord.sha1(repo1Dir.resolve("com/widget/1/widget-1-reversed.txt").toFile()),
+							"widget-1.pom\t3\t0123456789abcdef0123456789abcdef01234567",
+							"widget-1.txt\t13\t88110012c137940ac22203085640b7b6e29b0f4a"},
+					lookup.getFilenames(Paths.get("com/widget/1")), "expect synced files recorded with checksums");
+		}
+	}
+
+	@Test
+	void accumulatesEntriesUntilFlush() throws Throwable {
+		final Path testOut = baseDir.resolve("accumulatesEntriesUntilFlush");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt", "widget-1.pom");
+		final IndexBuilder builder = IndexBuilder.fromIndex(newIndex(full, Collections.emptyList()),
+				newContext(testOut.resolve("tmp")),
+				new IndexBuilder.Config(false, 0).withMaxInFlight(4).withDeltaThreshold(2))
+				.blockingGet();
+
+		final IndexBuilder.Stats stats = Flowable.range(0, 64)
+				.parallel(4)
+				.runOn(Schedulers.io())
+				.map(i -> builder.saveEntry(Paths.get("com/gen" + (63 - i) + "/1.txt"),
+						Collections.singletonList("gen" + (63 - i) + "-1.pom")))
+				.sequential()
+				.reduce(builder.getNoopStats(), IndexBuilder.Stats::combine)
+				.blockingGet();
+		assertTrue(stats.isDirty(), "expect dirty");
+		try (Stream<Path> files = Files.walk(builder.getIndexDir())) {
+			assertEquals(0L, files.filter(Files::isRegularFile).count(), "expect no entries written before flush");
+		}
+
+		builder.finishAndUpload(stats, true).blockingAwait();
+		try (IndexLookup lookup = newIndex(builder.getArtifacts().get(1), Collections.singletonList(full)).loadLookup()) {
+			assertEquals(65, lookup.size(), "expect all accumulated entries and the base entry");
+			assertArrayEquals(new String[]{"gen42-1.pom"}, lookup.getFilenames(Paths.get("com/gen42/1")),
+					"expect accumulated entry");
+		}
+	}
+
+	@Test
+	void detectsIdenticalIndex() throws Throwable {
+		final Path testOut = baseDir.resolve("detectsIdenticalIndex");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt", "widget-1.pom");
+		final IndexBuilder first = IndexBuilder.fromIndex(newIndex(full, Collections.emptyList()),
+				newContext(testOut.resolve("tmp1")), new IndexBuilder.Config(false, 0).withMaxInFlight(1)).blockingGet();
+		first.saveEntry(Paths.get("com/ex/widget/1.txt"), Collections.singletonList("widget-1.pom"));
+		first.finishAndUpload(first.getNoopStats(), true).blockingAwait();
+		assertFalse(first.isIdenticalToLatest(), "expect changed index");
+
+		final IndexBuilder second = IndexBuilder.fromIndex(newIndex(first.getArtifacts().get(1), Collections.emptyList()),
+				newContext(testOut.resolve("tmp2")), new IndexBuilder.Config(false, 0).withMaxInFlight(1)).blockingGet();
+		second.saveEntry(Paths.get("com/ex/widget/1.txt"), Collections.singletonList("widget-1.pom"));
+		second.finishAndUpload(second.new Stats(0, true), false).blockingAwait();
+		assertTrue(second.isIdenticalToLatest(), "expect identical index");
+		assertFalse(second.isDeployed(), "expect identical index not deployed");
+
+		final IndexBuilder third = IndexBuilder.fromIndex(newIndex(first.getArtifacts().get(1), Collections.emptyList()),
+				newContext(testOut.resolve("tmp3")), new IndexBuilder.Config(false, 0).withMaxInFlight(1)).blockingGet();
+		third.saveEntry(Paths.get("net/ex/widget/1.txt"), Collections.singletonList("widget-1.pom"));
+		third.finishAndUpload(third.new Stats(0, true), false).blockingAwait();
+		assertTrue(third.isDeployed(), "expect changed index deployed");
+	}
+
+	@Test
+	void buildsShardedIndex() throws Throwable {
+		final Path testOut = baseDir.resolve("buildsShardedIndex");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt", "widget-1.pom");
+		final IndexBuilder.Config config = new IndexBuilder.Config(false, 0).withMaxInFlight(1).withDeltaThreshold(2)
+				.withSharding(IndexSharding.parse("segment"));
+		final IndexBuilder first = IndexBuilder.fromIndex(newIndex(full, Collections.emptyList()),
+				newContext(testOut.resolve("tmp1")), config).blockingGet();
+		assertNull(first.getDeltaBaseVersion(), "expect full sharded index");
+		first.saveEntry(Paths.get("net/widget/1.txt"), Collections.singletonList("widget-1.pom"));
+		first.saveEntry(Paths.get("org/widget/1.txt"), Collections.singletonList("widget-1.pom"));
+		first.finishAndUpload(first.getNoopStats(), true).blockingAwait();
+
+		final Map<String, File> deployed = new HashMap<>();
+		first.getArtifacts().forEach(artifact -> deployed.put(artifact.getClassifier() + ":" + artifact.getVersion(),
+				artifact.getFile()));
+		assertEquals(Arrays.asList("", "", "shard-com", "shard-net", "shard-org"), first.getArtifacts().stream()
+				.map(Artifact::getClassifier).collect(Collectors.toList()), "expect resharded index");
+		final File firstJar = first.getArtifacts().get(1).getFile();
+		assertEquals(IndexSharding.parse("segment"), IndexSharding.read(firstJar), "expect sharding attribute");
+		assertEquals(3, IndexSharding.readVersions(firstJar).size(), "expect shard versions");
+
+		final Set<String> resolved = new HashSet<>();
+		final Index.ShardResolver resolver = (classifier, version) -> {
+			resolved.add(classifier);
+			return deployed.get(classifier + ":" + version);
+		};
+		final Artifact firstPom = first.getArtifacts().get(0);
+		final IndexBuilder second = IndexBuilder.fromIndex(new Index(new SystemStreamLog(), first.getArtifacts().get(1),
+				firstPom, Collections.emptyList(), true, resolver, Collections.emptyList()),
+				newContext(testOut.resolve("tmp2")), config).blockingGet();
+		second.saveEntry(Paths.get("com/widget/1.txt"), Collections.singletonList("widget-1.pom"));
+		second.saveEntry(Paths.get("net/widget/2.txt"), Collections.singletonList("widget-2.pom"));
+		second.finishAndUpload(second.getNoopStats(), true).blockingAwait();
+		assertEquals(new HashSet<>(Arrays.asList("shard-com", "shard-net")), resolved, "expect only changed shards resolved");
+		assertEquals(Arrays.asList("", "", "shard-net"), second.getArtifacts().stream()
+				.map(Artifact::getClassifier).collect(Collectors.toList()), "expect only the changed shard deployed");
+
+		second.getArtifacts().forEach(artifact -> deployed.put(artifact.getClassifier() + ":" + artifact.getVersion(),
+				artifact.getFile()));
+		resolved.clear();
+		final Index latest = new Index(new SystemStreamLog(), second.getArtifacts().get(1), second.getArtifacts().get(0),
+				Collections.emptyList(), true, resolver, Collections.emptyList());
+		try (IndexLookup lookup = latest.loadLookup()) {
+			assertArrayEquals(new String[]{"widget-2.pom"}, lookup.getFilenames(Paths.get("net/widget/2")),
+					"expect new entry");
+			assertArrayEquals(new String[]{"widget-1.pom"}, lookup.getFilenames(Paths.get("net/widget/1")),
+					"expect copied entry");
+			assertArrayEquals(new String[]{"widget-1.pom"}, lookup.getFilenames(Paths.get("com/widget/1")),
+					"expect unchanged shard");
+			assertNull(lookup.getFilenames(Paths.get("io/widget/1")), "expect missing shard");
+			assertEquals(new HashSet<>(Arrays.asList("shard-com", "shard-net")), resolved, "expect lazy shard resolution");
+		}
+
+		final Index.ShardResolver failing = (classifier, version) -> {
+			throw new IOException("failed to resolve " + classifier);
+		};
+		final IndexBuilder third = IndexBuilder.fromIndex(new Index(new SystemStreamLog(), second.getArtifacts().get(1),
+				second.getArtifacts().get(0), Collections.emptyList(), true, failing, Collections.emptyList()),
+				newContext(testOut.resolve("tmp3")), config).blockingGet();
+		third.saveEntry(Paths.get("org/widget/2.txt"), Collections.singletonList("widget-2.pom"));
+		assertThrows(MojoFailureException.class, () -> {
+			try {
+				third.finishAndUpload(third.getNoopStats(), true).blockingAwait();
+			} catch (RuntimeException e) {
+				throw e.getCause();
+			}
+		}, "expect no shard rebuilt from changed entries only");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void retriesDeferredGroups() throws Throwable {
+		final Path testOut = baseDir.resolve("retriesDeferredGroups");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt", "widget-1.pom");
+		final Path tempDir = testOut.resolve("tmp");
+		Files.createDirectories(tempDir);
+		final ArtifactDeployer deployer = mock(ArtifactDeployer.class);
+		doThrow(new ArtifactDeployerException("deploy failed", new IOException("status code: 503")))
+				.doNothing()
+				.when(deployer).deploy(any(ProjectBuildingRequest.class), any(ArtifactRepository.class), any(Collection.class));
+		final Context context = new Context(mock(ArtifactResolver.class), deployer, mock(ArtifactRepository.class), null,
+				mock(ProjectBuildingRequest.class), tempDir, new SystemStreamLog());
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(newIndex(full, Collections.emptyList()), context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1).withDeltaThreshold(2)).blockingGet();
+		final IndexBuilder.Stats stats = builder.buildIndexFrom(Flowable.just(newGroup("com/ex/widget/1"))).blockingGet();
+		assertEquals(0, stats.getFailures(), "expect no failure after retry");
+		assertTrue(stats.isDirty(), "expect entry saved after retry");
+		verify(deployer, times(2)).deploy(any(ProjectBuildingRequest.class), any(ArtifactRepository.class),
+				any(Collection.class));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void uploadsLargestGroupsFirst() throws Throwable {
+		final Path testOut = baseDir.resolve("uploadsLargestGroupsFirst");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt", "widget-1.pom");
+		final Path tempDir = testOut.resolve("tmp");
+		Files.createDirectories(tempDir);
+		final CountDownLatch discovered = new CountDownLatch(1);
+		final List<Long> deployedSizes = Collections.synchronizedList(new ArrayList<>());
+		final ArtifactDeployer deployer = mock(ArtifactDeployer.class);
+		doAnswer(call -> {
+			final Collection<Artifact> artifacts = call.getArgument(2);
+			deployedSizes.add(artifacts.stream().mapToLong(artifact -> artifact.getFile().length()).sum());
+			// hold the only worker until every group is queued
+			assertTrue(discovered.await(10L, TimeUnit.SECONDS), "expect all groups discovered");
+			return null;
+		}).when(deployer).deploy(any(ProjectBuildingRequest.class), any(ArtifactRepository.class), any(Collection.class));
+		final Context context = new Context(mock(ArtifactResolver.class), deployer, mock(ArtifactRepository.class), null,
+				mock(ProjectBuildingRequest.class), tempDir, new SystemStreamLog());
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(newIndex(full, Collections.emptyList()), context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(4).withDeltaThreshold(2).withUploads(1, 1))
+				.blockingGet();
+		final List<ArtifactGroup> smallestFirst = Stream.of("com/widget/v12345", "com/widget/1", "com/ex/widget/1",
+				"com/ex/ex/widget/1").map(this::newGroup).collect(Collectors.toList());
+		final IndexBuilder.Stats stats = builder.buildIndexFrom(Flowable.fromIterable(smallestFirst)
+				.doOnComplete(discovered::countDown)).blockingGet();
+		assertEquals(0, stats.getFailures(), "expect no failures");
+		assertEquals(4, deployedSizes.size(), "expect every group deployed");
+		final List<Long> afterFirst = new ArrayList<>(deployedSizes.subList(1, deployedSizes.size()));
+		final List<Long> expectOrder = new ArrayList<>(afterFirst);
+		expectOrder.sort(Comparator.reverseOrder());
+		assertEquals(expectOrder, afterFirst, "expect queued groups deployed largest first");
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	void takesLargestGroupWhenLimitIsSaturated() throws Throwable {
+		final Path testOut = baseDir.resolve("takesLargestGroupWhenLimitIsSaturated");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Artifact full = writeIndexJar(testOut.resolve("repo"), "1", null, "com/widget/1.txt", "widget-1.pom");
+		final Path tempDir = testOut.resolve("tmp");
+		Files.createDirectories(tempDir);
+		final CountDownLatch saturated = new CountDownLatch(1);
+		final CountDownLatch discovered = new CountDownLatch(1);
+		final List<Long> deployedSizes = Collections.synchronizedList(new ArrayList<>());
+		final ArtifactDeployer deployer = mock(ArtifactDeployer.class);
+		doAnswer(call -> {
+			final Collection<Artifact> artifacts = call.getArgument(2);
+			deployedSizes.add(artifacts.stream().mapToLong(artifact -> artifact.getFile().length()).sum());
+			if (deployedSizes.size() == 1) {
+				saturated.countDown();
+				// hold the only permit until every group is queued, and fail transiently so that the limit stays at 1
+				assertTrue(discovered.await(10L, TimeUnit.SECONDS), "expect all groups discovered");
+				throw new ArtifactDeployerException("deploy failed", new IOException("status code: 503"));
+			}
+			return null;
+		}).when(deployer).deploy(any(ProjectBuildingRequest.class), any(ArtifactRepository.class), any(Collection.class));
+		final Context context = new Context(mock(ArtifactResolver.class), deployer, mock(ArtifactRepository.class), null,
+				mock(ProjectBuildingRequest.class), tempDir, new SystemStreamLog());
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(newIndex(full, Collections.emptyList()), context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(4)).blockingGet();
+		final List<ArtifactGroup> groups = Stream.of("com/widget/v12345", "com/widget/1", "com/ex/widget/1",
+				"com/ex/ex/widget/1").map(this::newGroup)
+				.sorted(Comparator.comparingLong(ArtifactGroup::getDeployableSize))
+				.collect(Collectors.toList());
+		// four workers but only one permit, and the largest group is only discovered once the permit is taken
+		final Flowable<ArtifactGroup> discovery = Flowable.fromIterable(groups.subList(0, groups.size() - 1))
+				.concatWith(Flowable.fromCallable(() -> {
+					assertTrue(saturated.await(10L, TimeUnit.SECONDS), "expect saturated limit");
+					return groups.get(groups.size() - 1);
+				}).subscribeOn(Schedulers.io()))
+				.doOnComplete(discovered::countDown);
+		final IndexBuilder.Stats stats = builder.buildIndexFrom(discovery,
+				new AdaptiveLimiter(1, 4, 1, new SystemStreamLog())).blockingGet();
+		assertEquals(0, stats.getFailures(), "expect deferred group retried");
+		assertEquals(5, deployedSizes.size(), "expect every group deployed and the failed group retried");
+		assertEquals(Collections.max(deployedSizes), deployedSizes.get(1),
+				"expect the late largest group to go before the smaller waiting groups");
+	}
+}
@@ -0,0 +1,74 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class IndexCacheTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	Artifact newArtifact(final String version) {
+		return new DefaultArtifact("com.example", "index", version, "test", "jar", "", handlers.getArtifactHandler("jar"));
+	}
+
+	@Test
+	void resolvesOncePerVersion() throws Exception {
+		final Path testOut = baseDir.resolve("resolvesOncePerVersion");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Path downloaded = testOut.resolve("repo/index-2.jar");
+		Files.createDirectories(downloaded.getParent());
+		Files.write(downloaded, "index".getBytes(StandardCharsets.UTF_8));
+
+		final Artifact resolvedArtifact = newArtifact("2");
+		resolvedArtifact.setFile(downloaded.toFile());
+		final ArtifactResult result = mock(ArtifactResult.class);
+		when(result.getArtifact()).thenReturn(resolvedArtifact);
+		final ArtifactResolver resolver = mock(ArtifactResolver.class);
+		when(resolver.resolveArtifact(any(ProjectBuildingRequest.class), any(Artifact.class))).thenReturn(result);
+		final Context context = new Context(resolver, mock(ArtifactDeployer.class), mock(ArtifactRepository.class), null,
+				mock(ProjectBuildingRequest.class), testOut.resolve("tmp"), new SystemStreamLog());
+
+		final IndexCache cache = new IndexCache(testOut.resolve("cache"), new SystemStreamLog());
+		final Path cachedFile = testOut.resolve("cache/com.example/index/2/index-2.jar");
+		assertEquals(cachedFile, cache.resolve(context, newArtifact("2")).getFile().toPath(), "expect cached file");
+		assertEquals(cachedFile, cache.resolve(context, newArtifact("2")).getFile().toPath(), "expect cached file again");
+		verify(resolver, times(1)).resolveArtifact(any(ProjectBuildingRequest.class), any(Artifact.class));
+		assertEquals("index", new String(Files.readAllBytes(cachedFile), StandardCharsets.UTF_8), "expect copied content");
+
+		final Path staleFile = testOut.resolve("cache/com.example/index/1/index-1.jar");
+		IndexCache.put(downloaded.toFile(), staleFile);
+		cache.retain(newArtifact("2"), Collections.singletonList("2"));
+		assertFalse(Files.exists(staleFile.getParent()), "expect stale version evicted");
+		assertTrue(Files.exists(cachedFile), "expect current version retained");
+	}
+}
@@ -0,0 +1,132 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+class IndexCompactorTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"'com/widget/1', 'widget-1.pom', 'com:widget:1'",
+			"'com/ex/widget/1', 'widget-1.pom', 'com.ex:widget:1'",
+			"'com/widget/1', '', ",
+			"'com/widget/1-SNAPSHOT', 'widget-1-SNAPSHOT.pom', ",
+			"'widget/1', 'widget-1.pom', ",
+	})
+	void validatesEntries(String key, String filenames, String expected) {
+		final Gav gav = IndexCompactor.validGav(key, filenames.isEmpty() ? new String[0] : filenames.split(","));
+		assertEquals(expected, gav == null ? null : gav.toString(), "expect valid gav");
+	}
+
+	Index writeIndex(final Path dir, final String artifactId, final String... entries) throws Exception {
+		Files.createDirectories(dir);
+		final File jarFile = dir.resolve(artifactId + ".jar").toFile();
+		try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile), new Manifest())) {
+			for (int i = 0; i < entries.length; i += 2) {
+				IndexLookupTest.writeEntry(jarOut, entries[i], entries[i + 1]);
+			}
+		}
+		final Artifact artifact = new DefaultArtifact("com.example", artifactId, "1",
+				"test", "jar", "", handlers.getArtifactHandler("jar"));
+		artifact.setFile(jarFile);
+		final Artifact pom = new DefaultArtifact("com.example", artifactId, "1",
+				"import", "pom", "", handlers.getArtifactHandler("pom"));
+		return new Index(new SystemStreamLog(), artifact, pom);
+	}
+
+	@Test
+	void compactsIndexes() throws Throwable {
+		final Path testOut = baseDir.resolve("compactsIndexes");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Index first = writeIndex(testOut.resolve("repo"), "first",
+				"com/widget/1.txt", "widget-1.pom\nwidget-1.jar\n",
+				"com/widget/2.txt", "widget-2.pom\n",
+				"com/widget/3-SNAPSHOT.txt", "widget-3-SNAPSHOT.pom\n");
+		final Index second = writeIndex(testOut.resolve("repo"), "second",
+				"com/widget/1.txt", "widget-1.pom\nwidget-1-sources.jar\n",
+				"com/ex/widget/1.txt", "",
+				"com/gone/1.txt", "gone-1.pom\n");
+		final MergedIndex mergedIndex = new MergedIndex(new SystemStreamLog(), Arrays.asList(first, second));
+
+		final Path tempDir = testOut.resolve("tmp");
+		Files.createDirectories(tempDir);
+		final Context context = new Context(mock(ArtifactResolver.class), mock(ArtifactDeployer.class),
+				mock(ArtifactRepository.class), null, mock(ProjectBuildingRequest.class), tempDir, new SystemStreamLog());
+		final Artifact target = new DefaultArtifact("com.example", "compact", Artifact.LATEST_VERSION,
+				"test", "jar", "", handlers.getArtifactHandler("jar"));
+		final Artifact targetPom = new DefaultArtifact("com.example", "compact", Artifact.LATEST_VERSION,
+				"import", "pom", "", handlers.getArtifactHandler("pom"));
+		final IndexBuilder builder = IndexBuilder.fromIndex(new Index(new SystemStreamLog(), target, targetPom), context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(2)).blockingGet();
+
+		final IndexBuilder.Stats stats = new IndexCompactor(new SystemStreamLog(),
+				gav -> !gav.getArtifactId().equals("gone"), 2)
+				.compact(mergedIndex, builder).blockingGet();
+		assertTrue(stats.isDirty(), "expect dirty");
+		builder.finishAndUpload(stats, true).blockingAwait();
+
+		final File compactJar = builder.getArtifacts().get(1).getFile();
+		try (IndexLookup lookup = IndexLookup.load(compactJar)) {
+			assertEquals(2, lookup.size(), "expect retained entries");
+			assertArrayEquals(new String[]{"widget-1-sources.jar", "widget-1.jar", "widget-1.pom"},
+					lookup.getFilenames(Paths.get("com/widget/1")), "expect union of duplicated entries");
+			assertArrayEquals(new String[]{"widget-2.pom"}, lookup.getFilenames(Paths.get("com/widget/2")),
+					"expect single entry");
+			assertNull(lookup.getFilenames(Paths.get("com/gone/1")), "expect missing pom dropped");
+			assertNull(lookup.getFilenames(Paths.get("com/ex/widget/1")), "expect empty entry dropped");
+		}
+	}
+
+	@Test
+	void skipsEmptyCompaction() throws Throwable {
+		final Path testOut = baseDir.resolve("skipsEmptyCompaction");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final Path tempDir = testOut.resolve("tmp");
+		Files.createDirectories(tempDir);
+		final Context context = new Context(mock(ArtifactResolver.class), mock(ArtifactDeployer.class),
+				mock(ArtifactRepository.class), null, mock(ProjectBuildingRequest.class), tempDir, new SystemStreamLog());
+		final Artifact target = new DefaultArtifact("com.example", "compact", Artifact.LATEST_VERSION,
+				"test", "jar", "", handlers.getArtifactHandler("jar"));
+		final Index empty = new Index(new SystemStreamLog(), target, target);
+		final IndexBuilder builder = IndexBuilder.fromIndex(empty, context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(2)).blockingGet();
+		final IndexBuilder.Stats stats = new IndexCompactor(new SystemStreamLog(), null, 1)
+				.compact(new MergedIndex(new SystemStreamLog(), Collections.singletonList(empty)), builder).blockingGet();
+		assertFalse(stats.isDirty(), "expect nothing to deploy");
+	}
+}
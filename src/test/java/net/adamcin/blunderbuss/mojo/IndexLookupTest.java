@@ -0,0 +1,115 @@
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import org.apache.commons.io.IOUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class IndexLookupTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private final Path repo1Dir = Paths.get("src/test/resources/repo1").toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	File writeIndexJar(final String name) throws Exception {
+		final File jarFile = baseDir.resolve(name).toFile();
+		try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile), new Manifest())) {
+			writeEntry(jarOut, "com/widget/1.txt", "widget-1.txt\nwidget-1.pom\nwidget-1-reversed.txt\n");
+			writeEntry(jarOut, "com/ex/widget/1.txt", "widget-1.pom\n");
+			writeEntry(jarOut, "net/widget/1.txt", "");
+		}
+		return jarFile;
+	}
+
+	static void writeEntry(final JarOutputStream jarOut, final String name, final String contents) throws Exception {
+		jarOut.putNextEntry(new JarEntry(name));
+		jarOut.write(contents.getBytes(StandardCharsets.UTF_8));
+		jarOut.closeEntry();
+	}
+
+	@Test
+	void loadsIndexJar() throws Exception {
+		final IndexLookup lookup = IndexLookup.load(writeIndexJar("loadsIndexJar.jar"));
+		assertEquals(3, lookup.size(), "expect entry count");
+		assertArrayEquals(new String[]{"widget-1-reversed.txt", "widget-1.pom", "widget-1.txt"},
+				lookup.getFilenames(Paths.get("com/widget/1")), "expect sorted filenames");
+		assertArrayEquals(new String[]{"widget-1.pom"},
+				lookup.getFilenames(Paths.get("com/ex/widget/1")), "expect filenames");
+		assertArrayEquals(new String[0], lookup.getFilenames(Paths.get("net/widget/1")), "expect empty filenames");
+		assertNull(lookup.getFilenames(Paths.get("net/ex/widget/1")), "expect no entry");
+		assertNull(lookup.getFilenames(Paths.get("META-INF/MANIFEST")), "expect no manifest entry");
+	}
+
+	static List<Path> deployableNames(final ArtifactGroup group) {
+		return group.getDeployables().keySet().stream().sorted().collect(Collectors.toList());
+	}
+
+	/**
+	 * The reference filter, which reads the index entry of each artifact group directly from the jar.
+	 */
+	static Flowable<ArtifactGroup> filterByJarEntry(final JarFile jar, final ArtifactGroup group) throws Exception {
+		final JarEntry entry = jar.getJarEntry(group.getLayoutPrefix().toString() + ".txt");
+		if (entry == null) {
+			return Flowable.just(group);
+		}
+		try (Reader reader = new InputStreamReader(jar.getInputStream(entry), StandardCharsets.UTF_8)) {
+			final ArtifactGroup filtered = group.filteredByIndex(IOUtils.readLines(reader).toArray(new String[0]));
+			return filtered.getDeployables().isEmpty() ? Flowable.empty() : Flowable.just(filtered);
+		}
+	}
+
+	@Test
+	void filtersLikeJarEntries() throws Exception {
+		final File jarFile = writeIndexJar("filtersLikeJarEntries.jar");
+		final Artifact indexArtifact = new DefaultArtifact("com.example", "index", "1",
+				"test", "jar", "", handlers.getArtifactHandler("jar"));
+		indexArtifact.setFile(jarFile);
+		final Index index = new Index(new SystemStreamLog(), indexArtifact, indexArtifact);
+		final Flowable<ArtifactGroup> groups = LocalRepoWalker.walkLocalRepo(handlers, repo1Dir, null)
+				.map(group -> group.findDeployables(handlers));
+
+		final Map<Path, List<Path>> fromLookup = index.attachPipe(groups)
+				.toMap(ArtifactGroup::getLayoutPrefix, IndexLookupTest::deployableNames)
+				.blockingGet();
+
+		final Map<Path, List<Path>> fromJar;
+		try (JarFile jar = new JarFile(jarFile)) {
+			fromJar = groups.concatMap(group -> filterByJarEntry(jar, group))
+					.toMap(ArtifactGroup::getLayoutPrefix, IndexLookupTest::deployableNames)
+					.blockingGet();
+		}
+
+		assertEquals(17, fromLookup.size(), "expect fully indexed group removed");
+		assertEquals(2, fromLookup.get(Paths.get("com/ex/widget/1")).size(), "expect partially indexed group filtered");
+		assertEquals(fromJar, fromLookup, "expect same result as jar entry filter");
+	}
+}
@@ -0,0 +1,77 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class IndexRecordTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private static final String WIDGET_SHA1 = "88110012c137940ac22203085640b7b6e29b0f4a";
+
+	private final File widgetFile = Paths.get("src/test/resources/repo1/com/widget/1/widget-1.txt").toFile();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"'widget-1.jar', 'widget-1.jar', -1, ",
+			"'widget-1.jar\t13\t88110012c137940ac22203085640b7b6e29b0f4a', 'widget-1.jar', 13, '88110012c137940ac22203085640b7b6e29b0f4a'",
+			"'widget-1.jar\t13', 'widget-1.jar', -1, ",
+			"'widget-1.jar\tbig\t88110012c137940ac22203085640b7b6e29b0f4a', 'widget-1.jar', -1, ",
+			"'widget-1.jar\t13\tnot-a-sha1', 'widget-1.jar', -1, ",
+	})
+	void parsesLines(String line, String filename, long size, String sha1) {
+		final IndexRecord record = IndexRecord.parse(line);
+		assertEquals(new IndexRecord(filename, size, sha1), record, "expect parsed record");
+		assertEquals(filename, IndexRecord.filenameOf(line), "expect filename");
+		if (sha1 != null) {
+			assertEquals(line, record.toLine(), "expect same line");
+		}
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"a.jar, 0",
+			"a.jar.md5, 1",
+			"a.pom, 2",
+			"a-sources.jar, -1",
+			"b.jar, -4",
+	})
+	void findsLinesByFilename(String filename, int expected) {
+		final String[] lines = {"a.jar\t1\t" + WIDGET_SHA1, "a.jar.md5", "a.pom\t2\t" + WIDGET_SHA1};
+		assertEquals(expected, IndexRecord.indexOf(lines, filename), "expect index");
+	}
+
+	@Test
+	void recordsFiles() throws Exception {
+		assertEquals(new IndexRecord("widget-1.txt", 13L, WIDGET_SHA1), IndexRecord.of(widgetFile), "expect computed sha1");
+		assertTrue(IndexRecord.of(widgetFile).matches(widgetFile), "expect match");
+		assertFalse(new IndexRecord("widget-1.txt", 13L, WIDGET_SHA1.replace('a', 'b')).matches(widgetFile),
+				"expect sha1 mismatch");
+		assertFalse(new IndexRecord("widget-1.txt", 12L, WIDGET_SHA1).matches(widgetFile), "expect size mismatch");
+		assertTrue(new IndexRecord("widget-1.txt", -1L, null).matches(widgetFile), "expect plain filename match");
+
+		final Path dir = baseDir.resolve("recordsFiles");
+		Files.createDirectories(dir);
+		final File copy = dir.resolve("widget-1.txt").toFile();
+		Files.copy(widgetFile.toPath(), copy.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+		final String sidecar = WIDGET_SHA1.replace('a', 'c');
+		Files.write(dir.resolve("widget-1.txt.sha1"), (sidecar.toUpperCase() + "  widget-1.txt\n").getBytes(StandardCharsets.US_ASCII));
+		assertEquals(sidecar, IndexRecord.of(copy).getSha1(), "expect sha1 read from sidecar");
+	}
+}
@@ -0,0 +1,43 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class IndexShardingTest {
+
+	@ParameterizedTest
+	@CsvSource({
+			"segment, com/example/widget/1.0, com",
+			"segment, com/example/sub/widget/1.0, com",
+			"segment, my-org/widget/1.0, my_org",
+			"hash:16, com/example/widget/1.0, c",
+			"hash:256, com/example/widget/1.0, dc",
+	})
+	void assignsShards(String spec, String key, String expected) {
+		final IndexSharding sharding = IndexSharding.parse(spec);
+		assertEquals(spec, String.valueOf(sharding), "expect round trip");
+		assertEquals(expected, sharding.shardOf(key), "expect shard");
+	}
+
+	@Test
+	void assignsGroupToOneShard() {
+		final IndexSharding sharding = IndexSharding.parse("hash:64");
+		assertEquals(sharding.shardOf("com/example/widget/1.0"), sharding.shardOf("com/example/gadget/2.0"),
+				"expect same shard for same groupId");
+		assertEquals("shard-2a", IndexSharding.classifierOf("2a"), "expect classifier");
+	}
+
+	@Test
+	void parsesSpecs() {
+		assertNull(IndexSharding.parse(null), "expect unsharded");
+		assertNull(IndexSharding.parse(" "), "expect unsharded");
+		assertEquals(IndexSharding.parse("hash:8"), IndexSharding.parse(" hash:8 "), "expect equal");
+		assertThrows(IllegalArgumentException.class, () -> IndexSharding.parse("hash:0"), "expect invalid buckets");
+		assertThrows(IllegalArgumentException.class, () -> IndexSharding.parse("prefix"), "expect invalid spec");
+	}
+}
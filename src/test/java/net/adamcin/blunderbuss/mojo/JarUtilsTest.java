@@ -1,28 +1,40 @@
 package net.adamcin.blunderbuss.mojo;
 
 import io.reactivex.rxjava3.core.Completable;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.jetbrains.annotations.NotNull;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Set;
+import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.jar.JarInputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -98,7 +110,13 @@ class JarUtilsTest {
 			assertFalse(Files.exists(extractedDir.resolve(relPath)), relPath + " not exists");
 		}
 
-		JarUtils.createJarFile(embeddedJar, Paths.get("src/test/resources/embedded"))
+		final Path embeddedDir = Paths.get("src/test/resources/embedded");
+		final Manifest manifest;
+		try (InputStream manifestIn = new FileInputStream(embeddedDir.resolve(JarFile.MANIFEST_NAME).toFile())) {
+			manifest = new Manifest(manifestIn);
+		}
+		JarUtils.writeJarFile(embeddedJar, manifest, Collections.emptyList(), name -> true, embeddedDir,
+				Collections.emptyMap(), JarUtils.Compression.DEFLATED, 1)
 				.andThen(JarUtils.extractJarFile(embeddedJar, extractedDir))
 				.blockingAwait();
 
@@ -108,52 +126,80 @@ class JarUtilsTest {
 	}
 
 	@Test
-	void createsJarFile() throws Exception {
-		final Path testOut = baseDir.resolve("createsJarFile");
+	void writeJarFileFails() throws Exception {
+		final Path testOut = baseDir.resolve("writeJarFileFails");
 		deleteRecursively(testOut).blockingAwait();
 		Files.createDirectories(testOut);
-		final File embeddedJar = testOut.resolve("embedded.jar").toFile();
-		JarUtils.createJarFile(embeddedJar, Paths.get("src/test/resources/embedded"))
-				.blockingAwait();
-
-		assertEquals(setOf("META-INF/", "META-INF/MANIFEST.MF", "someScript.js"),
-				getJarEntrySet(embeddedJar),
-				"embedded jar has entries");
-
-		assertEquals("jcr_root/apps/oakpal/install/",
-				"jcr_root/apps/oakpal/install/".replaceFirst("/?$", "/"),
-				"replace works");
-
-		final File outJar = testOut.resolve("simple.jar").toFile();
-		JarUtils.createJarFile(outJar, Paths.get("src/test/resources/extracted/simple"))
-				.blockingAwait();
+		final Path parentDir = testOut.resolve("parentDir");
+		final File outJar = parentDir.resolve("out.jar").toFile();
+		Files.createFile(parentDir);
+		assertThrows(IOException.class, () -> {
+			try {
+				JarUtils.writeJarFile(outJar, new Manifest(), Collections.emptyList(), name -> true,
+						Paths.get("src/test/resources/extracted/simple"), Collections.emptyMap(),
+						JarUtils.Compression.DEFLATED, 1).blockingAwait();
+			} catch (RuntimeException e) {
+				throw e.getCause();
+			}
+		}, "expect exception when the parent is a file");
+	}
 
-		assertEquals(
-				setOf(
-						"META-INF/",
-						"META-INF/vault/",
-						"META-INF/vault/filter.xml",
-						"META-INF/vault/properties.xml",
-						"jcr_root/",
-						"jcr_root/apps/",
-						"jcr_root/apps/oakpal/",
-						"jcr_root/apps/oakpal/.content.xml"
-				),
-				getJarEntrySet(outJar), "simple jar has entries");
+	@Test
+	void writesReproducibleJarFile() throws Exception {
+		final Path testOut = baseDir.resolve("writesReproducibleJarFile");
+		deleteRecursively(testOut).blockingAwait();
+		final Path srcDir = testOut.resolve("src");
+		FileUtils.copyDirectory(Paths.get("src/test/resources/extracted/simple").toFile(), srcDir.toFile());
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+
+		final File firstJar = testOut.resolve("first.jar").toFile();
+		JarUtils.writeJarFile(firstJar, manifest, Collections.emptyList(), name -> true, srcDir,
+				Collections.emptyMap(), JarUtils.Compression.DEFLATED, 4).blockingAwait();
+		assertTrue(srcDir.resolve("jcr_root/apps/oakpal/.content.xml").toFile().setLastModified(0L), "expect touched");
+		final File secondJar = testOut.resolve("second.jar").toFile();
+		JarUtils.writeJarFile(secondJar, manifest, Collections.emptyList(), name -> true, srcDir,
+				Collections.emptyMap(), JarUtils.Compression.DEFLATED, 1).blockingAwait();
+
+		assertArrayEquals(Files.readAllBytes(firstJar.toPath()), Files.readAllBytes(secondJar.toPath()),
+				"expect identical bytes");
+		assertEquals(Arrays.asList(
+				"META-INF/",
+				"META-INF/MANIFEST.MF",
+				"META-INF/vault/",
+				"META-INF/vault/filter.xml",
+				"META-INF/vault/properties.xml",
+				"jcr_root/",
+				"jcr_root/apps/",
+				"jcr_root/apps/oakpal/",
+				"jcr_root/apps/oakpal/.content.xml"
+		), new ArrayList<>(getJarEntrySet(firstJar)), "expect sorted entries after the manifest");
+		try (JarInputStream jarIn = new JarInputStream(new FileInputStream(firstJar))) {
+			assertNotNull(jarIn.getManifest(), "expect manifest is readable as a stream");
+		}
 	}
 
 	@Test
-	void createJarFileFails() throws Exception {
-		final Path testOut = baseDir.resolve("createJarFileFails");
+	void writesStoredJarFile() throws Exception {
+		final Path testOut = baseDir.resolve("writesStoredJarFile");
 		deleteRecursively(testOut).blockingAwait();
 		Files.createDirectories(testOut);
-		final Path parentDir = testOut.resolve("parentDir");
-		final File outJar = parentDir.resolve("out.jar").toFile();
-		Files.createFile(parentDir);
-		assertThrows(Exception.class, () -> {
-			JarUtils.createJarFile(outJar, Paths.get("src/test/resources/extracted/simple"))
-					.blockingAwait();
-		}, "expect exception");
+		final File deflatedJar = testOut.resolve("deflated.jar").toFile();
+		JarUtils.writeJarFile(deflatedJar, new Manifest(), Collections.emptyList(), name -> true,
+				Paths.get("src/test/resources/extracted/simple"), Collections.emptyMap(), JarUtils.Compression.DEFLATED, 1)
+				.blockingAwait();
 
+		final File storedJar = testOut.resolve("stored.jar").toFile();
+		JarUtils.writeJarFile(storedJar, new Manifest(), Collections.singletonList(deflatedJar), name -> true, null,
+				Collections.emptyMap(), JarUtils.Compression.STORED, 2).blockingAwait();
+		try (JarFile jarFile = new JarFile(storedJar)) {
+			final JarEntry entry = jarFile.getJarEntry("META-INF/vault/filter.xml");
+			assertEquals(ZipEntry.STORED, entry.getMethod(), "expect stored entry");
+			assertEquals(entry.getSize(), entry.getCompressedSize(), "expect uncompressed");
+			try (InputStream expected = new FileInputStream("src/test/resources/extracted/simple/META-INF/vault/filter.xml");
+				 InputStream actual = jarFile.getInputStream(entry)) {
+				assertArrayEquals(IOUtils.toByteArray(expected), IOUtils.toByteArray(actual), "expect same content");
+			}
+		}
 	}
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalRepoWalkerTest {
+	private final Path repo1Dir = Paths.get("src/test/resources/repo1").toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	static Set<Path> expectedPrefixes() {
+		return Stream.of(Paths.get("com"), Paths.get("net"))
+				.flatMap(before -> Stream.of(before, before.resolve("ex"), before.resolve("ex").resolve("ex")))
+				.map(before -> before.resolve("widget"))
+				.flatMap(before -> Stream.of(before.resolve("1"), before.resolve("1-SNAPSHOT"), before.resolve("v12345")))
+				.collect(Collectors.toSet());
+	}
+
+	@Test
+	void walksLocalRepo() {
+		TestSubscriber<Path> subscriber = new TestSubscriber<>();
+		LocalRepoWalker.walkLocalRepo(handlers, repo1Dir, null)
+				.map(ArtifactGroup::getLayoutPrefix)
+				.subscribe(subscriber);
+
+		subscriber.assertComplete();
+		subscriber.assertNoErrors();
+		subscriber.assertValueCount(18);
+		assertEquals(expectedPrefixes(), new HashSet<>(subscriber.values()), "expect prefix paths");
+	}
+
+	@Test
+	void walksLocalRepoParallel() throws Exception {
+		TestSubscriber<Path> subscriber = new TestSubscriber<>();
+		LocalRepoWalker.walkLocalRepoParallel(handlers, repo1Dir, null, 4, 4)
+				.map(ArtifactGroup::getLayoutPrefix)
+				.subscribe(subscriber);
+
+		subscriber.await(10, TimeUnit.SECONDS);
+		subscriber.assertComplete();
+		subscriber.assertNoErrors();
+		subscriber.assertValueCount(18);
+		assertEquals(expectedPrefixes(), new HashSet<>(subscriber.values()), "expect prefix paths");
+	}
+
+	@Test
+	void walksOnlyAsFastAsRequested() {
+		final Flowable<Path> prefixes = LocalRepoWalker.walkLocalRepo(handlers, repo1Dir, null)
+				.map(ArtifactGroup::getLayoutPrefix);
+		TestSubscriber<Path> subscriber = new TestSubscriber<>(0L);
+		prefixes.subscribe(subscriber);
+		subscriber.assertNoValues();
+		subscriber.request(1L);
+		subscriber.assertValues(Paths.get("com/ex/ex/widget/1"));
+		subscriber.request(2L);
+		subscriber.assertValueCount(3);
+		subscriber.assertNotComplete();
+		subscriber.request(Long.MAX_VALUE);
+		subscriber.assertValueCount(18);
+		subscriber.assertComplete();
+	}
+
+	@Test
+	void capturesVersionDirectoryEntries() {
+		final List<ArtifactGroup> groups = LocalRepoWalker.walkLocalRepo(handlers, repo1Dir, null)
+				.toList().blockingGet();
+		assertEquals(18, groups.size(), "expect group count");
+		for (ArtifactGroup group : groups) {
+			final Path pomFilename = group.getPomArtifact().getFile().toPath().getFileName();
+			assertTrue(group.getEntries().containsKey(pomFilename), "expect pom in entries for " + group.getGav());
+			final ArtifactGroup listed = new ArtifactGroup(group.getLayoutPrefix(), group.getPomArtifact())
+					.findDeployables(handlers, Collections.singleton("my-feed"));
+			final ArtifactGroup fromEntries = group.findDeployables(handlers, Collections.singleton("my-feed"));
+			assertEquals(listed.getDeployables().keySet(), fromEntries.getDeployables().keySet(),
+					"expect same deployables for " + group.getGav());
+			assertEquals(listed.getIndexed(), fromEntries.getIndexed(), "expect same indexed for " + group.getGav());
+		}
+	}
+
+	@Test
+	void matchesPomFilename() {
+		assertTrue(LocalRepoWalker.isPomFilename("widget-1.pom", "widget", "1"), "expect pom");
+		assertTrue(LocalRepoWalker.isPomFilename("widget-1-SNAPSHOT.pom", "widget", "1-SNAPSHOT"), "expect snapshot pom");
+		assertFalse(LocalRepoWalker.isPomFilename("widget-1.jar", "widget", "1"), "expect not a pom");
+		assertFalse(LocalRepoWalker.isPomFilename("widget-1-tests.pom", "widget", "1"), "expect classified pom ignored");
+		assertFalse(LocalRepoWalker.isPomFilename("gadget-1.pom", "widget", "1"), "expect other artifactId ignored");
+		assertFalse(LocalRepoWalker.isPomFilename("widget_1.pom", "widget", "1"), "expect separator required");
+	}
+}
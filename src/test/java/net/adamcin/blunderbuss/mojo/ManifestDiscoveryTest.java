@@ -0,0 +1,75 @@
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ManifestDiscoveryTest {
+	private final Path repo1Dir = Paths.get("src/test/resources/repo1").toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@ParameterizedTest
+	@CsvSource({
+			"'com:widget:1', com, widget, 1",
+			"'com:widget:jar:1', com, widget, 1",
+			"'com:widget:jar:1:compile', com, widget, 1",
+			"'com:widget:jar:sources:1:compile', com, widget, 1",
+			"'[INFO]    com:widget:jar:1:compile (optional) ', com, widget, 1",
+			"'com:widget:jar:1-20200601.123456-3:compile', com, widget, 1-SNAPSHOT",
+			"'com/ex/widget/v12345/widget-v12345.txt', com.ex, widget, v12345",
+			"'com/ex/widget/v12345', com.ex, widget, v12345"
+	})
+	void parsesLines(String line, String groupId, String artifactId, String version) {
+		assertEquals(Gav.of(groupId, artifactId, version), ManifestDiscovery.parseLine(repo1Dir, line), "expect gav");
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"''",
+			"'# comment'",
+			"'The following files have been resolved:'",
+			"'none'",
+			"'com:widget'",
+			"'com/widget'",
+			"'../repo1/com'"
+	})
+	void ignoresLines(String line) {
+		assertNull(ManifestDiscovery.parseLine(repo1Dir, line), "expect null");
+	}
+
+	@Test
+	void readsManifest() {
+		TestSubscriber<Path> subscriber = new TestSubscriber<>();
+		ManifestDiscovery.readManifest(handlers, repo1Dir, Paths.get("src/test/resources/manifest/resolved.txt"))
+				.map(ArtifactGroup::getLayoutPrefix)
+				.subscribe(subscriber);
+
+		subscriber.assertComplete();
+		subscriber.assertNoErrors();
+		subscriber.assertValues(
+				Paths.get("com/widget/1"),
+				Paths.get("com/ex/widget/v12345"),
+				Paths.get("com/ex/ex/widget/1-SNAPSHOT"),
+				Paths.get("net/widget/1"),
+				Paths.get("com/ex/widget/1"),
+				Paths.get("net/ex/ex/widget/1-SNAPSHOT"));
+	}
+
+	@Test
+	void readsManifestEntries() {
+		final ArtifactGroup group = ManifestDiscovery.readManifest(handlers, repo1Dir,
+				Paths.get("src/test/resources/manifest/resolved.txt"))
+				.firstOrError().blockingGet();
+		assertFalse(group.getEntries().isEmpty(), "expect captured entries");
+		assertEquals(3, group.findDeployables(handlers).getDeployables().size(), "expect deployables");
+	}
+}
@@ -0,0 +1,116 @@
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.core.Flowable;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MergedIndexTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private final Path repo1Dir = Paths.get("src/test/resources/repo1").toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	@ParameterizedTest
+	@CsvSource({
+			"'', '', ''",
+			"'a', '', 'a'",
+			"'', 'b', 'b'",
+			"'a,c', 'b', 'a,b,c'",
+			"'a,b', 'b,c', 'a,b,c'",
+			"'a,b', 'a,b', 'a,b'"
+	})
+	void unionsSortedFilenames(String left, String right, String expected) {
+		assertArrayEquals(split(expected), UnionIndexLookup.union(split(left), split(right)), "expect union");
+	}
+
+	static String[] split(final String value) {
+		return value.isEmpty() ? new String[0] : value.split(",");
+	}
+
+	Index writeIndex(final String artifactId, final Map<String, List<String>> entries, final boolean binary)
+			throws Exception {
+		final File jarFile = baseDir.resolve(artifactId + ".jar").toFile();
+		try (JarOutputStream jarOut = new JarOutputStream(new FileOutputStream(jarFile), new Manifest())) {
+			if (binary) {
+				jarOut.putNextEntry(new JarEntry(BinaryIndex.ENTRY_NAME));
+				BinaryIndex.write(jarOut, entries);
+				jarOut.closeEntry();
+			} else {
+				for (Map.Entry<String, List<String>> entry : entries.entrySet()) {
+					jarOut.putNextEntry(new JarEntry(entry.getKey() + ".txt"));
+					jarOut.write(String.join("\n", entry.getValue()).getBytes(StandardCharsets.UTF_8));
+					jarOut.closeEntry();
+				}
+			}
+		}
+		final Artifact indexArtifact = new DefaultArtifact("com.example", artifactId, "1",
+				"test", "jar", "", handlers.getArtifactHandler("jar"));
+		indexArtifact.setFile(jarFile);
+		return new Index(new SystemStreamLog(), indexArtifact, indexArtifact);
+	}
+
+	@Test
+	void filtersLikeChainedIndexes() throws Exception {
+		final Map<String, List<String>> first = new LinkedHashMap<>();
+		first.put("com/widget/1", Arrays.asList("widget-1.pom", "widget-1.txt"));
+		first.put("com/ex/widget/1", Collections.singletonList("widget-1.pom"));
+		final Map<String, List<String>> second = new LinkedHashMap<>();
+		second.put("com/widget/1", Collections.singletonList("widget-1-reversed.txt"));
+		second.put("net/widget/1", Collections.singletonList("widget-1.txt"));
+		final Map<String, List<String>> third = new LinkedHashMap<>();
+		third.put("com/ex/widget/1", Arrays.asList("widget-1.txt", "widget-1-reversed.txt"));
+		third.put("net/widget/1", Collections.singletonList("widget-1.pom"));
+		final List<Index> indexes = Arrays.asList(
+				writeIndex("first", first, false),
+				writeIndex("second", second, false),
+				writeIndex("third", third, true));
+
+		final Flowable<ArtifactGroup> groups = LocalRepoWalker.walkLocalRepo(handlers, repo1Dir, null)
+				.map(group -> group.findDeployables(handlers));
+
+		Flowable<ArtifactGroup> chained = groups;
+		for (Index index : indexes) {
+			chained = index.attachPipe(chained);
+		}
+		final Map<Path, List<Path>> fromChain = chained
+				.toMap(ArtifactGroup::getLayoutPrefix, IndexLookupTest::deployableNames)
+				.blockingGet();
+		final Map<Path, List<Path>> fromMerged = new MergedIndex(new SystemStreamLog(), indexes).attachPipe(groups)
+				.toMap(ArtifactGroup::getLayoutPrefix, IndexLookupTest::deployableNames)
+				.blockingGet();
+
+		assertEquals(16, fromMerged.size(), "expect fully indexed groups removed");
+		assertEquals(Collections.singletonList(Paths.get("widget-1-reversed.txt")),
+				fromMerged.get(Paths.get("net/widget/1")), "expect union of indexes filtered");
+		assertEquals(fromChain, fromMerged, "expect same result as chained indexes");
+	}
+}
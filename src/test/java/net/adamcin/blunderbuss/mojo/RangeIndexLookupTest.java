@@ -0,0 +1,242 @@
+package net.adamcin.blunderbuss.mojo;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.repository.ArtifactRepository;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.repository.Proxy;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployer;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class RangeIndexLookupTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private static final Pattern RANGE = Pattern.compile("bytes=(\\d*)-(\\d*)");
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	private final Map<String, byte[]> files = new ConcurrentHashMap<>();
+
+	private final AtomicInteger requests = new AtomicInteger();
+
+	private final AtomicLong bytesSent = new AtomicLong();
+
+	private volatile boolean ignoreRanges;
+
+	private volatile String proxyAuthorization;
+
+	private HttpServer server;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", this::serve);
+		server.start();
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+	}
+
+	void serve(final HttpExchange exchange) throws IOException {
+		requests.incrementAndGet();
+		proxyAuthorization = exchange.getRequestHeaders().getFirst("Proxy-Authorization");
+		final byte[] body = files.get(exchange.getRequestURI().getPath());
+		if (body == null) {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+		final String range = exchange.getRequestHeaders().getFirst("Range");
+		final Matcher matcher = range != null ? RANGE.matcher(range) : null;
+		int start = 0;
+		int end = body.length - 1;
+		int status = 200;
+		if (!ignoreRanges && matcher != null && matcher.matches()) {
+			status = 206;
+			if (matcher.group(1).isEmpty()) {
+				start = Math.max(0, body.length - Integer.parseInt(matcher.group(2)));
+			} else {
+				start = Integer.parseInt(matcher.group(1));
+				if (!matcher.group(2).isEmpty()) {
+					end = Math.min(end, Integer.parseInt(matcher.group(2)));
+				}
+			}
+			exchange.getResponseHeaders().add("Content-Range", "bytes " + start + "-" + end + "/" + body.length);
+		}
+		final int length = end - start + 1;
+		exchange.sendResponseHeaders(status, length);
+		try (OutputStream output = exchange.getResponseBody()) {
+			output.write(body, start, length);
+		}
+		bytesSent.addAndGet(length);
+	}
+
+	URL urlOf(final String path) throws Exception {
+		return new URL("http://127.0.0.1:" + server.getAddress().getPort() + path);
+	}
+
+	byte[] writeIndexJar(final Path dir, final int count, @Nullable final String baseVersion) throws Exception {
+		final Path entries = dir.resolve("entries");
+		for (int i = 0; i < count; i++) {
+			final Path entry = entries.resolve("com/example/widget" + i + "/1.0.txt");
+			Files.createDirectories(entry.getParent());
+			Files.write(entry, ("widget" + i + "-1.0.pom\nwidget" + i + "-1.0.jar\n").getBytes(StandardCharsets.UTF_8));
+		}
+		final Manifest manifest = new Manifest();
+		manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		if (baseVersion != null) {
+			manifest.getMainAttributes().putValue(Index.BASE_VERSION_ATTRIBUTE, baseVersion);
+			manifest.getMainAttributes().putValue(Index.DEPTH_ATTRIBUTE, "1");
+		}
+		final File jarFile = dir.resolve("index.jar").toFile();
+		JarUtils.writeJarFile(jarFile, manifest, Collections.emptyList(), name -> true, entries, Collections.emptyMap(),
+				JarUtils.Compression.DEFLATED, 2).blockingAwait();
+		return Files.readAllBytes(jarFile.toPath());
+	}
+
+	@Test
+	void readsThroughProxy() throws Exception {
+		final Path testOut = baseDir.resolve("readsThroughProxy");
+		FileUtils.deleteDirectory(testOut.toFile());
+		files.put("/index.jar", writeIndexJar(testOut, 3, null));
+		final Proxy proxy = new Proxy();
+		proxy.setHost("127.0.0.1");
+		proxy.setPort(server.getAddress().getPort());
+		proxy.setUserName("proxyuser");
+		proxy.setPassword("secret");
+		proxy.setNonProxyHosts("localhost|*.internal.example.com");
+
+		final URL url = new URL("http://repo.invalid/index.jar");
+		assertTrue(RangeIndexLookup.isProxied(url, proxy), "expect proxied host");
+		assertFalse(RangeIndexLookup.isProxied(new URL("http://repo.internal.example.com/index.jar"), proxy),
+				"expect non proxy host");
+		assertFalse(RangeIndexLookup.isProxySupported(new URL("https://repo.invalid/index.jar"), proxy),
+				"expect no proxy credentials for https");
+		try (RangeIndexLookup lookup = RangeIndexLookup.open(url, null, proxy, testOut.resolve("fallback.jar"),
+				new SystemStreamLog())) {
+			assertNotNull(lookup, "expect range lookup through proxy");
+			assertArrayEquals(new String[]{"widget1-1.0.jar", "widget1-1.0.pom"},
+					lookup.getFilenames(Paths.get("com/example/widget1/1.0")), "expect entry through proxy");
+		}
+		assertEquals(RangeIndexLookup.basicAuthorization("proxyuser", "secret"), proxyAuthorization,
+				"expect proxy credentials");
+
+		proxy.setUserName(null);
+		assertTrue(RangeIndexLookup.isProxySupported(new URL("https://repo.invalid/index.jar"), proxy),
+				"expect https proxy without credentials");
+	}
+
+	@Test
+	void readsEntriesWithRanges() throws Exception {
+		final Path testOut = baseDir.resolve("readsEntriesWithRanges");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final byte[] jar = writeIndexJar(testOut, 1000, null);
+		files.put("/index.jar", jar);
+
+		final RangeIndexLookup lookup = RangeIndexLookup.open(urlOf("/index.jar"), null, null,
+				testOut.resolve("fallback.jar"), new SystemStreamLog());
+		assertNotNull(lookup, "expect range lookup");
+		assertEquals(1000, lookup.size(), "expect all entries in central directory");
+		assertArrayEquals(new String[]{"widget42-1.0.jar", "widget42-1.0.pom"},
+				lookup.getFilenames(Paths.get("com/example/widget42/1.0")), "expect entry");
+		assertArrayEquals(new String[]{"widget42-1.0.jar", "widget42-1.0.pom"},
+				lookup.getFilenames(Paths.get("com/example/widget42/1.0")), "expect cached entry");
+		assertNull(lookup.getFilenames(Paths.get("com/example/widget42/2.0")), "expect missing entry");
+		assertEquals(2, requests.get(), "expect one request for the tail and one for the entry");
+		assertTrue(bytesSent.get() < jar.length, "expect partial transfer");
+		assertFalse(Files.exists(testOut.resolve("fallback.jar")), "expect no fallback");
+	}
+
+	@Test
+	void fallsBackWhenRangesIgnored() throws Exception {
+		final Path testOut = baseDir.resolve("fallsBackWhenRangesIgnored");
+		FileUtils.deleteDirectory(testOut.toFile());
+		final byte[] jar = writeIndexJar(testOut, 10, null);
+		files.put("/index.jar", jar);
+		ignoreRanges = true;
+
+		final Path fallbackFile = testOut.resolve("fallback.jar");
+		assertNull(RangeIndexLookup.open(urlOf("/index.jar"), null, null, fallbackFile, new SystemStreamLog()),
+				"expect no range lookup");
+		assertArrayEquals(jar, Files.readAllBytes(fallbackFile), "expect whole jar downloaded");
+	}
+
+	@Test
+	void opensRemoteDeltaChain() throws Throwable {
+		final Path testOut = baseDir.resolve("opensRemoteDeltaChain");
+		FileUtils.deleteDirectory(testOut.toFile());
+		files.put("/repo/index-1.jar", writeIndexJar(testOut.resolve("1"), 20, null));
+		files.put("/repo/index-2.jar", writeIndexJar(testOut.resolve("2"), 1, "1"));
+
+		final ArtifactRepository repo = mock(ArtifactRepository.class);
+		when(repo.getUrl()).thenReturn(urlOf("/repo").toString());
+		when(repo.pathOf(any())).thenAnswer(call -> "index-" + call.<Artifact>getArgument(0).getVersion() + ".jar");
+		final Path tempDir = testOut.resolve("tmp");
+		Files.createDirectories(tempDir);
+		final Context context = new Context(mock(ArtifactResolver.class), mock(ArtifactDeployer.class), repo, null,
+				mock(ProjectBuildingRequest.class), tempDir, new SystemStreamLog());
+		final Artifact head = new DefaultArtifact("com.example", "index", "2", "test", "jar", "",
+				handlers.getArtifactHandler("jar"));
+		final Artifact pom = new DefaultArtifact("com.example", "index", "2", "import", "pom", "",
+				handlers.getArtifactHandler("pom"));
+
+		assertNull(AbstractIndexMojo.openRemoteIndex(handlers, context, head, pom, 0), "expect chain too deep");
+		final Index index = AbstractIndexMojo.openRemoteIndex(handlers, context, head, pom, 1);
+		assertNotNull(index, "expect remote index");
+		assertTrue(index.isRemote() && index.isResolved(), "expect remote index is resolved");
+		assertEquals(1, index.getDeltaDepth(), "expect delta depth");
+		try (IndexLookup lookup = index.loadLookup()) {
+			assertArrayEquals(new String[]{"widget7-1.0.jar", "widget7-1.0.pom"},
+					lookup.getFilenames(Paths.get("com/example/widget7/1.0")), "expect base entry");
+		}
+
+		final IndexBuilder builder = IndexBuilder.fromIndex(index, context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1).withDeltaThreshold(2)).blockingGet();
+		assertEquals("2", builder.getDeltaBaseVersion(), "expect delta over remote index");
+		assertThrows(IllegalStateException.class, () -> IndexBuilder.fromIndex(index, context,
+				new IndexBuilder.Config(false, 0).withMaxInFlight(1).withDeltaThreshold(2)
+						.withSharding(IndexSharding.parse("segment"))).blockingGet(),
+				"expect no rewrite with range requests");
+	}
+}
@@ -0,0 +1,117 @@
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
+import org.apache.maven.project.ProjectBuildingRequest;
+import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResult;
+import org.apache.maven.shared.transfer.dependencies.DependableCoordinate;
+import org.apache.maven.shared.transfer.dependencies.resolve.DependencyResolver;
+import org.apache.maven.shared.transfer.dependencies.resolve.DependencyResolverException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReactorClosureTest {
+	private final Path closureDir = Paths.get("src/test/resources/closure").toAbsolutePath();
+
+	private final DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@ParameterizedTest
+	@CsvSource({
+			"'1', '1'",
+			"'${a}', 'A'",
+			"'${a}-${b}', 'A-B'",
+			"'${a}-${c}', ",
+			"'${d}', ",
+	})
+	void interpolates(String value, String expected) {
+		final Map<String, String> values = new HashMap<>();
+		values.put("a", "A");
+		values.put("b", "B");
+		values.put("d", "${a}");
+		assertEquals(expected, ReactorClosure.interpolate(value, values::get), "expect interpolated");
+	}
+
+	@Test
+	void expandsParentsAndImports() {
+		final ReactorClosure.PomFollower follower = new ReactorClosure.PomFollower(closureDir);
+		assertEquals(Arrays.asList(
+				Gav.of("org.ex", "app", "1"),
+				Gav.of("org.ex", "lib", "1"),
+				Gav.of("org.ex", "parent", "1"),
+				Gav.of("org.ex", "other-bom", "1"),
+				Gav.of("org.ex", "bom", "2")),
+				new ArrayList<>(follower.expand(Arrays.asList(Gav.of("org.ex", "app", "1"), Gav.of("org.ex", "lib", "1")))),
+				"expect closure");
+	}
+
+	static ArtifactResult result(final String groupId, final String artifactId, final String version) {
+		final ArtifactResult result = mock(ArtifactResult.class);
+		when(result.getArtifact()).thenReturn(new DefaultArtifact(groupId, artifactId, version,
+				"compile", "jar", "", new DefaultArtifactHandlers().getArtifactHandler("jar")));
+		return result;
+	}
+
+	@Test
+	void discoversReactorClosure() throws Exception {
+		final Model model = new Model();
+		model.setGroupId("org.ex");
+		model.setArtifactId("app");
+		model.setVersion("1");
+		model.setBuild(new Build());
+		final Plugin plugin = new Plugin();
+		plugin.setGroupId("org.ex");
+		plugin.setArtifactId("missing-plugin");
+		plugin.setVersion("1");
+		model.getBuild().addPlugin(plugin);
+		final MavenProject project = new MavenProject(model);
+		project.setOriginalModel(model);
+		project.setRemoteArtifactRepositories(Collections.emptyList());
+		project.setPluginArtifactRepositories(Collections.emptyList());
+
+		final List<ArtifactResult> results = Arrays.asList(result("org.ex", "lib", "1"), result("com", "widget", "1"));
+		final DependencyResolver resolver = mock(DependencyResolver.class);
+		when(resolver.resolveDependencies(any(ProjectBuildingRequest.class), any(Model.class), isNull()))
+				.thenReturn(results);
+		when(resolver.resolveDependencies(any(ProjectBuildingRequest.class),
+				argThat((DependableCoordinate coord) -> coord.getArtifactId().equals("missing-plugin")), isNull()))
+				.thenThrow(new DependencyResolverException("not found", new Exception()));
+
+		final ReactorClosure closure = new ReactorClosure(resolver, new DefaultProjectBuildingRequest(), new SystemStreamLog());
+		TestSubscriber<Path> subscriber = new TestSubscriber<>();
+		closure.discover(handlers, closureDir, Collections.singletonList(project))
+				.map(ArtifactGroup::getLayoutPrefix)
+				.subscribe(subscriber);
+
+		subscriber.assertComplete();
+		subscriber.assertNoErrors();
+		subscriber.assertValues(
+				Paths.get("org/ex/app/1"),
+				Paths.get("org/ex/lib/1"),
+				Paths.get("org/ex/parent/1"),
+				Paths.get("org/ex/other-bom/1"),
+				Paths.get("org/ex/bom/2"));
+	}
+}
@@ -0,0 +1,104 @@
+package net.adamcin.blunderbuss.mojo;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.shared.transfer.artifact.deploy.ArtifactDeployerException;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RepositoryGuardTest {
+
+	static ArtifactDeployerException failure(final String message) {
+		return new ArtifactDeployerException("deploy failed", new IOException(message));
+	}
+
+	@Test
+	void retriesTransientFailures() throws Exception {
+		final RepositoryGuard guard = new RepositoryGuard("test",
+				new RepositoryGuard.Settings(0.0, 3, 1L, 10L, 0, 0L), new SystemStreamLog());
+		final AtomicInteger attempts = new AtomicInteger();
+		guard.send(() -> {
+			if (attempts.incrementAndGet() < 3) {
+				throw failure("status code: 503, reason phrase: Service Unavailable");
+			}
+		});
+		assertEquals(3, attempts.get(), "expect success on third attempt");
+
+		attempts.set(0);
+		assertThrows(ArtifactDeployerException.class, () -> guard.send(() -> {
+			attempts.incrementAndGet();
+			throw failure("status code: 429, reason phrase: Too Many Requests");
+		}));
+		assertEquals(4, attempts.get(), "expect first attempt and three retries");
+
+		attempts.set(0);
+		assertThrows(ArtifactDeployerException.class, () -> guard.send(() -> {
+			attempts.incrementAndGet();
+			throw failure("Return code is: 409, ReasonPhrase: Conflict.");
+		}));
+		assertEquals(1, attempts.get(), "expect no retry of a conflict");
+	}
+
+	@Test
+	void backsOffWithJitter() {
+		final RepositoryGuard guard = new RepositoryGuard("test",
+				new RepositoryGuard.Settings(0.0, 3, 100L, 300L, 0, 0L), new SystemStreamLog());
+		for (int i = 0; i < 20; i++) {
+			final long first = guard.backoffMillis(0);
+			assertTrue(first >= 50L && first <= 100L, "expect first backoff within jitter: " + first);
+			final long capped = guard.backoffMillis(5);
+			assertTrue(capped >= 150L && capped <= 300L, "expect capped backoff within jitter: " + capped);
+		}
+	}
+
+	@Test
+	void parsesRetryAfter() {
+		assertEquals(2000L, RepositoryGuard.parseRetryAfter("2"), "expect seconds");
+		assertEquals(0L, RepositoryGuard.parseRetryAfter("soon"), "expect invalid value ignored");
+		assertEquals(0L, RepositoryGuard.parseRetryAfter(null), "expect missing value ignored");
+		final long dated = RepositoryGuard.parseRetryAfter(
+				DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now().plusSeconds(30L)));
+		assertTrue(dated > 20000L && dated <= 30000L, "expect date in the future: " + dated);
+		assertEquals(5000L, RepositoryGuard.retryAfterOf(failure("status code: 429, Retry-After: 5")),
+				"expect delay from message");
+	}
+
+	@Test
+	void pacesRequestsWithTokenBucket() {
+		final RepositoryGuard guard = new RepositoryGuard("test",
+				new RepositoryGuard.Settings(10.0, 0, 0L, 0L, 0, 0L), new SystemStreamLog());
+		for (int i = 0; i < 10; i++) {
+			assertEquals(0L, guard.reserveToken(), "expect burst without waiting");
+		}
+		final long wait = guard.reserveToken();
+		assertTrue(wait > TimeUnit.MILLISECONDS.toNanos(50L) && wait <= TimeUnit.MILLISECONDS.toNanos(100L),
+				"expect one token interval: " + wait);
+		assertTrue(guard.reserveToken() > wait, "expect debt to accumulate");
+	}
+
+	@Test
+	void pausesWhileBreakerIsOpen() throws Exception {
+		final RepositoryGuard guard = new RepositoryGuard("test",
+				new RepositoryGuard.Settings(0.0, 0, 0L, 0L, 2, 200L), new SystemStreamLog());
+		for (int i = 0; i < 2; i++) {
+			assertThrows(ArtifactDeployerException.class, () -> guard.send(() -> {
+				throw failure("Return code is: 502, ReasonPhrase: Bad Gateway.");
+			}));
+		}
+		assertTrue(guard.isOpen(), "expect breaker open");
+		final long started = System.nanoTime();
+		guard.send(() -> {
+		});
+		assertTrue(System.nanoTime() - started >= TimeUnit.MILLISECONDS.toNanos(150L), "expect paused request");
+		assertFalse(guard.isOpen(), "expect breaker closed after trial");
+	}
+}
@@ -0,0 +1,124 @@
+package net.adamcin.blunderbuss.mojo;
+
+import io.reactivex.rxjava3.subscribers.TestSubscriber;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WalkWatermarkTest {
+	final Path baseDir = Paths.get("target", "test-out", getClass().getSimpleName()).toAbsolutePath();
+
+	private DefaultArtifactHandlers handlers = new DefaultArtifactHandlers();
+
+	@BeforeEach
+	void setUp() throws Exception {
+		Files.createDirectories(baseDir);
+	}
+
+	TestSubscriber<Path> walk(final Path localRepo, final WalkWatermark watermark) {
+		TestSubscriber<Path> subscriber = new TestSubscriber<>();
+		LocalRepoWalker.walkLocalRepo(handlers, localRepo, watermark)
+				.map(ArtifactGroup::getLayoutPrefix)
+				.subscribe(subscriber);
+		subscriber.assertComplete();
+		subscriber.assertNoErrors();
+		return subscriber;
+	}
+
+	@Test
+	void skipsUnchangedVersionDirectories() throws Exception {
+		final Path testOut = baseDir.resolve("skipsUnchangedVersionDirectories");
+		final Path localRepo = testOut.resolve("repo");
+		final Path watermarkFile = testOut.resolve("watermark.txt");
+		FileUtils.deleteDirectory(testOut.toFile());
+		FileUtils.copyDirectory(Paths.get("src/test/resources/repo1").toFile(), localRepo.toFile());
+
+		final WalkWatermark first = WalkWatermark.load(watermarkFile);
+		assertNull(first.getPreviousIndexVersion(), "expect no index version");
+		assertFalse(first.isRepositoryUnchanged(localRepo), "expect changed without fingerprints");
+		walk(localRepo, first).assertValueCount(18);
+		first.save(watermarkFile, "v1");
+
+		final WalkWatermark second = WalkWatermark.load(watermarkFile);
+		assertEquals("v1", second.getPreviousIndexVersion(), "expect index version");
+		assertTrue(second.isRepositoryUnchanged(localRepo), "expect unchanged repository");
+		assertEquals(snapshotPrefixes(), new HashSet<>(walk(localRepo, second).values()), "expect only snapshots");
+		second.save(watermarkFile, "v2");
+
+		final Path versionDir = localRepo.resolve("com/ex/widget/1");
+		Files.write(versionDir.resolve("widget-1-sources.jar"), new byte[0]);
+		Files.setLastModifiedTime(versionDir, FileTime.fromMillis(Files.getLastModifiedTime(versionDir).toMillis() + 2000L));
+
+		final WalkWatermark third = WalkWatermark.load(watermarkFile);
+		assertEquals("v2", third.getPreviousIndexVersion(), "expect index version");
+		assertFalse(third.isRepositoryUnchanged(localRepo), "expect changed repository");
+		final Set<Path> expectChanged = new HashSet<>(snapshotPrefixes());
+		expectChanged.add(Paths.get("com/ex/widget/1"));
+		assertEquals(expectChanged, new HashSet<>(walk(localRepo, third).values()), "expect changed and snapshots");
+	}
+
+	Set<Path> snapshotPrefixes() {
+		return Stream.of("com", "com/ex", "com/ex/ex", "net", "net/ex", "net/ex/ex")
+				.map(groupPath -> Paths.get(groupPath, "widget", "1-SNAPSHOT"))
+				.collect(Collectors.toSet());
+	}
+
+	@Test
+	void detectsOverwrittenSnapshotFiles() throws Exception {
+		final Path testOut = baseDir.resolve("detectsOverwrittenSnapshotFiles");
+		final Path localRepo = testOut.resolve("repo");
+		final Path watermarkFile = testOut.resolve("watermark.txt");
+		FileUtils.deleteDirectory(testOut.toFile());
+		FileUtils.copyDirectory(Paths.get("src/test/resources/repo1").toFile(), localRepo.toFile());
+
+		final WalkWatermark first = WalkWatermark.load(watermarkFile);
+		walk(localRepo, first).assertValueCount(18);
+		first.save(watermarkFile, "v1");
+		assertTrue(WalkWatermark.load(watermarkFile).isRepositoryUnchanged(localRepo), "expect unchanged repository");
+
+		// reinstall a snapshot in place, which leaves the version directory untouched
+		final Path versionDir = localRepo.resolve("com/ex/widget/1-SNAPSHOT");
+		final FileTime dirTime = Files.getLastModifiedTime(versionDir);
+		final Path pom = versionDir.resolve("widget-1-SNAPSHOT.pom");
+		Files.write(pom, Files.readAllBytes(pom));
+		Files.setLastModifiedTime(pom, FileTime.fromMillis(dirTime.toMillis() + 2000L));
+		Files.setLastModifiedTime(versionDir, dirTime);
+
+		final WalkWatermark second = WalkWatermark.load(watermarkFile);
+		assertFalse(second.isRepositoryUnchanged(localRepo), "expect changed snapshot detected");
+		assertEquals(snapshotPrefixes(), new HashSet<>(walk(localRepo, second).values()), "expect only snapshots");
+	}
+
+	@Test
+	void walksEverythingWithoutPrevious() throws Exception {
+		final Path testOut = baseDir.resolve("walksEverythingWithoutPrevious");
+		final Path localRepo = testOut.resolve("repo");
+		final Path watermarkFile = testOut.resolve("watermark.txt");
+		FileUtils.deleteDirectory(testOut.toFile());
+		FileUtils.copyDirectory(Paths.get("src/test/resources/repo1").toFile(), localRepo.toFile());
+
+		final WalkWatermark first = WalkWatermark.load(watermarkFile);
+		walk(localRepo, first).assertValueCount(18);
+		first.save(watermarkFile, "v1");
+
+		final WalkWatermark restarted = WalkWatermark.load(watermarkFile).withoutPrevious();
+		assertNull(restarted.getPreviousIndexVersion(), "expect no index version");
+		walk(localRepo, restarted).assertValueCount(18);
+		restarted.save(watermarkFile, "v2");
+		assertTrue(WalkWatermark.load(watermarkFile).isRepositoryUnchanged(localRepo), "expect fingerprints recorded");
+	}
+}